@@ -0,0 +1,23 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+// Shared setup for the benchmarks: in-memory node state and peers that ack everything in-process (Benchmark support)
+final class Harness {
+    private Harness() {}
+    // WAL off unless the run asks for a mode, so the numbers are the in-memory path; INFO logging off as on a production node
+    static void quiet() { if (System.getProperty("ddvote.wal.mode") == null) System.setProperty("ddvote.wal.mode", "OFF"); Logger.getLogger("").setLevel(Level.WARNING); }
+    static ServerNodeState newState() { quiet(); return new ServerNodeState("bench", 0); }
+    static String[] voterIds(String prefix, int n) { String[] ids = new String[n]; for (int i = 0; i < n; i++) ids[i] = prefix + "-v" + i; return ids; }
+    // A backup that applies nothing and acks every batch and snapshot chunk immediately; only the calls a primary makes are answered
+    static NodeService stubPeer(String id) { return (NodeService) Proxy.newProxyInstance(NodeService.class.getClassLoader(), new Class<?>[] { NodeService.class }, (proxy, m, args) -> {
+        switch (m.getName()) { case "applyReplicationBatch": return ((ReplicationBatch) args[0]).getLastSeq(); case "getPrimaryHint": return new PrimaryHint(null, 0, 0, ShardMap.SHARDS);
+            case "hashCode": return System.identityHashCode(proxy); case "equals": return proxy == args[0]; case "toString": return "stub-" + id; default: return null; } }); }
+    // Stands in for the lease renewals of a started primary, each granted by every stub backup, so writes pass requireLease(); shut it down with the node
+    static ScheduledExecutorService grantLeases(ServerNodeState st, String... backups) { ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> { Thread t = new Thread(r, "bench-lease"); t.setDaemon(true); return t; });
+        s.scheduleAtFixedRate(() -> { long now = System.currentTimeMillis(); for (String b : backups) st.noteLeaseAck(b, now); }, 0, ServerNodeState.LEASE_RENEW, TimeUnit.MILLISECONDS); return s; }
+}
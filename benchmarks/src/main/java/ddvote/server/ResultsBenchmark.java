@@ -0,0 +1,19 @@
+package ddvote.server;
+import ddvote.shared.*;
+import org.openjdk.jmh.annotations.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+// getRes() with growing candidate counts: the published view most readers get, and the rebuild paid once per refresh interval (Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS) @State(Scope.Benchmark) @Fork(1)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+public class ResultsBenchmark {
+    @Param({ "2", "100", "10000" }) int candidates;
+    ServerNodeState state;
+
+    @Setup public void setup() throws InterruptedException { state = Harness.newState(); List<Candidate> cs = new ArrayList<>(candidates); Map<String, Long> counts = new HashMap<>(); Random rnd = new Random(42);
+        for (int i = 0; i < candidates; i++) { cs.add(new Candidate("C" + i, "Name" + i, "D" + i)); counts.put("C" + i, (long) rnd.nextInt(1_000_000)); }
+        state.tally.reset(cs, counts); Thread.sleep(Long.getLong("ddvote.results.refreshMs", 200) + 50); state.getRes(); } // Let the cache pick up the new table
+
+    @Benchmark public List<VoteResult> getRes() { return state.getRes(); }
+    @Benchmark public List<VoteResult> rebuild() { return state.tally.snapshot(); }
+}
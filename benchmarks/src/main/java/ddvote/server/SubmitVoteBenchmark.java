@@ -0,0 +1,32 @@
+package ddvote.server;
+import ddvote.shared.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+// VotingServerNode.submitVote on an in-JVM primary replicating to in-process stub backups (Benchmark)
+// Covers admission, clock tick, sequencing into every peer stream and, for QUORUM/ALL, the wait for acks; no RMI or network
+@BenchmarkMode(Mode.SingleShotTime) @OutputTimeUnit(TimeUnit.MILLISECONDS) @Threads(4) @State(Scope.Benchmark) @Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+@Warmup(iterations = 5, batchSize = SubmitVoteBenchmark.BATCH) @Measurement(iterations = 10, batchSize = SubmitVoteBenchmark.BATCH)
+public class SubmitVoteBenchmark {
+    static final int BATCH = 20_000;
+    @Param({ "ASYNC", "QUORUM", "ALL" }) WriteConsistency consistency;
+    @Param({ "2" }) int backups;
+    VotingServerNode node; ScheduledExecutorService leases;
+
+    @Setup(Level.Trial) public void start() throws Exception { Harness.quiet(); node = new VotingServerNode("bench-primary", "localhost");
+        ServerNodeState st = node.state(); st.setPrimaryId("bench-primary"); st.setElecState(ElectionState.RUNNING);
+        String[] ids = new String[backups]; for (int i = 0; i < backups; i++) { ids[i] = "bench-backup" + i; node.addPeer(ids[i], Harness.stubPeer(ids[i]), new PrimaryHint("bench-primary", 0, 0, ShardMap.SHARDS)); }
+        leases = Harness.grantLeases(st, ids); }
+    @Setup(Level.Iteration) public void register(BenchmarkParams p) { for (int t = 0; t < p.getThreads(); t++) for (String id : Harness.voterIds("i" + iteration + "t" + t, BATCH)) node.state().addVoter(id, "pw"); }
+    @TearDown(Level.Iteration) public void next() { iteration++; }
+    @TearDown(Level.Trial) public void stop() { leases.shutdownNow(); node.shutdown(); }
+    int iteration; // Fresh voter ids every iteration; the state only grows
+
+    @State(Scope.Thread) public static class Cursor { int thread, i; String prefix;
+        @Setup(Level.Trial) public void thread(ThreadParams t) { thread = t.getThreadIndex(); }
+        @Setup(Level.Iteration) public void rewind(SubmitVoteBenchmark b) { i = 0; prefix = "i" + b.iteration + "t" + thread + "-v"; } }
+
+    @Benchmark public NodeService.VoteResultStatus submitVote(Cursor c) throws Exception { return node.submitVote(c.prefix + (c.i++ % BATCH), (c.i & 1) == 0 ? "C1" : "C2", consistency); }
+}
@@ -0,0 +1,24 @@
+package ddvote.server;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import java.util.concurrent.TimeUnit;
+// ServerNodeState.addVote / addVoter with several threads admitting at once (Benchmark)
+// A vote consumes its voter, so every iteration is one shot of BATCH calls per thread over a fresh state; the score is time per shot
+@BenchmarkMode(Mode.SingleShotTime) @OutputTimeUnit(TimeUnit.MILLISECONDS) @Threads(4) @Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+@Warmup(iterations = 5, batchSize = VoteAdmissionBenchmark.BATCH) @Measurement(iterations = 10, batchSize = VoteAdmissionBenchmark.BATCH)
+public class VoteAdmissionBenchmark {
+    static final int BATCH = 100_000;
+
+    @State(Scope.Benchmark) public static class Registered { ServerNodeState state; // Every thread's voters registered, none voted
+        @Setup(Level.Iteration) public void setup(BenchmarkParams p) { state = Harness.newState(); for (int t = 0; t < p.getThreads(); t++) for (String id : Harness.voterIds("t" + t, BATCH)) state.addVoter(id, "pw"); } }
+    @State(Scope.Benchmark) public static class Empty { ServerNodeState state;
+        @Setup(Level.Iteration) public void setup() { state = Harness.newState(); } }
+    @State(Scope.Thread) public static class Cursor { String[] ids; int i;
+        @Setup(Level.Trial) public void ids(ThreadParams t) { ids = Harness.voterIds("t" + t.getThreadIndex(), BATCH); }
+        @Setup(Level.Iteration) public void rewind() { i = 0; }
+        String next() { return ids[i++ % BATCH]; } }
+
+    @Benchmark public boolean addVote(Registered r, Cursor c) { return r.state.addVote(c.next(), (c.i & 1) == 0 ? "C1" : "C2"); }
+    @Benchmark public boolean addVoter(Empty e, Cursor c) { return e.state.addVoter(c.next(), "pw"); } // Registration is single-writer: this measures the lock under contention
+}
@@ -0,0 +1,29 @@
+package ddvote.shared;
+import org.openjdk.jmh.annotations.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+// Java serialization round trips of the inter-node messages (what RMI does per call), next to the raw WireCodec form they now ship as (Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS) @State(Scope.Thread) @Fork(1)
+@Warmup(iterations = 3) @Measurement(iterations = 5)
+public class SerializationBenchmark {
+    @Param({ "vote", "register", "votes512", "election" }) String message;
+    Object msg; byte[] serialized, encoded;
+
+    @Setup public void setup() throws IOException { VectorClock clock = new VectorClock(); for (String id : new String[] { "n1", "n2", "n3" }) clock.tick(id); clock = clock.copy();
+        switch (message) {
+            case "vote": msg = new ReplicationUpdate(ReplicationUpdate.UpdateType.RECORD_VOTE, new ReplicationUpdate.VoteData("voter-12345", "C1"), clock); break;
+            case "register": msg = new ReplicationUpdate(ReplicationUpdate.UpdateType.REGISTER_VOTER, new Credentials("voter-12345", "secret"), clock); break;
+            case "votes512": ArrayList<ReplicationUpdate.VoteData> vs = new ArrayList<>(); for (int i = 0; i < 512; i++) vs.add(new ReplicationUpdate.VoteData("voter-" + i, i % 2 == 0 ? "C1" : "C2"));
+                msg = new ReplicationUpdate(ReplicationUpdate.UpdateType.RECORD_VOTES, vs, clock); break;
+            case "election": msg = new ElectionMessage(ElectionMessageType.COORDINATOR, "n3", clock, 7); break;
+            default: throw new IllegalArgumentException(message); }
+        serialized = serialize(msg); encoded = WireCodec.encode(msg); }
+
+    @Benchmark public byte[] javaSerialize() throws IOException { return serialize(msg); }
+    @Benchmark public Object javaDeserialize() throws IOException, ClassNotFoundException { try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) { return in.readObject(); } }
+    @Benchmark public byte[] wireEncode() { return WireCodec.encode(msg); }
+    @Benchmark public Object wireDecode() throws InvalidObjectException { return WireCodec.decode(encoded); }
+
+    private static byte[] serialize(Object o) throws IOException { ByteArrayOutputStream bytes = new ByteArrayOutputStream(256); try (ObjectOutputStream out = new ObjectOutputStream(bytes)) { out.writeObject(o); } return bytes.toByteArray(); }
+}
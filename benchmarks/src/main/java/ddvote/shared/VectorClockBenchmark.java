@@ -0,0 +1,18 @@
+package ddvote.shared;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+// VectorClock tick / merge / copy / compare as the number of nodes the clock has seen grows (Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS) @State(Scope.Thread) @Fork(1)
+@Warmup(iterations = 3) @Measurement(iterations = 5)
+public class VectorClockBenchmark {
+    @Param({ "2", "8", "64", "512" }) int nodes;
+    VectorClock clock, remote; String self;
+
+    @Setup public void setup() { clock = new VectorClock(); VectorClock r = new VectorClock();
+        for (int i = 0; i < nodes; i++) { String id = "bench-n" + i; clock.tick(id); r.tick(id); r.tick(id); } self = "bench-n0"; remote = r.copy(); }
+
+    @Benchmark public void tick() { clock.tick(self); }
+    @Benchmark public VectorClock merge() { clock.merge(remote); return clock; }
+    @Benchmark public VectorClock copy() { return clock.copy(); }
+    @Benchmark public VectorClock.Order compare() { return remote.compare(clock); }
+}
@@ -79,6 +79,7 @@ public class ClientGUI extends JFrame {
         voteButton.setEnabled(enable); }
     void handleVoteResponse(NodeService.VoteResultStatus status) { switch (status) { case ACCEPTED: showInfo("Vote Accepted."); updateVotingStatus(true); break;
         case REJECTED_ALREADY_VOTED: showWarning("Already Voted."); updateVotingStatus(true); break; case REJECTED_LOCK_BUSY: showError("Server busy, please try again."); break;
+        case ACCEPTED_NOT_REPLICATED: showWarning("Vote recorded, but not yet confirmed by the backup servers."); updateVotingStatus(true); break;
         default: showError("Vote Rejected: " + status); break; } updateVoteButtonState(); } // Re-enable if needed
     void clearAll() { clearCandidates(); clearResults(); updateVotingStatus(false); }
     void clearCandidates() { candidatesPanel.removeAll(); candidatesPanel.add(new JLabel("(Connect...)")); candidateMap.clear(); candidatesPanel.revalidate(); candidatesPanel.repaint(); }
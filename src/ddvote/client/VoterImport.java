@@ -0,0 +1,120 @@
+package ddvote.client;
+import ddvote.naming.NamingService;
+import ddvote.server.NodeService;
+import ddvote.shared.*;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+// Bulk voter import: streams a voter file into the cluster as deflated per-shard segments (Client Tool)
+// Input is CSV (voterId,password per line; blank lines, '#' comments and a voterId,password header are skipped) or the binary form:
+// "DDVOTERS" then [u8 length][voterId][u8 length][password] records in UTF-8, which --binary writes from a CSV file.
+// The file is read through memory-mapped windows; segments are built, compressed and sent by STREAMS threads at once, each to its shard's primary.
+// Progress is checkpointed to <file>.import, so running the same import again resumes where the last run stopped.
+public class VoterImport {
+    private static final Logger LOGGER = Logger.getLogger(VoterImport.class.getName());
+    static final byte[] MAGIC = "DDVOTERS".getBytes(StandardCharsets.US_ASCII);
+    static final int SEGMENT = Integer.getInteger("ddvote.import.segmentVoters", 20000); // Voters per segment
+    static final int STREAMS = Integer.getInteger("ddvote.import.streams", 4); // Segments in flight at once
+    static final int ATTEMPTS = Integer.getInteger("ddvote.import.attempts", 20); // Per segment, across leader changes
+    static final long PROGRESS_MS = Long.getLong("ddvote.import.progressMs", 2000); // Progress line and checkpoint interval
+    private static final long WINDOW = 256L << 20; private static final int MAX_RECORD = 1024; // Bytes mapped at a time; no record is longer than MAX_RECORD
+    private final String namingHost; private final Path file, checkpoint;
+    private final Map<String, NodeService> nodes = new ConcurrentHashMap<>(); private final Map<Integer, String> leaders = new ConcurrentHashMap<>(); // Shard -> primary, from hints
+    private volatile ShardMap shardMap;
+    // Resume point: the lowest offset of any record not yet acknowledged. Open and in-flight segments are keyed by their first record (guarded by this)
+    private final TreeSet<Long> unacked = new TreeSet<>(); private long readPos;
+    private final Semaphore inFlight = new Semaphore(STREAMS * 2); private final ExecutorService senders = Executors.newFixedThreadPool(STREAMS);
+    private final AtomicLong sent = new AtomicLong(), added = new AtomicLong(); private volatile Exception failure;
+
+    VoterImport(String namingHost, Path file) { this.namingHost = namingHost; this.file = file; this.checkpoint = file.resolveSibling(file.getFileName() + ".import"); }
+
+    // --- Import ---
+    boolean run(boolean restart) throws Exception { connect(); long size = Files.size(file), start = restart ? 0 : resumeOffset(size); readPos = start; long t0 = System.currentTimeMillis();
+        if (start >= size && size > 0) { LOGGER.info(file + " already imported (" + checkpoint + "); use --restart to import it again"); return true; }
+        if (start > 0) LOGGER.info("Resuming " + file + " at byte " + start + " of " + size);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> { Thread t = new Thread(r, "import-progress"); t.setDaemon(true); return t; });
+        progress.scheduleAtFixedRate(() -> report(size, t0), PROGRESS_MS, PROGRESS_MS, TimeUnit.MILLISECONDS);
+        Map<Integer, List<Credentials>> open = new HashMap<>(); Map<Integer, Long> openFrom = new HashMap<>();
+        try { scan(file, start, (from, to, id, pw) -> { if (failure != null) throw failure; int s = shardMap.shardOf(id);
+                List<Credentials> batch = open.get(s); if (batch == null) { open.put(s, batch = new ArrayList<>(SEGMENT)); openFrom.put(s, from); synchronized (this) { unacked.add(from); } }
+                batch.add(new Credentials(id, pw)); if (batch.size() == SEGMENT) { dispatch(s, openFrom.remove(s), open.remove(s)); synchronized (this) { readPos = to; } } });
+            for (Map.Entry<Integer, List<Credentials>> e : open.entrySet()) dispatch(e.getKey(), openFrom.get(e.getKey()), e.getValue());
+            synchronized (this) { readPos = size; } }
+        catch (Exception e) { if (failure == null) failure = e; } // Unsent segments stay in unacked, so the checkpoint stops before them
+        try { inFlight.acquire(STREAMS * 2); } finally { senders.shutdownNow(); progress.shutdownNow(); } // Every dispatched segment settled
+        report(size, t0); if (failure != null) { LOGGER.severe("Import stopped: " + failure.getMessage() + "; rerun to resume from the checkpoint"); return false; }
+        LOGGER.info("Imported " + file + ": " + sent.get() + " voters sent, " + added.get() + " new, in " + (System.currentTimeMillis() - t0) + "ms"); return true; }
+    private void dispatch(int shard, long from, List<Credentials> voters) throws InterruptedException { inFlight.acquire();
+        senders.execute(() -> { try { if (failure == null) { int n = send(VoterSegment.of(shard, shardMap.shards(), voters)); sent.addAndGet(voters.size()); added.addAndGet(n); synchronized (this) { unacked.remove(from); } } }
+            catch (Exception e) { if (failure == null) failure = e; } finally { inFlight.release(); } }); }
+    // Resending is harmless (registration is idempotent), so any failure is retried, through whichever node is reachable when the leader is not
+    private int send(VoterSegment seg) throws Exception { long backoff = 100; for (int attempt = 1; ; attempt++) { String id = leaders.get(seg.getShard()); NodeService node = id == null ? null : nodes.get(id);
+        if (node == null) { List<String> ids = new ArrayList<>(nodes.keySet()); if (ids.isEmpty()) { connect(); continue; } id = ids.get(ThreadLocalRandom.current().nextInt(ids.size())); node = nodes.get(id); if (node == null) continue; }
+        if (failure != null) throw failure; // Another segment failed for good: stop retrying, the rerun resends this one
+        try { WriteReceipt<Integer> r = node.registerVoterSegment(seg); noteHint(r.getHint()); return r.getResult(); }
+        catch (RemoteException e) { if (attempt >= ATTEMPTS) throw e; LOGGER.warning(seg + " via " + id + " failed (attempt " + attempt + "): " + e.getMessage());
+            if (RemoteObjectUtils.isConnectFailure(e)) { RemoteObjectUtils.invalidate(node); nodes.remove(id, node); } leaders.remove(seg.getShard(), id);
+            Thread.sleep(backoff); backoff = Math.min(backoff * 2, 5000); } } }
+    private synchronized long resumePoint() { return unacked.isEmpty() ? readPos : Math.min(unacked.first(), readPos); }
+    private void report(long size, long t0) { long at = resumePoint(), ms = Math.max(1, System.currentTimeMillis() - t0);
+        LOGGER.info(String.format("%s: %.1f%% (%d of %d bytes), %d voters sent, %d new, %d voters/s", file.getFileName(), size == 0 ? 100.0 : 100.0 * at / size, at, size, sent.get(), added.get(), sent.get() * 1000 / ms));
+        try { saveCheckpoint(size); } catch (IOException e) { LOGGER.warning("Checkpoint " + checkpoint + " not written: " + e.getMessage()); } }
+
+    // --- Checkpoint ---
+    // Written beside the file, replaced atomically; it only applies to the exact file (size and modification time) it was taken for
+    private synchronized void saveCheckpoint(long size) throws IOException { Properties p = new Properties(); p.setProperty("size", Long.toString(size)); p.setProperty("modified", Long.toString(Files.getLastModifiedTime(file).toMillis()));
+        p.setProperty("offset", Long.toString(resumePoint())); Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) { p.store(out, "ddvote voter import of " + file.getFileName()); } Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); }
+    private long resumeOffset(long size) throws IOException { if (!Files.exists(checkpoint)) return 0; Properties p = new Properties(); try (InputStream in = Files.newInputStream(checkpoint)) { p.load(in); }
+        if (Long.parseLong(p.getProperty("size", "-1")) != size || Long.parseLong(p.getProperty("modified", "-1")) != Files.getLastModifiedTime(file).toMillis()) { LOGGER.warning(file + " changed since " + checkpoint + " was written, starting over"); return 0; }
+        return Long.parseLong(p.getProperty("offset", "0")); }
+
+    // --- Cluster ---
+    private synchronized void connect() throws Exception { NamingService ns = RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(namingHost, NamingService.LOOKUP_NAME));
+        for (Map.Entry<String, String> e : ns.listServices().entrySet()) { if (!e.getKey().startsWith(NodeService.SERVICE_NAME_PREFIX)) continue; String id = e.getKey().substring(NodeService.SERVICE_NAME_PREFIX.length());
+            try { NodeService stub = RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(namingHost, e.getValue())); noteHint(stub.getPrimaryHint()); nodes.put(id, stub); }
+            catch (Exception ex) { LOGGER.fine("Node " + id + " not reachable: " + ex.getMessage()); } }
+        if (nodes.isEmpty()) throw new RemoteException("No voting node reachable through " + namingHost); }
+    private void noteHint(PrimaryHint h) { if (h == null) return; ShardMap m = shardMap; if (m == null || m.shards() != h.getShards()) shardMap = new ShardMap(h.getShards());
+        if (!h.isKnown()) return; leaders.put(h.getShard(), h.getPrimaryId()); if (nodes.containsKey(h.getPrimaryId())) return;
+        try { nodes.put(h.getPrimaryId(), RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(namingHost, NodeService.SERVICE_NAME_PREFIX + h.getPrimaryId()))); }
+        catch (Exception e) { LOGGER.fine("Leader " + h.getPrimaryId() + " not resolvable: " + e.getMessage()); } }
+
+    // --- Voter files ---
+    @FunctionalInterface interface RecordSink { void accept(long from, long to, String voterId, String password) throws Exception; } // [from, to) is the record's byte range
+    // Maps the file a window at a time; a window ends early rather than split a record, and the next one is mapped from that record on
+    static void scan(Path file, long from, RecordSink sink) throws Exception { try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) { long size = ch.size(); boolean binary = isBinary(ch);
+        long pos = Math.max(from, binary ? MAGIC.length : 0); byte[] field = new byte[MAX_RECORD];
+        while (pos < size) { int len = (int) Math.min(WINDOW, size - pos); boolean last = pos + len == size; MappedByteBuffer w = ch.map(FileChannel.MapMode.READ_ONLY, pos, len); int p = 0;
+            while (p < len && (last || len - p >= MAX_RECORD)) { int start = p; String id, pw;
+                if (binary) { int il = w.get(p++) & 0xFF; w.get(p, field, 0, il); id = new String(field, 0, il, StandardCharsets.UTF_8); p += il;
+                    int pl = w.get(p++) & 0xFF; w.get(p, field, 0, pl); pw = new String(field, 0, pl, StandardCharsets.UTF_8); p += pl; }
+                else { int end = start, limit = Math.min(len, start + MAX_RECORD); while (end < limit && w.get(end) != '\n') end++; if (end == limit && end < len) throw new IOException("Line longer than " + MAX_RECORD + " bytes at offset " + (pos + start));
+                    p = end < len ? end + 1 : end; if (end > start && w.get(end - 1) == '\r') end--; int comma = start; while (comma < end && w.get(comma) != ',') comma++;
+                    if (end == start || w.get(start) == '#') continue; if (comma == end) throw new IOException("No comma in line at offset " + (pos + start));
+                    w.get(start, field, 0, end - start); id = new String(field, 0, comma - start, StandardCharsets.UTF_8).trim(); pw = new String(field, comma - start + 1, end - comma - 1, StandardCharsets.UTF_8).trim();
+                    if (pos + start == 0 && id.equalsIgnoreCase("voterId") && pw.equalsIgnoreCase("password")) continue; }
+                sink.accept(pos + start, pos + p, id, pw); }
+            pos += p; } } }
+    private static boolean isBinary(FileChannel ch) throws IOException { if (ch.size() < MAGIC.length) return false; java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(MAGIC.length); ch.read(b, 0); return Arrays.equals(b.array(), MAGIC); }
+    // Converts any voter file to the binary form, which skips line parsing and allows any character (commas too) in ids and passwords
+    static long toBinary(Path in, Path out) throws Exception { long[] n = { 0 }; try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) { o.write(MAGIC);
+        scan(in, 0, (from, to, id, pw) -> { byte[] ib = id.getBytes(StandardCharsets.UTF_8), pb = pw.getBytes(StandardCharsets.UTF_8);
+            if (ib.length > VoterSegment.MAX_FIELD || pb.length > VoterSegment.MAX_FIELD) throw new IOException("Voter field longer than " + VoterSegment.MAX_FIELD + " bytes at offset " + from);
+            o.write(ib.length); o.write(ib); o.write(pb.length); o.write(pb); n[0]++; }); } return n[0]; }
+
+    // --- Main ---
+    public static void main(String[] args) { try {
+            if (args.length == 3 && args[0].equals("--binary")) { LOGGER.info("Wrote " + toBinary(Paths.get(args[1]), Paths.get(args[2])) + " voters to " + args[2]); System.exit(0); }
+            if (args.length < 2 || (args.length == 3 && !args[2].equals("--restart")) || args.length > 3) { System.err.println("Usage: VoterImport <namingHost> <voterFile> [--restart]\n       VoterImport --binary <in.csv> <out.bin>"); System.exit(2); }
+            System.exit(new VoterImport(args[0], Paths.get(args[1])).run(args.length == 3) ? 0 : 1); }
+        catch (Exception e) { LOGGER.log(Level.SEVERE, "Import failed", e); System.exit(1); } }
+}
@@ -4,8 +4,8 @@ import ddvote.server.NodeService;
 import ddvote.shared.*;
 import javax.swing.*;
 import java.rmi.*;
-import java.util.List;
-import java.util.Map;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.logging.*;
 import java.util.Date;
@@ -15,40 +15,89 @@ public class VotingClient {
     private final ClientGUI gui; private final ExecutorService executor;
     private String namingHost; private NamingService namingStub; private NodeService primaryStub;
     private String primaryId; private volatile boolean connected = false; private String loggedInVoterId = null;
+    private long resultsVersion = 0; private String resultsNode = null; private final Map<String, VoteResult> results = new LinkedHashMap<>(); // Merged from deltas (guarded by itself)
+    private final Map<String, Replica> replicas = new ConcurrentHashMap<>(); private volatile ReadToken seenToken = null; // Reads must reflect our own writes
+    private final Map<Integer, Replica> leaders = new ConcurrentHashMap<>(); private final Map<Integer, Long> leaderEpochs = new HashMap<>(); // Per shard, where writes go directly; epochs guarded by this
+    private volatile ShardMap shardMap = new ShardMap(1); // Replaced once a hint reports the cluster's shard count
+    private static final long REPLICA_DOWN_MS = 5000; private static final double EWMA_ALPHA = 0.2; private static final long PROBE_TIMEOUT_MS = 3000;
+    private final ExecutorService probes = Executors.newCachedThreadPool(r -> { Thread t = new Thread(r, "replica-probe"); t.setDaemon(true); return t; });
+    private final PushListener listener = new PushListener(); private boolean listenerExported = false; private volatile long subscriptionId = -1;
 
     public VotingClient(ClientGUI gui) { this.gui = gui; this.executor = Executors.newSingleThreadExecutor(); setupLogger(); }
     public void connect(String host) { if (connected) return; this.namingHost = host.trim(); gui.setConnectEnabled(false);
         executor.submit(() -> { try { String url = "rmi://" + namingHost + ":" + RemoteObjectUtils.RMI_REGISTRY_PORT + "/" + NamingService.LOOKUP_NAME;
             namingStub = RemoteObjectUtils.lookupObject(url); logAndUpdate("Connected Naming Service."); if (findPrimary()) { connected = true;
-                logAndUpdate("Connected Primary: " + primaryId); fetchInitialState(); } else { logAndUpdate("ERROR: Primary not found."); disconnect(); }
+                logAndUpdate("Connected Primary: " + primaryId); fetchInitialState(); subscribe(); } else { logAndUpdate("ERROR: Primary not found."); disconnect(); }
         } catch (Exception e) { logAndUpdate("ERROR: Connect failed: " + e.getMessage()); disconnect(); } finally { SwingUtilities.invokeLater(() -> gui.setConnectEnabled(true)); } }); }
-    private boolean findPrimary() { if (namingStub == null) return false; try { Map<String, String> services = namingStub.listServices();
-        for (Map.Entry<String, String> e : services.entrySet()) { if (e.getKey().startsWith(NodeService.SERVICE_NAME_PREFIX)) { String id = e.getKey().substring(NodeService.SERVICE_NAME_PREFIX.length());
-            try { NodeService p = RemoteObjectUtils.lookupObject(e.getValue()); p.getElectionState(); /* Ping */ primaryStub = p; primaryId = id; return true; } catch (Exception ex) { continue; } } }
-    } catch (RemoteException e) { LOGGER.warning("List services failed"); } primaryStub = null; primaryId = null; return false; }
-    private void fetchInitialState() { execute(stub -> { ElectionState es = stub.getElectionState(); List<Candidate> cs = stub.getCandidates();
+    // Every node is probed at once: the first one that answers takes writes (any node forwards them to the primary), the others join the read set as they answer
+    private boolean findPrimary() { if (namingStub == null) return false; Map<String, String> services; try { services = namingStub.listServices(); } catch (RemoteException e) { LOGGER.warning("List services failed"); return false; }
+        replicas.clear(); synchronized (this) { leaders.clear(); leaderEpochs.clear(); } CompletableFuture<Replica> first = new CompletableFuture<>(); List<CompletableFuture<Void>> all = new ArrayList<>();
+        for (Map.Entry<String, String> e : services.entrySet()) { if (!e.getKey().startsWith(NodeService.SERVICE_NAME_PREFIX)) continue; String id = e.getKey().substring(NodeService.SERVICE_NAME_PREFIX.length());
+            String url = RemoteObjectUtils.rmiUrl(namingHost, e.getValue()); all.add(CompletableFuture.runAsync(() -> { Replica r = probe(id, url); if (r != null) first.complete(r); }, probes)); }
+        CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).thenRun(() -> first.complete(null)); Replica r;
+        try { r = first.get(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS); } catch (Exception e) { r = null; } primaryStub = r == null ? null : r.stub; primaryId = r == null ? null : r.id; return r != null; }
+    private Replica probe(String id, String url) { for (int attempt = 0; attempt < 2; attempt++) { NodeService p = null; // A cached stub may be stale: drop it and look up once more
+        try { p = RemoteObjectUtils.lookupObject(url); long t0 = System.nanoTime(); PrimaryHint h = p.getPrimaryHint(); /* Ping */ Replica r = new Replica(id, p); r.observe(t0); replicas.put(id, r); noteHint(h); return r; }
+        catch (Exception e) { if (p == null || !RemoteObjectUtils.isConnectFailure(e)) return null; RemoteObjectUtils.invalidate(p); } } return null; }
+    private void fetchInitialState() { read((stub, node, after) -> { ElectionState es = stub.getElectionState(after); List<Candidate> cs = stub.getCandidates(after);
         SwingUtilities.invokeLater(() -> { gui.updateElectionStatus(es); gui.displayCandidates(cs); logAndUpdate("Election: "+es); }); return null; }, "fetch state"); }
-    public void disconnect() { connected = false; namingStub = null; primaryStub = null; primaryId = null; loggedInVoterId = null;
+    public void disconnect() { NodeService old = primaryStub; long sub = subscriptionId; subscriptionId = -1; if (old != null && sub >= 0) executor.submit(() -> { try { old.unsubscribe(sub); } catch (Exception e) { /* Server drops dead subscribers itself */ } });
+        connected = false; namingStub = null; primaryStub = null; primaryId = null; loggedInVoterId = null; replicas.clear(); seenToken = null; synchronized (this) { leaders.clear(); leaderEpochs.clear(); }
         SwingUtilities.invokeLater(() -> { gui.updateConnectionStatus(false, "Disconnected"); gui.updateLoginStatus(false, null); gui.clearAll(); }); }
     // --- RMI Call Wrapper ---
     private <T> T execute(RemoteOperation<T> op, String desc) { if (primaryStub == null) { logAndUpdate("ERROR: Not connected."); return null; }
-        try { return op.execute(primaryStub); } catch (ConnectException | NoSuchObjectException ce) { handleReconnect(desc, ce); return null; }
+        try { return op.execute(primaryStub); } catch (ConnectException | NoSuchObjectException ce) { RemoteObjectUtils.invalidate(primaryStub); handleReconnect(desc, ce); return null; }
         catch (RemoteException re) { logAndUpdate("ERROR ("+desc+"): "+re.getMessage()); return null; } catch (Exception e) { logAndUpdate("UNEXPECTED ERROR ("+desc+"): "+e.getMessage()); return null;} }
     private void handleReconnect(String opDesc, Exception e) { logAndUpdate("ERROR ("+opDesc+"): Connection lost: " + e.getMessage()); primaryStub = null; primaryId = null;
         SwingUtilities.invokeLater(() -> gui.updateConnectionStatus(false, "Connection Lost")); executor.submit(() -> { logAndUpdate("Attempting reconnect...");
             if (findPrimary()) { connected = true; logAndUpdate("Reconnected Primary: " + primaryId); SwingUtilities.invokeLater(() -> gui.updateConnectionStatus(true, "Reconnected: " + primaryId));
-                fetchInitialState(); if (loggedInVoterId != null) { logAndUpdate("Please login again."); loggedInVoterId = null; SwingUtilities.invokeLater(() -> gui.updateLoginStatus(false, null)); }
+                fetchInitialState(); subscribe(); if (loggedInVoterId != null) { logAndUpdate("Please login again."); loggedInVoterId = null; SwingUtilities.invokeLater(() -> gui.updateLoginStatus(false, null)); }
             } else { logAndUpdate("Reconnect failed."); disconnect(); } }); }
     @FunctionalInterface interface RemoteOperation<T> { T execute(NodeService stub) throws Exception; }
+    // --- Read Balancing (any healthy node serves reads; pick the faster of two random nodes, fall back to the write node) ---
+    private static final class Replica { final String id; final NodeService stub; volatile double latencyMs = -1; volatile long downUntil = 0;
+        Replica(String id, NodeService stub) { this.id = id; this.stub = stub; }
+        void observe(long startNanos) { double ms = (System.nanoTime() - startNanos) / 1e6; latencyMs = latencyMs < 0 ? ms : latencyMs + EWMA_ALPHA * (ms - latencyMs); } }
+    private Replica pickReplica() { long now = System.currentTimeMillis(); List<Replica> up = new ArrayList<>(replicas.size()); for (Replica r : replicas.values()) if (r.downUntil <= now) up.add(r);
+        if (up.isEmpty()) return null; ThreadLocalRandom rnd = ThreadLocalRandom.current(); Replica a = up.get(rnd.nextInt(up.size())), b = up.get(rnd.nextInt(up.size()));
+        return a.latencyMs <= b.latencyMs ? a : b; }
+    private <T> T read(ReadOperation<T> op, String desc) { Replica r = pickReplica(); if (r != null) { long t0 = System.nanoTime();
+            try { T v = op.execute(r.stub, r.id, seenToken); r.observe(t0); return v; }
+            catch (StaleReadException se) { r.observe(t0); LOGGER.fine("Stale read at " + r.id + " (" + desc + "): " + se.getMessage()); } // Healthy, just behind
+            catch (Exception e) { r.downUntil = System.currentTimeMillis() + REPLICA_DOWN_MS; if (RemoteObjectUtils.isConnectFailure(e)) RemoteObjectUtils.invalidate(r.stub); LOGGER.fine("Read from " + r.id + " failed (" + desc + "): " + e.getMessage()); } }
+        return execute(stub -> op.execute(stub, primaryId, seenToken), desc); }
+    private void noteToken(ReadToken t) { ReadToken seen = seenToken; if (t != null && (seen == null || !seen.covers(t))) seenToken = t; }
+    @FunctionalInterface interface ReadOperation<T> { T execute(NodeService stub, String nodeId, ReadToken after) throws Exception; }
+    // --- Leader Routing (a write goes straight to the primary of its voter's shard, named by the freshest hint; the write node, which routes and forwards, covers leadership changes) ---
+    private synchronized void noteHint(PrimaryHint h) { if (h == null) return; if (h.getShards() != shardMap.shards()) { shardMap = new ShardMap(h.getShards()); leaders.clear(); leaderEpochs.clear(); }
+        int s = h.getShard(); if (!h.isKnown() || h.getEpoch() < leaderEpochs.getOrDefault(s, -1L)) return; Replica l = leaders.get(s); if (l != null && l.id.equals(h.getPrimaryId())) { leaderEpochs.put(s, h.getEpoch()); return; }
+        Replica r = replicas.get(h.getPrimaryId()); if (r == null) { try { r = new Replica(h.getPrimaryId(), RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(namingHost, NodeService.SERVICE_NAME_PREFIX + h.getPrimaryId()))); replicas.put(r.id, r); }
+            catch (Exception e) { LOGGER.fine("Leader " + h.getPrimaryId() + " not resolvable: " + e.getMessage()); return; } }
+        leaders.put(s, r); leaderEpochs.put(s, h.getEpoch()); LOGGER.info("Leader" + (shardMap.shards() > 1 ? " of shard " + s : "") + ": " + r.id + " (epoch " + h.getEpoch() + ")"); }
+    private <T extends java.io.Serializable> WriteReceipt<T> write(RemoteOperation<WriteReceipt<T>> op, String voterId, String desc) { int s = shardMap.shardOf(voterId); Replica l = leaders.get(s); WriteReceipt<T> rc = null;
+        if (l != null) { try { rc = op.execute(l.stub); } catch (ConnectException | NoSuchObjectException e) { // Never delivered, so resending through the write node is safe
+                RemoteObjectUtils.invalidate(l.stub); leaders.remove(s, l); LOGGER.info("Leader " + l.id + " unreachable, writing via " + primaryId); }
+            catch (Exception e) { logAndUpdate("ERROR ("+desc+"): "+e.getMessage()); return null; } }
+        if (rc == null) rc = execute(op, desc); if (rc == null) return null; noteToken(rc.getToken()); noteHint(rc.getHint()); return rc; }
     // --- Requests ---
-    public void reqRegister(String id, String pw) { execute(stub -> { boolean ok = stub.registerVoter(new Credentials(id, pw)); SwingUtilities.invokeLater(() -> {
-        if(ok) gui.showInfo("Registered."); else gui.showError("Register Failed (Exists?)."); }); return null; }, "register"); }
-    public void reqLogin(String id, String pw) { execute(stub -> { String vId = stub.loginVoter(new Credentials(id, pw)); loggedInVoterId = vId;
+    public void reqRegister(String id, String pw) { WriteReceipt<Boolean> rc = write(stub -> stub.registerVoterWithReceipt(new Credentials(id, pw)), id, "register"); if (rc == null) return;
+        SwingUtilities.invokeLater(() -> { if (!rc.getResult()) gui.showError("Register Failed (Exists?)."); else if (rc.isReplicated()) gui.showInfo("Registered.");
+            else gui.showWarning("Registered, but not yet confirmed by the backup servers."); }); }
+    public void reqLogin(String id, String pw) { read((stub, node, after) -> { String vId = stub.loginVoter(new Credentials(id, pw), after); loggedInVoterId = vId;
         SwingUtilities.invokeLater(() -> { gui.updateLoginStatus(vId != null, vId); if(vId != null) fetchInitialState(); else gui.showError("Login Failed."); }); return null; }, "login"); }
-    public void reqCandidates() { execute(stub -> { List<Candidate> cs = stub.getCandidates(); SwingUtilities.invokeLater(() -> gui.displayCandidates(cs)); return null; }, "get candidates"); }
-    public void reqResults() { execute(stub -> { List<VoteResult> rs = stub.getResults(); SwingUtilities.invokeLater(() -> gui.displayResults(rs)); return null; }, "get results"); }
+    public void reqCandidates() { read((stub, node, after) -> { List<Candidate> cs = stub.getCandidates(after); SwingUtilities.invokeLater(() -> gui.displayCandidates(cs)); return null; }, "get candidates"); }
+    public void reqResults() { read((stub, node, after) -> { long v; synchronized (results) { v = Objects.equals(node, resultsNode) ? resultsVersion : 0; } // Versions are per node
+        List<VoteResult> rs = mergeResults(stub.getResultsSince(v, after), node); SwingUtilities.invokeLater(() -> gui.displayResults(rs)); return null; }, "get results"); }
+    private List<VoteResult> mergeResults(ResultsDelta d, String node) { synchronized (results) { if (d.isFull()) results.clear(); d.getResults().forEach(r -> results.put(r.getCandidateId(), r));
+        resultsVersion = d.getVersion(); resultsNode = node; List<VoteResult> rs = new ArrayList<>(results.values()); rs.sort((r1, r2) -> Long.compare(r2.getVoteCount(), r1.getVoteCount())); return rs; } }
+    // --- Push Subscription (replaces polling: the node pushes coalesced results deltas and election-state changes) ---
+    private void subscribe() { execute(stub -> { synchronized (listener) { if (!listenerExported) { UnicastRemoteObject.exportObject(listener, 0); listenerExported = true; } }
+        long v; synchronized (results) { v = Objects.equals(primaryId, resultsNode) ? resultsVersion : 0; } subscriptionId = stub.subscribe(listener, v); logAndUpdate("Subscribed to live updates."); return null; }, "subscribe"); }
+    private class PushListener implements UpdateListener {
+        @Override public void onResults(ResultsDelta d) { List<VoteResult> rs = mergeResults(d, primaryId); SwingUtilities.invokeLater(() -> gui.displayResults(rs)); }
+        @Override public void onElectionState(ElectionState es) { SwingUtilities.invokeLater(() -> gui.updateElectionStatus(es)); } }
     public void submitVote(String cId) { if (loggedInVoterId == null) { gui.showError("Not logged in."); return; } String vId = loggedInVoterId;
-        execute(stub -> { NodeService.VoteResultStatus st = stub.submitVote(vId, cId); SwingUtilities.invokeLater(() -> gui.handleVoteResponse(st)); return null; }, "submit vote"); }
+        WriteReceipt<NodeService.VoteResultStatus> rc = write(stub -> stub.submitVoteWithReceipt(vId, cId, null), vId, "submit vote"); NodeService.VoteResultStatus st = rc == null ? null : rc.getResult(); if (st != null) SwingUtilities.invokeLater(() -> gui.handleVoteResponse(st)); }
     // --- Util ---
     private void logAndUpdate(String msg) { LOGGER.info(msg); SwingUtilities.invokeLater(() -> gui.appendToLog(msg)); }
     public boolean isConnected() { return connected && primaryStub != null; } public String getLoggedInVoterId() { return loggedInVoterId; }
@@ -3,39 +3,141 @@ package ddvote.naming;
 import ddvote.shared.RemoteObjectUtils;
 import java.rmi.*;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 // Standalone Naming Server implementation (Service Implementation)
+// Reads go to an immutable versioned view swapped on every change, so they never lock.
+// Writers serialize on this object, record each change for delta watches and wake long-polling watchers.
 public class NamingServer extends UnicastRemoteObject implements NamingService {
     private static final Logger LOGGER = Logger.getLogger(NamingServer.class.getName());
-    private final ConcurrentHashMap<String, String> registry = new ConcurrentHashMap<>();
+    static final int HISTORY = 1024; // Changes kept for delta watches; older watchers get the full registry
+    static final long MAX_WATCH_MS = 30000;
+    static final long REAP_INTERVAL_MS = 1000;
 
-    protected NamingServer() throws RemoteException {
+    private static final class View {
+        final long version; final Map<String, String> services;
+        View(long version, Map<String, String> services) { this.version = version; this.services = services; }
+    }
+    private static final class Change {
+        final long version; final String name; final String url; // url == null: removed
+        Change(long version, String name, String url) { this.version = version; this.name = name; this.url = url; }
+    }
+
+    private final long incarnation = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE); // Tells watchers this run's versions from an earlier run's
+    private volatile View view = new View(0, Map.of());
+    private final ArrayDeque<Change> changes = new ArrayDeque<>(); // Guarded by this
+    private final ConcurrentHashMap<String, Long> leases = new ConcurrentHashMap<>(); // Name -> expiry millis; absent = permanent
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "naming-lease-reaper"); t.setDaemon(true); return t;
+    });
+
+    public NamingServer() throws RemoteException {
         super();
+        reaper.scheduleWithFixedDelay(this::reapExpired, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     @Override
-    public synchronized void register(String name, String url) {
+    public void register(String name, String url) {
         LOGGER.info("Registering: " + name + " -> " + url);
-        registry.put(name, url);
+        leases.remove(name);
+        put(name, url);
     }
 
     @Override
-    public synchronized void unregister(String name) {
+    public void register(String name, String url, long leaseMs) {
+        LOGGER.info("Registering: " + name + " -> " + url + " (lease " + leaseMs + "ms)");
+        leases.put(name, System.currentTimeMillis() + leaseMs);
+        put(name, url);
+    }
+
+    @Override
+    public boolean renew(String name, long leaseMs) {
+        Long expiry = leases.computeIfPresent(name, (k, old) -> System.currentTimeMillis() + leaseMs);
+        return expiry != null && view.services.containsKey(name);
+    }
+
+    @Override
+    public void unregister(String name) {
         LOGGER.info("Unregistering: " + name);
-        registry.remove(name);
+        leases.remove(name);
+        remove(name);
+    }
+
+    @Override
+    public String lookup(String name) {
+        return view.services.get(name);
+    }
+
+    @Override
+    public Map<String, String> listServices() {
+        return view.services; // Immutable snapshot, safe to hand out without copying
     }
 
     @Override
-    public synchronized String lookup(String name) {
-        return registry.get(name);
+    public long getVersion() {
+        return view.version;
     }
 
     @Override
-    public synchronized Map<String, String> listServices() {
-        return new ConcurrentHashMap<>(registry); // Return copy to avoid external mutation
+    public RegistryDelta watch(long watcherIncarnation, long sinceVersion, long timeoutMs) {
+        if (watcherIncarnation != incarnation) { View v = view; return new RegistryDelta(incarnation, v.version, true, v.services, Set.of()); }
+        long deadline = System.currentTimeMillis() + Math.min(Math.max(timeoutMs, 0), MAX_WATCH_MS);
+        synchronized (this) {
+            while (view.version <= sinceVersion) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) break;
+                try { wait(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+            }
+            return deltaSince(sinceVersion);
+        }
+    }
+
+    // --- Writes (serialized on this) ---
+    private synchronized void put(String name, String url) {
+        if (url.equals(view.services.get(name))) return; // Re-registration with the same URL is not a change
+        Map<String, String> next = new HashMap<>(view.services);
+        next.put(name, url);
+        publish(next, name, url);
+    }
+
+    private synchronized void remove(String name) {
+        if (!view.services.containsKey(name)) return;
+        Map<String, String> next = new HashMap<>(view.services);
+        next.remove(name);
+        publish(next, name, null);
+    }
+
+    private void publish(Map<String, String> next, String name, String url) {
+        long version = view.version + 1;
+        changes.addLast(new Change(version, name, url));
+        if (changes.size() > HISTORY) changes.removeFirst();
+        view = new View(version, Map.copyOf(next));
+        notifyAll();
+    }
+
+    private RegistryDelta deltaSince(long since) {
+        View v = view;
+        if (since >= v.version) return new RegistryDelta(incarnation, v.version, false, Map.of(), Set.of());
+        if (since <= 0 || changes.isEmpty() || changes.peekFirst().version > since + 1) return new RegistryDelta(incarnation, v.version, true, v.services, Set.of());
+        Map<String, String> upserts = new HashMap<>(); Set<String> removals = new HashSet<>();
+        for (Change c : changes) {
+            if (c.version <= since) continue;
+            if (c.url == null) { upserts.remove(c.name); removals.add(c.name); } else { removals.remove(c.name); upserts.put(c.name, c.url); }
+        }
+        return new RegistryDelta(incarnation, v.version, false, upserts, removals);
+    }
+
+    // Nodes that stop renewing (crashed, partitioned) drop out without having to unregister
+    private void reapExpired() {
+        long now = System.currentTimeMillis();
+        leases.forEach((name, expiry) -> {
+            if (expiry < now && leases.remove(name, expiry)) {
+                LOGGER.warning("Lease expired: " + name);
+                remove(name);
+            }
+        });
     }
 
     public static void main(String[] args) {
@@ -4,8 +4,14 @@ import java.util.Map;
 // RMI interface for the Naming Service (Contract/API)
 public interface NamingService extends Remote {
     String LOOKUP_NAME = "VotingNamingService";
-    void register(String serviceName, String rmiUrl) throws RemoteException;
+    void register(String serviceName, String rmiUrl) throws RemoteException; // Permanent until unregistered
+    void register(String serviceName, String rmiUrl, long leaseMs) throws RemoteException; // Dropped unless renewed within leaseMs
+    boolean renew(String serviceName, long leaseMs) throws RemoteException; // False if the lease already expired: register again
     void unregister(String serviceName) throws RemoteException;
     String lookup(String serviceName) throws RemoteException; // Returns RMI name/URL or null
     Map<String, String> listServices() throws RemoteException;
-}
\ No newline at end of file
+    long getVersion() throws RemoteException; // Bumped by every change to the registry
+    // Long-poll: returns once the registry moves past sinceVersion, or unchanged at the timeout. A watcher holding another incarnation's view
+    // (0: none yet) gets the full registry at once, since versions from an earlier run of the server say nothing about this one
+    RegistryDelta watch(long incarnation, long sinceVersion, long timeoutMs) throws RemoteException;
+}
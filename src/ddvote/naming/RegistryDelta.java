@@ -0,0 +1,15 @@
+package ddvote.naming;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+// Registry changes since a version the watcher already holds (Data Model)
+// full: upserts is the complete registry and the watcher should drop anything else; otherwise apply upserts and removals
+// Versions only order changes within one incarnation of the naming server; a restarted server starts a new one
+public class RegistryDelta implements Serializable {
+    private static final long serialVersionUID = 9L;
+    private final long incarnation, version; private final boolean full; private final Map<String, String> upserts; private final Set<String> removals;
+    public RegistryDelta(long incarnation, long version, boolean full, Map<String, String> upserts, Set<String> removals) { this.incarnation = incarnation; this.version = version; this.full = full; this.upserts = upserts; this.removals = removals; }
+    public long getIncarnation() { return incarnation; } public long getVersion() { return version; } public boolean isFull() { return full; } public Map<String, String> getUpserts() { return upserts; } public Set<String> getRemovals() { return removals; }
+    public boolean isUnchanged() { return !full && upserts.isEmpty() && removals.isEmpty(); }
+    @Override public String toString() { return "RegistryDelta{v" + version + (full ? " full " : " ") + upserts.keySet() + (removals.isEmpty() ? "" : " -" + removals) + '}'; }
+}
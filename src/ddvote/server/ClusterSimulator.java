@@ -0,0 +1,170 @@
+package ddvote.server;
+import ddvote.naming.NamingServer;
+import ddvote.naming.NamingService;
+import ddvote.shared.*;
+import java.io.Serializable;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+// Headless load and failover harness: a naming server and N nodes in one JVM, simulated clients, injected faults (DC Concept: Load & Failure Testing)
+// Only the process boundaries are simulated: clients and nodes still talk RMI and the NIO transport over loopback, through the local registry.
+// Phases: boot and wait for every shard to elect, register all voters, then vote once per voter (with reads mixed in) while faults fire.
+// Configured with -Dddvote.sim.*: nodes (3), clients (16), voters (20000), readRatio (0.1), rate (ops/s over all clients, 0 = closed loop),
+// consistency (per-write WriteConsistency, default the nodes' own), maxUnavailableMs (failover budget), faults: comma-separated <kill|pause>[:<nodeId|primary>][:<pauseMs>]@<ms into the vote phase>
+public class ClusterSimulator {
+    private static final Logger LOGGER = Logger.getLogger(ClusterSimulator.class.getName());
+    static final String HOST = "localhost";
+    static final int NODES = Integer.getInteger("ddvote.sim.nodes", 3), CLIENTS = Integer.getInteger("ddvote.sim.clients", 16), VOTERS = Integer.getInteger("ddvote.sim.voters", 20000);
+    static final double READ_RATIO = Double.parseDouble(System.getProperty("ddvote.sim.readRatio", "0.1"));
+    static final long RATE = Long.getLong("ddvote.sim.rate", 0); // When paced, latency counts from each op's scheduled start, so a stall is not hidden by clients waiting on it
+    static final WriteConsistency CONSISTENCY = System.getProperty("ddvote.sim.consistency") == null ? null : WriteConsistency.valueOf(System.getProperty("ddvote.sim.consistency").toUpperCase());
+    static final String FAULTS = System.getProperty("ddvote.sim.faults", "kill:primary@3000");
+    static final long RETRY_MS = Long.getLong("ddvote.sim.retryMs", 30000); // A client op is given up after retrying this long
+    static final long ELECT_MS = Long.getLong("ddvote.sim.electMs", 60000); // Longest wait for a shard to (re-)elect before the run counts as failed
+    static final long MAX_UNAVAILABLE_MS = Long.getLong("ddvote.sim.maxUnavailableMs", 0); // Budget for a killed primary's write outage, 0 = not checked
+    static final long POLL_MS = 5; // Resolution of the failover timings
+    static final long ELECTION_GRACE_MS = 5000; // After a paused primary wakes: longer than this without an election means none is coming
+
+    private final List<VotingServerNode> nodes = new ArrayList<>(); private final Set<VotingServerNode> dead = ConcurrentHashMap.newKeySet();
+    private final List<SimClient> clients = new ArrayList<>(); private final List<Fault> faults = new ArrayList<>(); private final List<Fault> fired = new CopyOnWriteArrayList<>();
+    private NamingService naming;
+    // Per NodeService method (each attempt) and per client operation (end to end, retries included)
+    private final Map<String, LatencyHistogram> calls = new ConcurrentSkipListMap<>(), ops = new ConcurrentSkipListMap<>(); private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+    private final EnumMap<NodeService.VoteResultStatus, LongAdder> voteStatuses = new EnumMap<>(NodeService.VoteResultStatus.class);
+    private final LongAdder retried = new LongAdder(), gaveUp = new LongAdder(), staleReads = new LongAdder(); private final AtomicLongArray ackedByShard = new AtomicLongArray(ShardMap.SHARDS);
+    private final AtomicInteger failedFailovers = new AtomicInteger();
+
+    ClusterSimulator() { for (NodeService.VoteResultStatus s : NodeService.VoteResultStatus.values()) voteStatuses.put(s, new LongAdder());
+        for (String spec : FAULTS.split(",")) if (!spec.isBlank()) faults.add(Fault.parse(spec.trim())); }
+
+    // --- Cluster ---
+    private void boot() throws Exception { RemoteObjectUtils.getOrCreateRegistry(); if (!RemoteObjectUtils.bindObject(NamingService.LOOKUP_NAME, new NamingServer())) throw new IllegalStateException("Cannot bind naming service");
+        naming = RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(HOST, NamingService.LOOKUP_NAME));
+        for (int i = 1; i <= NODES; i++) { VotingServerNode n = new VotingServerNode("n" + i, HOST, (i - 1) % ShardMap.SHARDS); n.start(); nodes.add(n); }
+        long t0 = System.nanoTime(); for (int s = 0; s < ShardMap.SHARDS; s++) { int shard = s; if (!await(() -> agreedPrimary(shard) != null, ELECT_MS)) throw new IllegalStateException("Shard " + s + " elected no primary");
+            System.out.printf("Shard %d primary: %s (epoch %d)%n", s, agreedPrimary(s).getId(), maxEpoch(s)); }
+        System.out.printf("Cluster of %d node(s), %d shard(s) up in %d ms%n", NODES, ShardMap.SHARDS, ms(System.nanoTime() - t0)); }
+    // No admin call opens the election, so the harness does it in-process; after registration, so no initial snapshot still in flight can close it again on a backup
+    private void openElection() { for (VotingServerNode n : nodes) if (!dead.contains(n)) n.state().setElecState(ElectionState.RUNNING); }
+    private List<ServerNodeState> live(int shard, VotingServerNode except) { List<ServerNodeState> ls = new ArrayList<>(); for (VotingServerNode n : nodes) if (n != except && !dead.contains(n) && n.state().getShard() == shard) ls.add(n.state()); return ls; }
+    // The node every live node of the shard names as primary, and which knows it leads; null while that is not (yet) the case
+    private ServerNodeState agreedPrimary(int shard) { List<ServerNodeState> ls = live(shard, null); String p = ls.isEmpty() ? null : ls.get(0).getPrimaryId(); if (p == null) return null; ServerNodeState leader = null;
+        for (ServerNodeState s : ls) { if (!p.equals(s.getPrimaryId())) return null; if (s.getId().equals(p)) leader = s; } return leader != null && leader.isPrimary() ? leader : null; }
+    private long maxEpoch(int shard) { long e = 0; for (ServerNodeState s : live(shard, null)) e = Math.max(e, s.getEpoch()); return e; }
+    private VotingServerNode node(String id) { for (VotingServerNode n : nodes) if (n.state().getId().equals(id)) return n; return null; }
+    private void shutdown() { for (VotingServerNode n : nodes) if (!dead.contains(n)) n.shutdown(); }
+
+    // --- Workload ---
+    private void phase(String name, boolean voting) throws InterruptedException { AtomicInteger next = new AtomicInteger(); AtomicInteger threads = new AtomicInteger(); long before = totalOps();
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS, r -> { Thread t = new Thread(r, "sim-client-" + threads.incrementAndGet()); t.setDaemon(true); return t; });
+        long start = System.nanoTime(); for (SimClient c : clients) pool.execute(() -> c.run(next, voting, start)); pool.shutdown(); pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long took = System.nanoTime() - start; System.out.printf("Phase %s: %d ops in %d ms = %.0f ops/s%n", name, totalOps() - before, ms(took), (totalOps() - before) * 1e9 / took); }
+    private long totalOps() { long n = 0; for (LatencyHistogram h : ops.values()) n += h.count(); return n; }
+    private LatencyHistogram calls(String method) { return calls.computeIfAbsent(method, k -> new LatencyHistogram()); }
+    private LatencyHistogram ops(String op) { return ops.computeIfAbsent(op, k -> new LatencyHistogram()); }
+    private void error(String method, Exception e) { errors.computeIfAbsent(method + " (" + e.getClass().getSimpleName() + ")", k -> new LongAdder()).increment(); LOGGER.fine(method + " failed: " + e.getMessage()); }
+    // The first write issued after a fault that succeeds is when clients saw the cluster writable again; the first one a new primary acknowledged is when failover was complete for them
+    private void noteWriteOk(long startedNanos, PrimaryHint h) { for (Fault f : fired) if (startedNanos >= f.atNanos) { long now = System.nanoTime(); f.firstWriteOk.compareAndSet(0, now);
+        if (h != null && h.getShard() == f.shard && h.getEpoch() > f.epoch) f.firstNewPrimaryWrite.compareAndSet(0, now); } }
+
+    // A client as VotingClient routes: writes go to its shard's leader as named by the freshest hint, any other node forwards; reads go to any node with a read token
+    private final class SimClient { final Random rnd; final Map<Integer, NodeService> leaders = new HashMap<>(); final Map<Integer, Long> leaderEpochs = new HashMap<>();
+        final Map<NodeService, Long> versions = new HashMap<>(); ShardMap shardMap = new ShardMap(ShardMap.SHARDS); List<String> entries = List.of(); ReadToken token;
+        SimClient(int index) { rnd = new Random(index); }
+        void run(AtomicInteger next, boolean voting, long phaseStart) { long interval = RATE > 0 ? CLIENTS * 1_000_000_000L / RATE : 0;
+            for (long k = 0; ; k++) { long scheduled = interval > 0 ? phaseStart + k * interval : System.nanoTime(); if (interval > 0) sleepUntil(scheduled);
+                if (voting && rnd.nextDouble() < READ_RATIO) { read(scheduled); continue; } int i = next.getAndIncrement(); if (i >= VOTERS) return; String vId = "sim-v" + i;
+                try { if (voting) vote(vId, rnd.nextBoolean() ? "C1" : "C2", scheduled); else register(vId, scheduled); } catch (RemoteException e) { gaveUp.increment(); LOGGER.warning("Gave up on " + vId + ": " + e.getMessage()); } } }
+        void register(String vId, long scheduled) throws RemoteException { Credentials c = new Credentials(vId, "pw"); write("registerVoterWithReceipt", "register", vId, p -> p.registerVoterWithReceipt(c), scheduled); }
+        void vote(String vId, String cId, long scheduled) throws RemoteException { NodeService.VoteResultStatus st = write("submitVoteWithReceipt", "vote", vId, p -> p.submitVoteWithReceipt(vId, cId, CONSISTENCY), scheduled);
+            voteStatuses.get(st).increment(); if (st == NodeService.VoteResultStatus.ACCEPTED) ackedByShard.incrementAndGet(shardMap.shardOf(vId)); } // ACCEPTED_NOT_REPLICATED already says it may be lost
+        // Retried until RETRY_MS: a retry after an undelivered call is safe, and after an unanswered one the vote comes back REJECTED_ALREADY_VOTED, as a real client would see it
+        <T extends Serializable> T write(String method, String op, String vId, VotingServerNode.RemoteOperation<WriteReceipt<T>> call, long scheduled) throws RemoteException { int s = shardMap.shardOf(vId); long deadline = System.nanoTime() + RETRY_MS * 1_000_000;
+            for (int attempt = 0; ; attempt++) { NodeService leader = leaders.get(s), target = leader;
+                try { if (target == null) target = entry(); long t0 = System.nanoTime(); WriteReceipt<T> rc = call.execute(target); long done = System.nanoTime(); calls(method).record(done - t0); ops(op).record(done - scheduled); if (attempt > 0) retried.increment();
+                    noteWriteOk(scheduled, rc.getHint()); token = rc.getToken(); noteHint(rc.getHint()); return rc.getResult(); }
+                catch (RemoteException e) { error(target == null ? "lookup" : method, e); if (leader != null) leaders.remove(s); else if (target == null || RemoteObjectUtils.isConnectFailure(e)) { RemoteObjectUtils.invalidate(target); entries = List.of(); }
+                    if (System.nanoTime() > deadline) throw e; sleepUntil(System.nanoTime() + Math.min(20L << Math.min(attempt, 4), 250) * 1_000_000); } } }
+        void read(long scheduled) { NodeService n; try { n = entry(); } catch (RemoteException e) { error("lookup", e); entries = List.of(); return; } long t0 = System.nanoTime();
+            try { ResultsDelta d = n.getResultsSince(versions.getOrDefault(n, 0L), token); long done = System.nanoTime(); calls("getResultsSince").record(done - t0); ops("read").record(done - scheduled); versions.put(n, d.getVersion()); }
+            catch (StaleReadException e) { staleReads.increment(); } // Refused as behind or cut off: a healthy answer, the client would just ask another node
+            catch (RemoteException e) { error("getResultsSince", e); versions.remove(n); if (RemoteObjectUtils.isConnectFailure(e)) { RemoteObjectUtils.invalidate(n); entries = List.of(); } } }
+        // A random node from the naming view; a crashed node stays listed until its lease runs out, as it would for a real client
+        NodeService entry() throws RemoteException { if (entries.isEmpty()) { List<String> es = new ArrayList<>(); for (String name : naming.listServices().keySet()) if (name.startsWith(NodeService.SERVICE_NAME_PREFIX)) es.add(name);
+                if (es.isEmpty()) throw new RemoteException("No nodes registered"); entries = es; }
+            try { return RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(HOST, entries.get(rnd.nextInt(entries.size())))); } catch (NotBoundException e) { entries = List.of(); throw new RemoteException("Node unbound", e); } }
+        void noteHint(PrimaryHint h) { if (h == null || !h.isKnown()) return; if (h.getShards() != shardMap.shards()) { shardMap = new ShardMap(h.getShards()); leaders.clear(); leaderEpochs.clear(); }
+            if (h.getEpoch() < leaderEpochs.getOrDefault(h.getShard(), -1L)) return;
+            try { leaders.put(h.getShard(), RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(HOST, NodeService.SERVICE_NAME_PREFIX + h.getPrimaryId()))); leaderEpochs.put(h.getShard(), h.getEpoch()); }
+            catch (RemoteException | NotBoundException e) { leaders.remove(h.getShard()); } } } // The next write goes through an entry node
+
+    // --- Faults ---
+    private static final class Fault { final boolean kill; final String target; final long pauseMs, atMs; volatile long atNanos = Long.MAX_VALUE, epoch; volatile int shard; volatile boolean failedOver; volatile String report;
+        final AtomicLong firstWriteOk = new AtomicLong(), firstNewPrimaryWrite = new AtomicLong();
+        Fault(boolean kill, String target, long pauseMs, long atMs) { this.kill = kill; this.target = target; this.pauseMs = pauseMs; this.atMs = atMs; report = this + ": not fired"; }
+        static Fault parse(String spec) { String[] at = spec.split("@"), p = at[0].split(":"); if (at.length != 2 || !(p[0].equals("kill") || p[0].equals("pause"))) throw new IllegalArgumentException("Bad fault '" + spec + "', want <kill|pause>[:<nodeId|primary>][:<pauseMs>]@<atMs>");
+            return new Fault(p[0].equals("kill"), p.length > 1 ? p[1] : "primary", p.length > 2 ? Long.parseLong(p[2]) : 3000, Long.parseLong(at[1])); }
+        @Override public String toString() { return (kill ? "kill " : "pause " + pauseMs + "ms ") + target + " @" + atMs + "ms"; } }
+    // Fires the fault and times, from the moment it fired: a survivor giving up on the old primary, a new primary declaring (higher epoch), all survivors agreeing,
+    // for a pause the old primary stepping down after it wakes, and the first client write issued after the fault that succeeded
+    private void inject(Fault f) { VotingServerNode victim = f.target.equals("primary") ? primaryNode(0) : node(f.target);
+        if (victim == null || dead.contains(victim)) { f.report = f + ": no live target"; return; } ServerNodeState vs = victim.state(); String vid = vs.getId(); int shard = vs.getShard(); boolean wasPrimary = vs.isPrimary(); long epoch = maxEpoch(shard);
+        f.shard = shard; f.epoch = epoch; if (f.kill) { victim.crash(); dead.add(victim); } else victim.pause(f.pauseMs); f.atNanos = System.nanoTime(); fired.add(f); // Timed from when it took effect
+        long suspected = -1, elected = -1, agreed = -1, steppedDown = -1; String newPrimary = null; long wake = f.kill ? 0 : f.pauseMs;
+        while (wasPrimary) { long now = ms(System.nanoTime() - f.atNanos); List<ServerNodeState> others = live(shard, victim);
+            if (suspected < 0 && others.stream().anyMatch(s -> !vid.equals(s.getPrimaryId()))) suspected = now;
+            if (elected < 0) for (ServerNodeState s : others) if (s.isPrimary() && s.getEpoch() > epoch) { elected = now; newPrimary = s.getId(); }
+            if (elected >= 0 && agreed < 0) { String np = newPrimary; if (others.stream().allMatch(s -> np.equals(s.getPrimaryId()))) agreed = now; }
+            if (!f.kill && steppedDown < 0 && now >= wake && !vs.isPrimary()) steppedDown = now;
+            if (agreed >= 0 && (f.kill || steppedDown >= 0)) break; if (!f.kill && elected < 0 && now > wake + ELECTION_GRACE_MS) break; if (now > ELECT_MS) break; sleepUntil(System.nanoTime() + POLL_MS * 1_000_000); }
+        StringBuilder r = new StringBuilder(f.toString()).append(" -> ").append(vid).append(wasPrimary ? " (primary of shard " + shard + ", epoch " + epoch + ")" : " (backup)");
+        if (wasPrimary) { if (elected >= 0) r.append(String.format(": suspected +%dms, new primary %s (epoch %d) +%dms, all agree %s", suspected, newPrimary, node(newPrimary).state().getEpoch(), elected, agreed < 0 ? "never" : "+" + agreed + "ms"));
+            else r.append(f.kill ? ": NO NEW PRIMARY within " + ELECT_MS + "ms" : ": rode out the pause, no failover");
+            if (!f.kill && elected >= 0) r.append(", old primary stepped down ").append(steppedDown < 0 ? "never" : "+" + steppedDown + "ms"); }
+        f.failedOver = elected >= 0; f.report = r.toString(); if (wasPrimary && f.kill && elected < 0) failedFailovers.incrementAndGet(); }
+    private VotingServerNode primaryNode(int shard) { ServerNodeState s = agreedPrimary(shard); return s == null ? null : node(s.getId()); }
+    // Faults fire on their own thread relative to the vote phase start; each one's timing runs to completion before the next fires
+    private Thread startFaults(long phaseStart) { Thread t = new Thread(() -> { for (Fault f : faults) { sleepUntil(phaseStart + f.atMs * 1_000_000); inject(f); } }, "sim-faults"); t.setDaemon(true); t.start(); return t; }
+
+    // --- Report ---
+    private void report(long[] counted) { System.out.println("\nPer NodeService method (each attempt, client side):"); calls.forEach((m, h) -> System.out.printf("  %-26s %s%n", m, h.summary()));
+        System.out.println("Per client operation (end to end, retries included" + (RATE > 0 ? ", from scheduled start" : "") + "):"); ops.forEach((o, h) -> System.out.printf("  %-26s %s%n", o, h.summary()));
+        if (!errors.isEmpty()) { System.out.println("Failed attempts:"); errors.forEach((m, n) -> System.out.printf("  %-60s %d%n", m, n.sum())); }
+        System.out.printf("Retried ops: %d, given up: %d, stale reads refused: %d%n", retried.sum(), gaveUp.sum(), staleReads.sum());
+        StringBuilder st = new StringBuilder("Vote statuses:"); voteStatuses.forEach((s, n) -> { if (n.sum() > 0) st.append(' ').append(s).append('=').append(n.sum()); }); System.out.println(st);
+        if (!faults.isEmpty()) { System.out.println("Faults:"); for (Fault f : faults) { System.out.println("  " + f.report); if (f.atNanos == Long.MAX_VALUE) continue;
+            System.out.println("    writes ok again " + since(f, f.firstWriteOk.get()) + (f.failedOver ? ", first acked by the new primary " + since(f, f.firstNewPrimaryWrite.get()) : "") + (overBudget(f) ? " (OVER THE " + MAX_UNAVAILABLE_MS + "ms BUDGET)" : "")); } }
+        for (int s = 0; s < ShardMap.SHARDS; s++) System.out.printf("Shard %d: %d vote(s) ACCEPTED, %d counted by its primary%s%n", s, ackedByShard.get(s), counted[s], counted[s] < ackedByShard.get(s) ? " (ACCEPTED VOTES LOST" + (durable() ? ")" : ", expected without QUORUM/ALL)") : ""); }
+    // Write unavailability of a killed primary's shard: from the kill until a write issued after it succeeded
+    private static boolean overBudget(Fault f) { long ok = f.firstWriteOk.get(); return MAX_UNAVAILABLE_MS > 0 && f.kill && f.atNanos != Long.MAX_VALUE && (ok == 0 || ms(ok - f.atNanos) > MAX_UNAVAILABLE_MS); }
+    private static String since(Fault f, long nanos) { return nanos == 0 ? "never" : "+" + ms(nanos - f.atNanos) + "ms"; }
+    private static boolean durable() { return CONSISTENCY == WriteConsistency.QUORUM || CONSISTENCY == WriteConsistency.ALL; } // ACCEPTED then promises a backup has the vote
+    // Every shard's primary tally, once it has stopped moving (backlogged replication and retried writes settle first)
+    private long[] settle() { long[] counted = new long[ShardMap.SHARDS]; for (int s = 0; s < ShardMap.SHARDS; s++) { long last = -1;
+            for (long deadline = System.currentTimeMillis() + 10000; System.currentTimeMillis() < deadline; sleepUntil(System.nanoTime() + 500_000_000L)) { ServerNodeState p = agreedPrimary(s);
+                long n = p == null ? -1 : p.getShardRes().stream().mapToLong(VoteResult::getVoteCount).sum(); if (n >= 0 && n == last) break; last = n; } counted[s] = Math.max(last, 0); } return counted; }
+
+    int run() throws Exception { boot(); for (int i = 0; i < CLIENTS; i++) clients.add(new SimClient(i));
+        System.out.printf("%d client(s), %d voter(s), read ratio %.2f, %s, writes %s%n", CLIENTS, VOTERS, READ_RATIO, RATE > 0 ? RATE + " ops/s" : "closed loop", CONSISTENCY == null ? "at the nodes' consistency" : CONSISTENCY);
+        phase("register", false); openElection(); Thread faulting = startFaults(System.nanoTime()); phase("vote", true); faulting.join(); long[] counted = settle(); report(counted); shutdown();
+        boolean lost = false; for (int s = 0; s < ShardMap.SHARDS; s++) lost |= durable() && counted[s] < ackedByShard.get(s);
+        return failedFailovers.get() > 0 || gaveUp.sum() > 0 || lost || faults.stream().anyMatch(ClusterSimulator::overBudget) ? 1 : 0; }
+
+    private static long ms(long nanos) { return nanos / 1_000_000; }
+    private static void sleepUntil(long nanos) { long left; while ((left = nanos - System.nanoTime()) > 0) { try { TimeUnit.NANOSECONDS.sleep(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return; } } }
+    private static boolean await(java.util.function.BooleanSupplier cond, long timeoutMs) { long deadline = System.nanoTime() + timeoutMs * 1_000_000; while (!cond.getAsBoolean()) { if (System.nanoTime() > deadline) return false; sleepUntil(System.nanoTime() + POLL_MS * 1_000_000); } return true; }
+
+    // --- Main ---
+    // Exits 1 if a killed primary was not replaced, or not within maxUnavailableMs, a client op was given up, or QUORUM/ALL votes acknowledged as ACCEPTED are missing from the final tally
+    public static void main(String[] args) { defaults(); ClusterSimulator sim = null; int code;
+        try { sim = new ClusterSimulator(); code = sim.run(); } catch (Exception e) { LOGGER.log(Level.SEVERE, "Simulation failed", e); if (sim != null) sim.shutdown(); code = 1; }
+        System.exit(code); }
+    // Node-side settings for an in-JVM run, each unless already set; before any node class loads (FailoverTest runs the simulator through this too)
+    static void defaults() { if (System.getProperty("ddvote.wal.mode") == null) System.setProperty("ddvote.wal.mode", "OFF"); // No stale data/ from an earlier run
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) System.setProperty("sun.rmi.transport.tcp.responseTimeout", "5000"); // Calls into a paused node fail over instead of hanging
+        Logger.getLogger("").setLevel(Level.parse(System.getProperty("ddvote.sim.logLevel", "WARNING"))); }
+}
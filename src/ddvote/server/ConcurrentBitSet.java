@@ -0,0 +1,20 @@
+package ddvote.server;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+// Growable lock-free bitset over dense ordinals: pages of 64K bits created on first touch (Data Structure)
+class ConcurrentBitSet {
+    private static final int PAGE_BITS = 16, PAGE_WORDS = (1 << PAGE_BITS) >>> 6, MAX_PAGES = 1 << (31 - PAGE_BITS);
+    private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(MAX_PAGES); // 256KB directory covers 2^31 bits
+
+    // Atomically sets the bit; true only for the caller that flipped it from 0 to 1
+    boolean testAndSet(int i) { AtomicLongArray page = page(i, true); int w = (i >>> 6) & (PAGE_WORDS - 1); long mask = 1L << i;
+        while (true) { long old = page.get(w); if ((old & mask) != 0) return false; if (page.compareAndSet(w, old, old | mask)) return true; } }
+    boolean get(int i) { AtomicLongArray page = page(i, false); return page != null && (page.get((i >>> 6) & (PAGE_WORDS - 1)) & (1L << i)) != 0; }
+    // Word-level copy of bits [0, n); consistent only if writers are quiesced by the caller
+    long[] copyWords(int n) { long[] words = new long[(n + 63) >>> 6];
+        for (int w = 0; w < words.length; w++) { AtomicLongArray page = pages.get(w / PAGE_WORDS); if (page != null) words[w] = page.get(w % PAGE_WORDS); }
+        if ((n & 63) != 0) words[words.length - 1] &= (1L << n) - 1; return words; }
+    static boolean get(long[] words, int i) { return (words[i >>> 6] & (1L << i)) != 0; }
+    private AtomicLongArray page(int i, boolean create) { int p = i >>> PAGE_BITS; AtomicLongArray page = pages.get(p); if (page != null || !create) return page;
+        pages.compareAndSet(p, null, new AtomicLongArray(PAGE_WORDS)); return pages.get(p); }
+}
@@ -0,0 +1,17 @@
+package ddvote.server;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+// Lock-free log-linear latency histogram in microseconds (DC Concept: Observability)
+// 8 linear sub-buckets per power of two, so a reported percentile is at most 12.5% above the true value
+final class LatencyHistogram {
+    private static final int SUB_BITS = 3, SUB = 1 << SUB_BITS, BUCKETS = (64 - SUB_BITS + 1) * SUB;
+    private final LongAdder[] counts = new LongAdder[BUCKETS]; private final LongAdder total = new LongAdder(); private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    LatencyHistogram() { for (int i = 0; i < BUCKETS; i++) counts[i] = new LongAdder(); }
+    void record(long nanos) { long us = Math.max(0, nanos / 1000); counts[index(us)].increment(); total.increment(); max.accumulate(us); }
+    long count() { return total.sum(); } long max() { return max.get(); }
+    long percentile(double p) { long n = total.sum(); if (n == 0) return 0; long target = Math.max(1, (long) Math.ceil(p * n)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) { seen += counts[i].sum(); if (seen >= target) return Math.min(upperBound(i), max.get()); } return max.get(); }
+    String summary() { return String.format("n=%d p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus", count(), percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999), max()); }
+    private static int index(long v) { if (v < SUB) return (int) v; int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS; return (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1)); }
+    private static long upperBound(int i) { if (i < SUB) return i; int shift = i / SUB - 1; return ((long) (SUB + i % SUB + 1) << shift) - 1; }
+}
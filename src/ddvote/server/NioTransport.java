@@ -0,0 +1,133 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+// Multiplexed, pipelined node-to-node transport over java.nio (DC Concept: Transport)
+// One socket per peer pair carries calls in both directions. Replies are matched by correlation id, so any number of
+// calls can be in flight on a connection and no thread blocks on the network: one selector thread does all socket I/O
+// and a fixed worker pool runs inbound calls. Frame: [int length][byte kind][long correlation][byte method][WireCodec values]
+class NioTransport {
+    private static final Logger LOGGER = Logger.getLogger(NioTransport.class.getName());
+    static final int MAX_FRAME = 64 << 20, CONNECT_TIMEOUT = 2000, HEADER = 10; // HEADER: kind + correlation + method
+    static final long CALL_TIMEOUT = Long.getLong("ddvote.transport.timeoutMs", 5000);
+    static final int WORKERS = Integer.getInteger("ddvote.transport.workers", 4);
+    private static final byte REQUEST = 0, REPLY = 1, FAILURE = 2;
+    private static final byte HELLO = 0, HEARTBEAT = 1, ELECTION = 2, COORDINATOR = 3, UPDATE = 4, BATCH = 5, SNAPSHOT = 6, LOCK = 7, UNLOCK = 8, DIGEST = 9;
+    private final String nodeId; private final NodeService local; private final String endpoint;
+    private final Selector selector; private final ServerSocketChannel server; private final ThreadPoolExecutor workers; private final Thread loop;
+    private final ConcurrentHashMap<String, Conn> byPeer = new ConcurrentHashMap<>(); // The connection we call each peer on
+    private final ConcurrentHashMap<String, CompletableFuture<Conn>> dials = new ConcurrentHashMap<>(); // At most one dial in flight per peer
+    private final Set<Conn> conns = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Conn> toRegister = new ConcurrentLinkedQueue<>(), toFlush = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    NioTransport(String nodeId, NodeService local) throws IOException { this.nodeId = nodeId; this.local = local;
+        String host = System.getProperty("ddvote.transport.host", System.getProperty("java.rmi.server.hostname", "127.0.0.1"));
+        selector = Selector.open(); server = ServerSocketChannel.open(); server.bind(new InetSocketAddress(host, Integer.getInteger("ddvote.transport.port", 0)));
+        server.configureBlocking(false); server.register(selector, SelectionKey.OP_ACCEPT); endpoint = host + ":" + ((InetSocketAddress) server.getLocalAddress()).getPort();
+        AtomicInteger n = new AtomicInteger(); workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(WORKERS, r -> { Thread t = new Thread(r, "nio-" + nodeId + "-worker-" + n.incrementAndGet()); t.setDaemon(true); return t; });
+        loop = new Thread(this::selectLoop, "nio-" + nodeId); loop.setDaemon(true); loop.start(); LOGGER.info("Internal transport listening on " + endpoint); }
+    String endpoint() { return endpoint; }
+    // Load gauges for getNodeStats: inbound calls waiting for a worker, outbound frames not yet written, our calls awaiting a reply
+    int queuedCalls() { return workers.getQueue().size(); } int queuedFrames() { int n = 0; for (Conn c : conns) n += c.out.size(); return n; }
+    int pendingCalls() { int n = 0; for (Conn c : conns) n += c.pending.size(); return n; }
+    PeerLink link(String peerId, String peerEndpoint) { int i = peerEndpoint.lastIndexOf(':');
+        return new Link(peerId, new InetSocketAddress(peerEndpoint.substring(0, i), Integer.parseInt(peerEndpoint.substring(i + 1)))); }
+
+    // --- Connections ---
+    private final class Conn { final SocketChannel ch; volatile String peerId; SelectionKey key; ByteBuffer in = ByteBuffer.allocate(64 << 10); volatile boolean closed;
+        CompletableFuture<Conn> dialing; // Set on connections we dial: completed by the selector once the connect finishes
+        final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<>(); final ConcurrentHashMap<Long, CompletableFuture<Object[]>> pending = new ConcurrentHashMap<>(); final AtomicLong nextId = new AtomicLong();
+        Conn(SocketChannel ch, String peerId) { this.ch = ch; this.peerId = peerId; } }
+    // Dials never block: the connect is finished by the selector (OP_CONNECT), so an unreachable peer holds no lock and no worker while it times out.
+    // Concurrent callers for the same peer share one dial; other peers are not affected at all
+    private CompletableFuture<Conn> connection(String peerId, InetSocketAddress addr) { Conn c = byPeer.get(peerId); if (c != null && !c.closed) return CompletableFuture.completedFuture(c);
+        CompletableFuture<Conn> f = new CompletableFuture<>(), prior = dials.putIfAbsent(peerId, f); if (prior != null) return prior;
+        f.whenComplete((r, e) -> dials.remove(peerId, f)); dial(f, peerId, addr); return f; }
+    private void dial(CompletableFuture<Conn> f, String peerId, InetSocketAddress addr) { if (!running) { f.completeExceptionally(new RemoteException("Transport closed")); return; } Conn c;
+        try { SocketChannel ch = SocketChannel.open(); c = new Conn(ch, peerId); c.dialing = f; conns.add(c); ch.configureBlocking(false); ch.socket().setTcpNoDelay(true); ch.connect(addr); }
+        catch (IOException e) { f.completeExceptionally(new RemoteException("Cannot connect to " + peerId + " at " + addr, e)); return; }
+        f.orTimeout(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((r, e) -> { if (e != null) close(c, "connect to " + addr + " failed: " + e); }); toRegister.add(c); selector.wakeup(); }
+    // Selector thread: once connected, announce ourselves and make this the connection we call the peer on
+    private void finishConnect(Conn c) { try { if (!c.ch.finishConnect()) return; } catch (IOException e) { c.dialing.completeExceptionally(new RemoteException("Cannot connect to " + c.peerId, e)); return; }
+        c.key.interestOps(SelectionKey.OP_READ); c.out.add(frame(REQUEST, 0, HELLO, WireCodec.encodeValues(nodeId))); flush(c); // Lets the peer reuse this socket for its calls to us
+        byPeer.put(c.peerId, c); if (c.dialing.complete(c)) LOGGER.fine("Connected to " + c.peerId + " at " + c.ch.socket().getRemoteSocketAddress()); else close(c, "connect timed out"); }
+    private void accept() throws IOException { SocketChannel ch = server.accept(); if (ch == null) return; ch.configureBlocking(false); ch.socket().setTcpNoDelay(true);
+        Conn c = new Conn(ch, null); conns.add(c); c.key = ch.register(selector, SelectionKey.OP_READ, c); }
+    private void close(Conn c, String why) { if (c.closed) return; c.closed = true; conns.remove(c); if (c.peerId != null) byPeer.remove(c.peerId, c);
+        try { c.ch.close(); } catch (IOException e) { /* Already gone */ } RemoteException failure = new RemoteException("Connection to " + c.peerId + " lost: " + why);
+        c.pending.values().forEach(f -> f.completeExceptionally(failure)); c.pending.clear(); if (c.dialing != null) c.dialing.completeExceptionally(failure); if (running) LOGGER.info("Closed connection to " + c.peerId + ": " + why); }
+
+    // --- Calls ---
+    private CompletableFuture<Object[]> call(Conn c, byte method, Object... args) { CompletableFuture<Object[]> f = new CompletableFuture<>(); long id = c.nextId.incrementAndGet();
+        byte[] body; try { body = WireCodec.encodeValues(args); } catch (RuntimeException e) { f.completeExceptionally(new RemoteException("Cannot encode call", e)); return f; }
+        c.pending.put(id, f); f.orTimeout(CALL_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((r, e) -> c.pending.remove(id));
+        if (c.closed) f.completeExceptionally(new RemoteException("Connection to " + c.peerId + " closed")); else send(c, frame(REQUEST, id, method, body)); return f; }
+    private static ByteBuffer frame(byte kind, long id, byte method, byte[] body) { ByteBuffer b = ByteBuffer.allocate(4 + HEADER + body.length);
+        b.putInt(HEADER + body.length).put(kind).putLong(id).put(method).put(body).flip(); return b; }
+    private void send(Conn c, ByteBuffer frame) { c.out.add(frame); toFlush.add(c); selector.wakeup(); }
+    private void onFrame(Conn c, byte kind, long id, byte method, byte[] body) {
+        if (kind == REQUEST) { if (method == HELLO) hello(c, body); else workers.execute(() -> serve(c, id, method, body)); return; }
+        CompletableFuture<Object[]> f = c.pending.remove(id); if (f == null) return; // Timed out already
+        if (kind == FAILURE) { f.completeExceptionally(new RemoteException(new String(body, StandardCharsets.UTF_8))); return; }
+        try { f.complete(WireCodec.decodeValues(body)); } catch (IOException e) { f.completeExceptionally(new RemoteException("Malformed reply", e)); } }
+    private void hello(Conn c, byte[] body) { try { String peer = (String) WireCodec.decodeValues(body)[0]; c.peerId = peer; byPeer.putIfAbsent(peer, c); } // Adopt unless we dialed them ourselves
+        catch (IOException | RuntimeException e) { close(c, "bad hello"); } }
+    private void serve(Conn c, long id, byte method, byte[] body) { ByteBuffer reply;
+        try { reply = frame(REPLY, id, method, WireCodec.encodeValues(invoke(method, WireCodec.decodeValues(body)))); }
+        catch (Exception e) { reply = frame(FAILURE, id, method, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8)); } if (!c.closed) send(c, reply); }
+    private Object invoke(byte method, Object[] a) throws RemoteException { switch (method) {
+        case HEARTBEAT: local.receiveHeartbeat((String) a[0], (VectorClock) a[1]); return null; case ELECTION: local.handleElectionMessage((ElectionMessage) a[0]); return null;
+        case COORDINATOR: local.handleCoordinatorMessage((ElectionMessage) a[0]); return null; case UPDATE: local.applyReplicationUpdate((ReplicationUpdate) a[0]); return null;
+        case BATCH: return local.applyReplicationBatch((ReplicationBatch) a[0]); case SNAPSHOT: local.installSnapshotChunk((SnapshotChunk) a[0]); return null;
+        case LOCK: return local.requestDistributedLock((String) a[0], (VectorClock) a[1]); case UNLOCK: local.releaseDistributedLock((String) a[0], (VectorClock) a[1]); return null;
+        case DIGEST: return local.getStateDigest(((Long) a[0]).intValue(), (int[]) a[1]);
+        default: throw new RemoteException("Unknown method " + method); } }
+
+    // --- Selector loop (the only thread touching sockets) ---
+    private void selectLoop() { while (running) { try { selector.select(); Conn c;
+            while ((c = toRegister.poll()) != null) { if (c.closed) continue; c.key = c.ch.register(selector, c.dialing != null ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ, c);
+                if (c.dialing != null) finishConnect(c); else flush(c); } // A local connect may already be done
+            while ((c = toFlush.poll()) != null) flush(c);
+            for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) { SelectionKey k = it.next(); it.remove(); if (!k.isValid()) continue;
+                if (k.isAcceptable()) { accept(); continue; } Conn conn = (Conn) k.attachment();
+                try { if (k.isConnectable()) { finishConnect(conn); continue; } if (k.isReadable()) read(conn); if (k.isValid() && k.isWritable()) flush(conn); } catch (IOException | RuntimeException e) { close(conn, String.valueOf(e.getMessage())); } } }
+        catch (IOException | ClosedSelectorException e) { if (running) LOGGER.log(Level.WARNING, "Transport loop error", e); } } }
+    private void flush(Conn c) { if (c.key == null || !c.key.isValid()) return; // Not registered yet: flushed right after registration
+        try { ByteBuffer b; while ((b = c.out.peek()) != null) { c.ch.write(b); if (b.hasRemaining()) break; c.out.poll(); }
+            c.key.interestOps(c.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE); } catch (IOException e) { close(c, String.valueOf(e.getMessage())); } }
+    private void read(Conn c) throws IOException { if (c.ch.read(c.in) < 0) throw new EOFException("closed by peer"); c.in.flip();
+        while (c.in.remaining() >= 4) { int len = c.in.getInt(c.in.position()); if (len < HEADER || len > MAX_FRAME) throw new IOException("bad frame length " + len);
+            if (c.in.remaining() < 4 + len) break; c.in.getInt(); byte kind = c.in.get(); long id = c.in.getLong(); byte method = c.in.get();
+            byte[] body = new byte[len - HEADER]; c.in.get(body); onFrame(c, kind, id, method, body); }
+        c.in.compact(); if (c.in.position() >= 4) { int len = c.in.getInt(0); if (4 + len > c.in.capacity() && len <= MAX_FRAME) { // Grow to hold the whole frame
+            ByteBuffer big = ByteBuffer.allocate(4 + len); c.in.flip(); big.put(c.in); c.in = big; } } }
+
+    void close() { running = false; selector.wakeup(); conns.forEach(c -> close(c, "shutdown")); workers.shutdownNow();
+        try { loop.join(1000); server.close(); selector.close(); } catch (IOException | InterruptedException e) { /* Best effort */ } }
+
+    // --- Link to one peer ---
+    private final class Link implements PeerLink { private final String peerId; private final InetSocketAddress addr;
+        Link(String peerId, InetSocketAddress addr) { this.peerId = peerId; this.addr = addr; }
+        @Override public CompletableFuture<Void> heartbeat(String senderId, VectorClock clock) { return call(HEARTBEAT, senderId, clock).thenAccept(r -> {}); }
+        @Override public CompletableFuture<Void> election(ElectionMessage msg) { return call(ELECTION, msg).thenAccept(r -> {}); }
+        @Override public CompletableFuture<Void> coordinator(ElectionMessage msg) { return call(COORDINATOR, msg).thenAccept(r -> {}); }
+        @Override public CompletableFuture<Void> update(ReplicationUpdate update) { return call(UPDATE, update).thenAccept(r -> {}); }
+        @Override public CompletableFuture<Long> replicate(ReplicationBatch batch) { return call(BATCH, batch).thenApply(r -> (Long) r[0]); }
+        @Override public CompletableFuture<Void> snapshot(SnapshotChunk chunk) { return call(SNAPSHOT, chunk).thenAccept(r -> {}); }
+        @Override public CompletableFuture<long[]> digest(int level, int[] nodes) { return call(DIGEST, (long) level, nodes).thenApply(r -> (long[]) r[0]); }
+        @Override public CompletableFuture<Boolean> lock(String requesterId, VectorClock clock) { return call(LOCK, requesterId, clock).thenApply(r -> (Boolean) r[0]); }
+        @Override public CompletableFuture<Void> unlock(String requesterId, VectorClock clock) { return call(UNLOCK, requesterId, clock).thenAccept(r -> {}); }
+        @Override public void close() { Conn c = byPeer.get(peerId); if (c != null) NioTransport.this.close(c, "peer removed"); }
+        // Connected: send inline. Otherwise the call follows the peer's dial, so the caller (scheduler, election) never waits on connect
+        private CompletableFuture<Object[]> call(byte method, Object... args) { return connection(peerId, addr).thenCompose(conn -> NioTransport.this.call(conn, method, args)); } }
+}
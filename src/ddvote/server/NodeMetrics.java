@@ -0,0 +1,40 @@
+package ddvote.server;
+import ddvote.shared.NodeStats;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+// Per-node counters and latency histograms, read by getNodeStats() and the node's JMX bean (DC Concept: Observability)
+// Hot paths only bump a LongAdder or a histogram bucket: nothing is formatted, logged or allocated per call
+final class NodeMetrics {
+    // NodeService methods that are timed; overloads share one entry, and a delegating overload is not timed twice
+    enum Call { REGISTER_VOTER("registerVoter"), REGISTER_VOTER_RECEIPT("registerVoterWithReceipt"), REGISTER_VOTER_SEGMENT("registerVoterSegment"), LOGIN_VOTER("loginVoter"), GET_CANDIDATES("getCandidates"),
+        SUBMIT_VOTE("submitVote"), SUBMIT_VOTE_RECEIPT("submitVoteWithReceipt"), SUBMIT_VOTES("submitVotes"), GET_RESULTS("getResults"), GET_SHARD_RESULTS("getShardResults"),
+        GET_RESULTS_SINCE("getResultsSince"), GET_ELECTION_STATE("getElectionState"), SUBSCRIBE("subscribe"), GET_READ_TOKEN("getReadToken"), GET_PRIMARY_HINT("getPrimaryHint"),
+        RECEIVE_HEARTBEAT("receiveHeartbeat"), HANDLE_ELECTION("handleElectionMessage"), HANDLE_COORDINATOR("handleCoordinatorMessage"), APPLY_UPDATE("applyReplicationUpdate"),
+        APPLY_BATCH("applyReplicationBatch"), INSTALL_SNAPSHOT_CHUNK("installSnapshotChunk"), GET_STATE_DIGEST("getStateDigest"), REQUEST_LOCK("requestDistributedLock"), RELEASE_LOCK("releaseDistributedLock");
+        final String method; Call(String method) { this.method = method; } }
+    enum Counter { VOTERS_REGISTERED, VOTERS_DUPLICATE, VOTERS_INVALID, FORWARDED, ROUTED, STALE_READS, LOCKS_GRANTED, LOCKS_REJECTED, LOCK_RELEASES_FAILED,
+        REPL_UPDATES_APPLIED, REPL_BATCHES_APPLIED, REPL_GAPS, REPL_HANDOFFS, REPL_RESYNCS, SNAPSHOTS_SENT, SNAPSHOTS_INSTALLED, PEERS_SUSPECTED,
+        ELECTIONS_STARTED, ELECTIONS_WON, ELECTION_TIMEOUTS, COORDINATORS_ACCEPTED, COORDINATORS_STALE,
+        LEASE_WRITES_REFUSED, LEASE_RENEWALS_REFUSED, TAKEOVERS_STARTED, TAKEOVERS_GRANTED, TAKEOVERS_WON,
+        AE_ROUNDS, AE_BUCKETS_DIVERGED, AE_REPAIRS_SENT, AE_REPAIRS_APPLIED, AE_RESYNCS }
+    private final LatencyHistogram[] calls = new LatencyHistogram[Call.values().length]; private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final LongAdder[] votes = new LongAdder[NodeService.VoteResultStatus.values().length]; // Outcome of every vote this node admitted or refused as primary
+    private final LatencyHistogram elections = new LatencyHistogram(); private final AtomicLong electionStart = new AtomicLong(); // Start of the election in progress, 0 if none
+    final long startedAt = System.currentTimeMillis();
+
+    NodeMetrics() { for (int i = 0; i < calls.length; i++) calls[i] = new LatencyHistogram(); for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder(); for (int i = 0; i < votes.length; i++) votes[i] = new LongAdder(); }
+    void time(Call c, long startNanos) { calls[c.ordinal()].record(System.nanoTime() - startNanos); }
+    void count(Counter c) { counters[c.ordinal()].increment(); } void count(Counter c, long n) { counters[c.ordinal()].add(n); }
+    NodeService.VoteResultStatus vote(NodeService.VoteResultStatus s) { votes[s.ordinal()].increment(); return s; }
+    // An election runs from the first node-local trigger (startup, suspected primary, a peer's request) until a primary is known here
+    void electionStarted() { count(Counter.ELECTIONS_STARTED); electionStart.compareAndSet(0, System.nanoTime()); }
+    void electionEnded() { long start = electionStart.getAndSet(0); if (start != 0) elections.record(System.nanoTime() - start); }
+
+    Map<String, Long> counters() { Map<String, Long> m = new TreeMap<>(); for (Counter c : Counter.values()) m.put(c.name().toLowerCase(), counters[c.ordinal()].sum());
+        for (NodeService.VoteResultStatus s : NodeService.VoteResultStatus.values()) m.put("votes." + s.name().toLowerCase(), votes[s.ordinal()].sum()); return m; }
+    // Methods never called are left out
+    Map<String, NodeStats.Latency> latencies() { Map<String, NodeStats.Latency> m = new TreeMap<>(); for (Call c : Call.values()) { LatencyHistogram h = calls[c.ordinal()]; if (h.count() > 0) m.put(c.method, latency(h)); }
+        if (elections.count() > 0) m.put("election", latency(elections)); return m; }
+    static NodeStats.Latency latency(LatencyHistogram h) { return new NodeStats.Latency(h.count(), h.percentile(0.5), h.percentile(0.99), h.percentile(0.999), h.max()); }
+}
@@ -2,6 +2,7 @@ package ddvote.server;
 import ddvote.shared.*;
 import java.rmi.*;
 import java.util.List;
+import java.util.Map;
 // Combined RMI Interface for Server Nodes (Contract/API)
 public interface NodeService extends Remote {
     String SERVICE_NAME_PREFIX = "VotingNode_";
@@ -11,15 +12,44 @@ public interface NodeService extends Remote {
     void logoutVoter(String voterId) throws RemoteException;
     List<Candidate> getCandidates() throws RemoteException;
     VoteResultStatus submitVote(String voterId, String candidateId) throws RemoteException;
-    List<VoteResult> getResults() throws RemoteException;
+    List<VoteResultStatus> submitVotes(List<VoteRequest> votes) throws RemoteException; // One status per request, same order
+    // Per-call consistency (null = the node's -Dddvote.write.consistency); ACCEPTED_NOT_REPLICATED if the backups did not ack in time
+    VoteResultStatus submitVote(String voterId, String candidateId, WriteConsistency consistency) throws RemoteException;
+    List<VoteResultStatus> submitVotes(List<VoteRequest> votes, WriteConsistency consistency) throws RemoteException;
+    List<VoteResult> getResults() throws RemoteException; // All shards merged
+    List<VoteResult> getShardResults() throws RemoteException; // Only the answering node's shard (what other shards poll to merge)
+    ResultsDelta getResultsSince(long version) throws RemoteException; // Unchanged, changed candidates only, or full if version is unknown here
     ElectionState getElectionState() throws RemoteException;
-    // Internal Methods
+    long subscribe(UpdateListener listener, long resultsVersion) throws RemoteException; // Pushes start from resultsVersion (0 = send everything)
+    void unsubscribe(long subscriptionId) throws RemoteException;
+    // Reads any node may serve: a backup first catches up to 'after' (null = no floor) or throws StaleReadException
+    String loginVoter(Credentials c, ReadToken after) throws RemoteException;
+    List<Candidate> getCandidates(ReadToken after) throws RemoteException;
+    ResultsDelta getResultsSince(long version, ReadToken after) throws RemoteException; // Versions are per node
+    ElectionState getElectionState(ReadToken after) throws RemoteException;
+    ReadToken getReadToken() throws RemoteException; // The primary's current write position (backups forward)
+    // Leader routing: any node answers the hint (for its own shard) locally; receipts carry result, read token and hint, so clients write to the primary directly
+    // (a backup still forwards receipt writes while leadership is changing)
+    PrimaryHint getPrimaryHint() throws RemoteException;
+    WriteReceipt<Boolean> registerVoterWithReceipt(Credentials c) throws RemoteException;
+    WriteReceipt<VoteResultStatus> submitVoteWithReceipt(String voterId, String candidateId, WriteConsistency consistency) throws RemoteException;
+    // Bulk import (see ddvote.client.VoterImport): registers a segment of one shard's voters on that shard's primary, replicated as one update.
+    // Idempotent, so a segment whose outcome is unknown is simply sent again; the result is how many voters were new
+    WriteReceipt<Integer> registerVoterSegment(VoterSegment segment) throws RemoteException;
+    // Internal Methods (normally carried by the NIO transport; these RMI forms remain for -Dddvote.transport=rmi)
+    String getInternalEndpoint() throws RemoteException; // host:port of this node's NIO transport, null when it only speaks RMI
+    Map<String, Double> getPeerSuspicion() throws RemoteException; // Current phi per peer, for tuning -Dddvote.fd.*
+    NodeStats getNodeStats() throws RemoteException; // Counters, gauges, per-method latencies and per-peer lag of the answering node (also its JMX bean)
     void receiveHeartbeat(String senderId, VectorClock clock) throws RemoteException;
     void handleElectionMessage(ElectionMessage msg) throws RemoteException;
     void handleCoordinatorMessage(ElectionMessage msg) throws RemoteException;
     void applyReplicationUpdate(ReplicationUpdate update) throws RemoteException;
+    long applyReplicationBatch(ReplicationBatch batch) throws RemoteException; // Returns last applied seq of the batch's stream (the ack)
+    void installSnapshotChunk(SnapshotChunk chunk) throws RemoteException; // Chunks arrive in order; the last one installs the whole snapshot
+    long[] getStateDigest(int level, int[] nodes) throws RemoteException; // Merkle digest of this node's voters at a level (null nodes: all); level 0 is {root, counts}
     boolean requestDistributedLock(String requesterId, VectorClock clock) throws RemoteException;
     void releaseDistributedLock(String requesterId, VectorClock clock) throws RemoteException;
     // Nested Enum for vote status
-    enum VoteResultStatus { ACCEPTED, REJECTED_ALREADY_VOTED, REJECTED_INVALID_CANDIDATE, REJECTED_NOT_RUNNING, REJECTED_ERROR, REJECTED_NOT_LOGGED_IN, REJECTED_LOCK_BUSY }
+    enum VoteResultStatus { ACCEPTED, REJECTED_ALREADY_VOTED, REJECTED_INVALID_CANDIDATE, REJECTED_NOT_RUNNING, REJECTED_ERROR, REJECTED_NOT_LOGGED_IN, REJECTED_LOCK_BUSY,
+        ACCEPTED_NOT_REPLICATED } // Counted on the primary, but fewer backups than requested acknowledged it before the deadline
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package ddvote.server;
+import ddvote.shared.NodeStats;
+import java.util.Map;
+// JMX view of a node, registered as ddvote:type=Node,name=<nodeId> (DC Concept: Observability)
+// The same data as NodeService.getNodeStats(), each attribute read from a fresh snapshot
+public interface NodeStatsMXBean {
+    String getNodeId(); int getShard(); String getPrimaryId(); long getEpoch(); boolean isPrimary(); long getUptimeMs();
+    Map<String, Long> getCounters(); Map<String, Long> getGauges(); Map<String, NodeStats.Latency> getLatencies(); Map<String, NodeStats.Peer> getPeers();
+}
@@ -0,0 +1,23 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.rmi.RemoteException;
+import java.util.concurrent.*;
+// Internal node-to-node calls, independent of how they travel (DC Concept: Transport)
+// Every call is asynchronous; a failed call completes its future exceptionally
+interface PeerLink {
+    CompletableFuture<Void> heartbeat(String senderId, VectorClock clock);
+    CompletableFuture<Void> election(ElectionMessage msg);
+    CompletableFuture<Void> coordinator(ElectionMessage msg);
+    CompletableFuture<Void> update(ReplicationUpdate update);
+    CompletableFuture<Long> replicate(ReplicationBatch batch); // Completes with the peer's ack
+    CompletableFuture<Void> snapshot(SnapshotChunk chunk);
+    CompletableFuture<long[]> digest(int level, int[] nodes);
+    CompletableFuture<Boolean> lock(String requesterId, VectorClock clock);
+    CompletableFuture<Void> unlock(String requesterId, VectorClock clock);
+    void close();
+    // For callers that own a thread anyway (replication): waits and surfaces any failure as a RemoteException
+    static <T> T await(CompletableFuture<T> f) throws RemoteException { try { return f.get(); }
+        catch (ExecutionException e) { Throwable c = e.getCause(); if (c instanceof RemoteException) throw (RemoteException) c;
+            throw new RemoteException(c instanceof TimeoutException ? "Call timed out" : String.valueOf(c), c); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); throw new RemoteException("Interrupted", e); } }
+}
@@ -0,0 +1,74 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+// Ordered, batched outbound replication stream to a single backup (DC Concept: Replication)
+class PeerReplicator {
+    private static final Logger LOGGER = Logger.getLogger(PeerReplicator.class.getName());
+    static final int MAX_BATCH = 512; static final int CAPACITY = 65536; // Unacknowledged updates kept per peer
+    static final int MAX_BATCH_BYTES = 4 << 20; // Bulk import segments are large: a batch stops growing once its segments reach this much
+    static final long BACKPRESSURE_WAIT = 200, RETRY_MIN = 50, RETRY_MAX = 2000, IDLE_RECHECK = 1000;
+    private final ServerNodeState state; private final String peerId; private final PeerLink link;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>(); // Seq-ordered, retained until acknowledged (guarded by this)
+    private long ackedSeq = 0; private volatile boolean running = true; private final Thread sender;
+    private boolean resyncNeeded = true; // Peer must be brought up to date with a snapshot before the live stream (guarded by this)
+    private ReadToken handoff; private long handoffSeq; // Until the peer acks: where our stream forked off the one it may still be following (guarded by this)
+    private final TreeMap<Long, List<CompletableFuture<Void>>> ackWaiters = new TreeMap<>(); // Completed once the peer acks their seq (guarded by this)
+    private static final class Entry { final long seq; final ReplicationUpdate update; Entry(long seq, ReplicationUpdate update) { this.seq = seq; this.update = update; } }
+
+    PeerReplicator(ServerNodeState state, String peerId, PeerLink link) { this.state = state; this.peerId = peerId; this.link = link;
+        sender = new Thread(this::sendLoop, "repl-" + peerId); sender.setDaemon(true); sender.start(); }
+
+    // Never waits: it runs under the primary's sequencing monitor, where one slow peer must not hold up writes to every other
+    synchronized void enqueue(long seq, ReplicationUpdate update) { if (!running) return; pending.addLast(new Entry(seq, update)); notifyAll(); }
+    // Backpressure, applied by the producer once it has left that monitor: waits while this peer's backlog is over capacity; if it stays over, the backlog is dropped
+    synchronized void awaitCapacity() { long deadline = System.currentTimeMillis() + BACKPRESSURE_WAIT;
+        try { while (running && pending.size() > CAPACITY) { long left = deadline - System.currentTimeMillis(); if (left <= 0) { overflow(); return; } wait(left); } }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); overflow(); } }
+    private void overflow() { LOGGER.warning("Replication backlog to " + peerId + " full (" + pending.size() + " unacked after seq " + ackedSeq + "); dropping, will resync"); pending.clear(); resyncNeeded = true; handoff = null;
+        state.metrics.count(NodeMetrics.Counter.REPL_RESYNCS); }
+    // Discards the live backlog and re-seeds the peer from a snapshot (new peer, new primary, or a gap the backlog cannot fill)
+    synchronized void requestResync() { pending.clear(); resyncNeeded = true; handoff = null; notifyAll(); }
+    // New primary after a takeover: our state at seq was the one reached at base, so a peer still exactly there continues from seq without a snapshot.
+    // One that is behind or past it (it applied writes we never saw) refuses the first batch and is resynced then
+    synchronized void handoff(ReadToken base, long seq) { if (base == null) { requestResync(); return; } pending.clear(); resyncNeeded = false; handoff = base; handoffSeq = seq; notifyAll(); } synchronized void wake() { notifyAll(); }
+
+    private void sendLoop() { long backoff = RETRY_MIN; while (running) { ReplicationBatch batch = null;
+        try { synchronized (this) { while (running && (!state.isPrimary() || (pending.isEmpty() && !resyncNeeded && handoff == null))) wait(IDLE_RECHECK); if (!running) return;
+            if (resyncNeeded) resyncNeeded = false; else batch = nextBatch(); } } // Consume the resync request; an overflow during transfer re-raises it
+        catch (InterruptedException e) { return; }
+        try { if (batch == null) onSnapshot(SnapshotTransfer.send(state, peerId, link)); else onAck(batch, PeerLink.await(link.replicate(batch))); backoff = RETRY_MIN; }
+        catch (RemoteException | RuntimeException e) { LOGGER.warning((batch == null ? "Snapshot" : "Replication at seq " + batch.getFirstSeq()) + " to " + peerId + " failed, retrying: " + e.getMessage());
+            if (batch == null) synchronized (this) { resyncNeeded = true; }
+            try { Thread.sleep(backoff); } catch (InterruptedException ie) { return; } backoff = Math.min(backoff * 2, RETRY_MAX); } } }
+    // While a handoff is unacknowledged every batch carries it, an empty one if nothing is pending, so the peer learns its position right away
+    private ReplicationBatch nextBatch() { List<ReplicationUpdate> updates = new ArrayList<>(Math.min(pending.size(), MAX_BATCH)); long first = pending.isEmpty() ? handoffSeq + 1 : pending.peekFirst().seq;
+        long bytes = 0; for (Entry e : pending) { if (updates.size() == MAX_BATCH || bytes >= MAX_BATCH_BYTES) break; updates.add(e.update);
+            if (e.update.getType() == ReplicationUpdate.UpdateType.REGISTER_VOTERS) bytes += e.update.getSegment().getData().length; }
+        return new ReplicationBatch(state.getId(), state.getReplStreamId(), first, updates, handoff); }
+    // Everything up to the backup's reported position is durable there; a retry resumes right after it
+    private synchronized void onAck(ReplicationBatch batch, long acked) { state.updatePeerBeat(peerId); state.notePeerSent(peerId); // An ack is proof of life both ways
+        if (acked < batch.getFirstSeq() - 1) { LOGGER.info(peerId + (batch.getBase() != null ? " is not at " + batch.getBase() : " is behind (at " + acked + ")") + ", resyncing"); resyncNeeded = true; state.metrics.count(NodeMetrics.Counter.REPL_RESYNCS); }
+        if (batch.getBase() != null && handoff == batch.getBase()) handoff = null; // Taken or refused, either way settled
+        trimTo(acked); }
+    private synchronized void onSnapshot(long seq) { state.updatePeerBeat(peerId); state.notePeerSent(peerId); trimTo(seq); ackedSeq = seq; state.metrics.count(NodeMetrics.Counter.SNAPSHOTS_SENT); }
+    private void trimTo(long seq) { while (!pending.isEmpty() && pending.peekFirst().seq <= seq) pending.removeFirst(); ackedSeq = Math.max(ackedSeq, seq); notifyAll();
+        while (!ackWaiters.isEmpty() && ackWaiters.firstKey() <= ackedSeq) ackWaiters.pollFirstEntry().getValue().forEach(f -> f.complete(null)); }
+
+    // --- Write acknowledgement ---
+    synchronized CompletableFuture<Void> ackFuture(long seq) { CompletableFuture<Void> f = new CompletableFuture<>();
+        if (!running) f.completeExceptionally(new RemoteException(peerId + " removed")); else if (ackedSeq >= seq) f.complete(null); else ackWaiters.computeIfAbsent(seq, k -> new ArrayList<>(1)).add(f); return f; }
+    // Completes once 'needed' peers have acked seq (all waits run side by side); fails early once that can no longer happen
+    static CompletableFuture<Void> awaitAcks(Collection<PeerReplicator> peers, long seq, int needed) { CompletableFuture<Void> done = new CompletableFuture<>(); List<PeerReplicator> ps = new ArrayList<>(peers);
+        if (needed <= 0) { done.complete(null); return done; } if (ps.size() < needed) { done.completeExceptionally(new RemoteException("Only " + ps.size() + " backups, " + needed + " needed")); return done; }
+        AtomicInteger acked = new AtomicInteger(), failed = new AtomicInteger(); int tolerable = ps.size() - needed;
+        for (PeerReplicator p : ps) p.ackFuture(seq).whenComplete((r, e) -> { if (e == null) { if (acked.incrementAndGet() == needed) done.complete(null); } else if (failed.incrementAndGet() > tolerable) done.completeExceptionally(e); });
+        return done; }
+
+    synchronized long getAckedSeq() { return ackedSeq; } synchronized int getBacklog() { return pending.size(); }
+    void close() { running = false; synchronized (this) { pending.clear(); RemoteException gone = new RemoteException(peerId + " removed");
+        ackWaiters.values().forEach(fs -> fs.forEach(f -> f.completeExceptionally(gone))); ackWaiters.clear(); notifyAll(); } sender.interrupt(); }
+}
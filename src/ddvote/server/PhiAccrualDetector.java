@@ -0,0 +1,22 @@
+package ddvote.server;
+// Accrual failure detector for one peer (DC Concept: Failure Detection)
+// Instead of a fixed timeout, phi = -log10(P(a beat arrives this late)) under a normal fit of recent inter-arrival times,
+// so the threshold adapts to how regularly this peer is heard from. Any inbound traffic counts as an arrival.
+final class PhiAccrualDetector {
+    static final int WINDOW = 200;
+    private final long minSampleMs, minStdMs, acceptablePauseMs;
+    private final long[] intervals = new long[WINDOW]; private int count, next; private double sum, sumSq; // Ring buffer with running moments (guarded by this)
+    private long lastArrival; private long lastSampled;
+    private final LatencyHistogram gaps = new LatencyHistogram(); // Every sampled inter-arrival time, unlike the window (for getNodeStats)
+    // expectedIntervalMs seeds the window so a new peer is judged by the configured beat rate until it has history
+    PhiAccrualDetector(long expectedIntervalMs, long minStdMs, long acceptablePauseMs, long nowMs) { this.minSampleMs = expectedIntervalMs / 2; this.minStdMs = minStdMs; this.acceptablePauseMs = acceptablePauseMs;
+        add(expectedIntervalMs - expectedIntervalMs / 4); add(expectedIntervalMs + expectedIntervalMs / 4); lastArrival = lastSampled = nowMs; }
+    // Arrivals closer together than half a beat only refresh the clock: busy replication traffic must not shrink the expected gap
+    synchronized void arrival(long nowMs) { if (nowMs - lastSampled >= minSampleMs) { add(nowMs - lastSampled); gaps.record((nowMs - lastSampled) * 1_000_000); lastSampled = nowMs; } lastArrival = nowMs; }
+    synchronized long lastArrival() { return lastArrival; } LatencyHistogram gaps() { return gaps; }
+    synchronized double phi(long nowMs) { double mean = sum / count + acceptablePauseMs, std = Math.max(Math.sqrt(Math.max(0, sumSq / count - (sum / count) * (sum / count))), minStdMs);
+        double y = (nowMs - lastArrival - mean) / std, e = Math.exp(-y * (1.5976 + 0.070566 * y * y)); // Logistic approximation of the normal CDF tail
+        return nowMs - lastArrival > mean ? -Math.log10(e / (1 + e)) : -Math.log10(1 - 1 / (1 + e)); }
+    private void add(long interval) { if (count == WINDOW) { long old = intervals[next]; sum -= old; sumSq -= (double) old * old; } else count++;
+        intervals[next] = interval; next = (next + 1) % WINDOW; sum += interval; sumSq += (double) interval * interval; }
+}
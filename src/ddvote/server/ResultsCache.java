@@ -0,0 +1,36 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+// Versioned, immutable results snapshots rebuilt at most once per refresh interval (State Management)
+// Versions start at a random base so a version from another node is never mistaken for one of ours
+class ResultsCache {
+    static final int HISTORY = 32; // Older versions are answered with a full list
+    private static final class Snapshot { final long version, builtAt; final List<VoteResult> results; final Map<String, Long> byId;
+        Snapshot(long version, long builtAt, List<VoteResult> results) { this.version = version; this.builtAt = builtAt; this.results = List.copyOf(results);
+            byId = new HashMap<>(results.size() * 2); results.forEach(r -> byId.put(r.getCandidateId(), r.getVoteCount())); }
+        Snapshot refreshed(long now) { return new Snapshot(version, now, results); } }
+    private final Supplier<List<VoteResult>> source; private final long refreshMs; // Sorted results, e.g. TallyEngine::snapshot
+    private final ArrayDeque<Snapshot> history = new ArrayDeque<>(HISTORY); // Newest first (guarded by this)
+    private volatile Snapshot current;
+
+    // Interval via -Dddvote.results.refreshMs (default 200)
+    ResultsCache(Supplier<List<VoteResult>> source) { this.source = source; this.refreshMs = Long.getLong("ddvote.results.refreshMs", 200);
+        current = new Snapshot(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE >>> 1), System.currentTimeMillis(), source.get()); history.push(current); }
+
+    List<VoteResult> results() { return fresh().results; } long version() { return fresh().version; }
+    ResultsDelta since(long version) { Snapshot s = fresh(); if (version == s.version) return new ResultsDelta(s.version, false, List.of());
+        Snapshot old = find(version); if (old == null || !old.byId.keySet().equals(s.byId.keySet())) return new ResultsDelta(s.version, true, s.results);
+        List<VoteResult> changed = new ArrayList<>(); for (VoteResult r : s.results) if (old.byId.get(r.getCandidateId()) != r.getVoteCount()) changed.add(r);
+        return new ResultsDelta(s.version, false, changed); }
+
+    // Readers inside the interval get the published snapshot without locking; one thread rebuilds, bumping the version only on change
+    private Snapshot fresh() { Snapshot s = current; long now = System.currentTimeMillis(); if (now - s.builtAt < refreshMs) return s;
+        synchronized (this) { s = current; if (now - s.builtAt < refreshMs) return s; List<VoteResult> res = source.get();
+            if (sameCounts(s, res)) { current = s.refreshed(now); history.pop(); history.push(current); return current; }
+            current = new Snapshot(s.version + 1, now, res); if (history.size() == HISTORY) history.removeLast(); history.push(current); return current; } }
+    private static boolean sameCounts(Snapshot s, List<VoteResult> res) { if (res.size() != s.byId.size()) return false;
+        for (VoteResult r : res) { Long c = s.byId.get(r.getCandidateId()); if (c == null || c != r.getVoteCount()) return false; } return true; }
+    private synchronized Snapshot find(long version) { for (Snapshot h : history) if (h.version == version) return h; return null; }
+}
@@ -0,0 +1,23 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.rmi.RemoteException;
+import java.util.concurrent.*;
+// Internal calls as plain blocking RMI, each on a pooled thread (-Dddvote.transport=rmi, or a peer without an NIO endpoint)
+class RmiPeerLink implements PeerLink {
+    private final NodeService stub; private final Executor executor;
+    RmiPeerLink(NodeService stub, Executor executor) { this.stub = stub; this.executor = executor; }
+    @Override public CompletableFuture<Void> heartbeat(String senderId, VectorClock clock) { return run(() -> { stub.receiveHeartbeat(senderId, clock); return null; }); }
+    @Override public CompletableFuture<Void> election(ElectionMessage msg) { return run(() -> { stub.handleElectionMessage(msg); return null; }); }
+    @Override public CompletableFuture<Void> coordinator(ElectionMessage msg) { return run(() -> { stub.handleCoordinatorMessage(msg); return null; }); }
+    @Override public CompletableFuture<Void> update(ReplicationUpdate update) { return run(() -> { stub.applyReplicationUpdate(update); return null; }); }
+    @Override public CompletableFuture<Long> replicate(ReplicationBatch batch) { return run(() -> stub.applyReplicationBatch(batch)); }
+    @Override public CompletableFuture<Void> snapshot(SnapshotChunk chunk) { return run(() -> { stub.installSnapshotChunk(chunk); return null; }); }
+    @Override public CompletableFuture<long[]> digest(int level, int[] nodes) { return run(() -> stub.getStateDigest(level, nodes)); }
+    @Override public CompletableFuture<Boolean> lock(String requesterId, VectorClock clock) { return run(() -> stub.requestDistributedLock(requesterId, clock)); }
+    @Override public CompletableFuture<Void> unlock(String requesterId, VectorClock clock) { return run(() -> { stub.releaseDistributedLock(requesterId, clock); return null; }); }
+    @Override public void close() {}
+    private <T> CompletableFuture<T> run(Call<T> call) { CompletableFuture<T> f = new CompletableFuture<>();
+        try { executor.execute(() -> { try { f.complete(call.run()); } catch (Throwable t) { f.completeExceptionally(t); } }); }
+        catch (RejectedExecutionException e) { f.completeExceptionally(new RemoteException("Node shutting down", e)); } return f; }
+    @FunctionalInterface private interface Call<T> { T run() throws RemoteException; }
+}
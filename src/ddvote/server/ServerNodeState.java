@@ -3,45 +3,136 @@ import ddvote.shared.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantLock;
 // Holds state for a VotingServerNode (State Management)
 public class ServerNodeState {
-    final String nodeId;
+    final String nodeId; final int shard; // This node replicates and may lead only its own shard's voters
     // Replicated State
-    final ConcurrentHashMap<String, String> voters = new ConcurrentHashMap<>();
-    final ConcurrentHashMap<String, Candidate> candidates = new ConcurrentHashMap<>();
-    final ConcurrentHashMap<String, Integer> counts = new ConcurrentHashMap<>();
-    final Set<String> voted = ConcurrentHashMap.newKeySet();
+    volatile VoterStore voters = new VoterStore(); // Credentials + voted bits by dense ordinal; swapped wholesale on snapshot install
+    final TallyEngine tally = new TallyEngine(initialCandidates()); // Candidates by dense ordinal with striped counters
+    final ConcurrentHashMap<Integer, Map<String, Long>> shardCounts = new ConcurrentHashMap<>(); // Last polled tally of every other shard
+    final ResultsCache results = new ResultsCache(this::mergedResults); // What result readers see: all shards, versioned, rebuilt at most once per interval
     final AtomicReference<ElectionState> electionState = new AtomicReference<>(ElectionState.NOT_STARTED);
     // Local State
     final AtomicReference<String> primaryId = new AtomicReference<>(null);
     final AtomicReference<Boolean> isPrimary = new AtomicReference<>(false);
     final AtomicReference<Boolean> electionRunning = new AtomicReference<>(false);
+    final AtomicLong epoch = new AtomicLong(0); // Highest election epoch seen; a node declaring itself primary leads the next one
     final VectorClock clock = new VectorClock();
-    final ConcurrentHashMap<String, Long> peerHeartbeats = new ConcurrentHashMap<>();
+    // Failure detection: one accrual detector per peer fed by every inbound message, plus when we last reached each peer
+    static final long HB_INTERVAL = Long.getLong("ddvote.fd.heartbeatMs", 1000); // Beat rate when no other traffic flows
+    static final long FD_MIN_STD = Long.getLong("ddvote.fd.minStdMs", 200), FD_ACCEPTABLE_PAUSE = Long.getLong("ddvote.fd.acceptablePauseMs", 1000); // Floors against GC pauses and jitter
+    final ConcurrentHashMap<String, PhiAccrualDetector> peerDetectors = new ConcurrentHashMap<>(); final ConcurrentHashMap<String, Long> lastSentTo = new ConcurrentHashMap<>();
+    // Leases: the primary takes writes only while renewals it sent within LEASE_MS - LEASE_MARGIN reached a majority of the shard; a backup's lease on the
+    // primary runs LEASE_MS from the last time it heard from it, and only once it has run out does the backup grant a standby's takeover
+    static final long LEASE_MS = Long.getLong("ddvote.lease.ms", 600), LEASE_RENEW = LEASE_MS / 5, LEASE_MARGIN = LEASE_MS / 5; // Margin covers clock rate drift and scheduling delay
+    static final long PROMISE_TTL = LEASE_MS * 10; // A grant whose takeover never completed stops fencing the old primary after this
+    volatile long primaryEpoch = 0; // Epoch the current primary leads in
+    final ConcurrentHashMap<String, Long> leaseAcks = new ConcurrentHashMap<>(); // Primary: backup -> send time of its latest acknowledged renewal
+    private long promisedEpoch = 0, promisedAt = 0; private String promisedTo; // Backup: the takeover it granted last (guarded by this)
+    // Replication stream positions: our outbound sequence, and per source {streamId, last applied seq} inbound
+    final long replStreamId = ThreadLocalRandom.current().nextLong(); final AtomicLong replSeq = new AtomicLong(0);
+    final ConcurrentHashMap<String, long[]> appliedSeqs = new ConcurrentHashMap<>(); private volatile String lastAppliedSource; // Whose stream our state last followed
     final AtomicReference<String> lockHolder = new AtomicReference<>(null); // Simplified lock holder
+    private final WriteAheadLog wal; // Null when -Dddvote.wal.mode=OFF
+    // Vote admission stripes: a voter always maps to the same stripe, so the voted-check and tally bump are atomic per voter
+    private static final int VOTE_STRIPES = 64; // Power of two
+    private final ReentrantLock[] voteStripes = new ReentrantLock[VOTE_STRIPES];
+    final NodeMetrics metrics = new NodeMetrics(); // Counters and latencies for getNodeStats() and JMX
 
-    public ServerNodeState(String id) { this.nodeId = id; initCandidates(); }
-    private void initCandidates() { addCand(new Candidate("C1","A","D1")); addCand(new Candidate("C2","B","D2")); }
-    private void addCand(Candidate c) { candidates.putIfAbsent(c.getId(), c); counts.putIfAbsent(c.getId(), 0); }
+    public ServerNodeState(String id, int shard) { this.nodeId = id; this.shard = shard; for (int i = 0; i < VOTE_STRIPES; i++) voteStripes[i] = new ReentrantLock();
+        this.wal = WriteAheadLog.open(id, new WriteAheadLog.Replayer() { // Replay rebuilds the maps without re-logging
+            public void registerVoter(String vId, String pw) { voters.register(vId, pw); }
+            public void recordVote(String vId, String cId) { int o = voters.ordinal(vId); if (o >= 0 && voters.markVoted(o, tally.choice(cId))) tally.increment(cId); }
+            public void reset() { voters = new VoterStore(); tally.zero(); }
+            public void markVoted(String vId, String cId) { int o = voters.ordinal(vId); if (o >= 0) voters.markVoted(o, tally.choice(cId)); } // "" (older logs) is no candidate: choice unknown
+            public void setTally(String cId, long n) { tally.setCount(cId, n); } }); }
+    private static List<Candidate> initialCandidates() { return List.of(new Candidate("C1","A","D1"), new Candidate("C2","B","D2")); }
     // State Modifiers (called by primary or applyUpdate)
-    synchronized boolean addVoter(String id, String pw) { return voters.putIfAbsent(id, pw) == null; }
-    synchronized boolean addVote(String vId, String cId) { if (voted.add(vId)) { counts.compute(cId, (k, v) -> v == null ? 1 : v + 1); return true; } return false; }
+    boolean addVoter(String id, String pw) { if (voters.register(id, pw) < 0) return false; if (wal != null) wal.logRegister(id, pw); return true; }
+    int addVoters(List<Credentials> cs) { int added = 0; for (Credentials c : cs) if (addVoter(c.getVoterId(), c.getPassword())) added++; return added; } // How many were new
+    // False if the voter already voted or is not registered (callers check isRegistered first to tell the two apart)
+    boolean addVote(String vId, String cId) { VoterStore vs = voters; int ord = vs.ordinal(vId); if (ord < 0) return false; ReentrantLock stripe = voteStripes[ord & (VOTE_STRIPES - 1)]; stripe.lock();
+        try { if (!vs.markVoted(ord, tally.choice(cId))) return false; tally.increment(cId); if (wal != null) wal.logVote(vId, cId); return true; } finally { stripe.unlock(); } }
+    // Waits until every mutation made so far is on disk; concurrent callers share one fsync (no-op unless WAL mode is GROUP)
+    void syncLog() { if (wal != null) wal.sync(); } void close() { if (wal != null) wal.close(); }
+    // Quiesce all vote admission (stripes taken in index order) - for consistent voted/counts captures only
+    void lockAllStripes() { for (ReentrantLock l : voteStripes) l.lock(); } void unlockAllStripes() { for (int i = VOTE_STRIPES - 1; i >= 0; i--) voteStripes[i].unlock(); }
     synchronized void setElecState(ElectionState s) { electionState.set(s); }
+    // --- Snapshots ---
+    // Voted set and counts are copied under all stripes so they agree; voters are append-only and read live by the sender
+    // Every voter that has voted is registered, so the first voterCount ordinals plus their bits cover the tallies exactly
+    // cands is the table the voters' choice bytes index, taken with them
+    static final class Capture { final long seq; final VoterStore voters; final int voterCount; final long[] votedWords; final HashMap<String, Long> counts; final List<Candidate> cands;
+        Capture(long seq, VoterStore voters, int voterCount, long[] votedWords, HashMap<String, Long> counts, List<Candidate> cands) { this.seq = seq; this.voters = voters; this.voterCount = voterCount; this.votedWords = votedWords;
+            this.counts = counts; this.cands = cands; } }
+    Capture captureForSnapshot() { long seq = replSeq.get(); // Every update up to seq was applied before it was numbered
+        lockAllStripes(); try { VoterStore vs = voters; int n = vs.size(); return new Capture(seq, vs, n, vs.votedWords(n), tally.countsById(), tally.candidates()); } finally { unlockAllStripes(); } }
+    void installSnapshot(VoterStore vs, Map<String, Long> cs, List<Candidate> cands, ElectionState es) { lockAllStripes();
+        try { voters = vs; tally.reset(cands, cs); electionState.set(es); if (wal != null) wal.logReset(vs, tally.candidates(), tally.countsById()); } finally { unlockAllStripes(); }
+        if (wal != null) wal.compact(); }
+    // --- Anti-entropy ---
+    // Level 0 is {root, counts}; the counts only ever move with the voted set, so they are compared whole rather than bucketed
+    long[] digest(int level, int[] nodes) { if (level > 0) return voters.digest(level, nodes); long counts = 0;
+        for (Map.Entry<String, Long> e : new TreeMap<>(tally.countsById()).entrySet()) counts = VoterStore.mix(counts * 31 + e.getKey().hashCode() ^ e.getValue());
+        return new long[] { voters.digest(0, null)[0], counts }; }
+    // Primary: everything in the given buckets, each vote with its candidate; under all stripes so no vote is seen half recorded
+    BucketRepair captureBuckets(int[] buckets) { lockAllStripes(); try { VoterStore vs = voters; ArrayList<Integer> ords = new ArrayList<>(); for (int b : buckets) for (int o : vs.bucket(b)) ords.add(o);
+            int n = ords.size(); String[] ids = new String[n], pws = new String[n], votes = new String[n];
+            for (int i = 0; i < n; i++) { int o = ords.get(i); ids[i] = vs.voterId(o); pws[i] = vs.password(o);
+                if (vs.hasVoted(o)) { String c = tally.candidateId(vs.choice(o)); votes[i] = c == null ? BucketRepair.UNKNOWN : c; } }
+            return new BucketRepair(buckets, ids, pws, votes); } finally { unlockAllStripes(); } }
+    // Backup: adds what the primary has in those buckets through the normal write paths (so tallies and the WAL follow). False if this node also holds
+    // something the primary does not, or a vote whose candidate is unknown is missing here: neither can be fixed in place, only by a snapshot
+    boolean repair(BucketRepair r) { boolean exact = true; HashSet<String> listed = new HashSet<>(r.size() * 2);
+        for (int i = 0; i < r.size(); i++) { String id = r.getVoterId(i), vote = r.getVote(i); listed.add(id); addVoter(id, r.getPassword(i)); VoterStore vs = voters; int o = vs.ordinal(id);
+            if (!vs.password(o).equals(r.getPassword(i))) exact = false;
+            if (vote == null) exact &= !vs.hasVoted(o); else if (!vs.hasVoted(o)) { if (vote.equals(BucketRepair.UNKNOWN)) exact = false; else addVote(id, vote); } }
+        VoterStore vs = voters; for (int b : r.getBuckets()) for (int o : vs.bucket(b)) exact &= listed.contains(vs.voterId(o)); return exact; }
     // Read Methods
-    String getPw(String id) { return voters.get(id); } boolean hasVoted(String id) { return voted.contains(id); }
-    ElectionState getElecState() { return electionState.get(); } List<Candidate> getCands() { return List.copyOf(candidates.values()); }
-    List<VoteResult> getRes() { Map<String, Integer> snap = new ConcurrentHashMap<>(counts); return candidates.values().stream()
-            .map(c -> new VoteResult(c.getId(), c.getName(), snap.getOrDefault(c.getId(), 0)))
-            .sorted((r1, r2) -> Integer.compare(r2.getVoteCount(), r1.getVoteCount())).collect(Collectors.toList()); }
+    String getPw(String id) { VoterStore vs = voters; int o = vs.ordinal(id); return o < 0 ? null : vs.password(o); }
+    boolean isRegistered(String id) { return voters.ordinal(id) >= 0; } boolean hasVoted(String id) { VoterStore vs = voters; int o = vs.ordinal(id); return o >= 0 && vs.hasVoted(o); }
+    ElectionState getElecState() { return electionState.get(); } List<Candidate> getCands() { return tally.candidates(); }
+    boolean isCandidate(String cId) { return tally.isCandidate(cId); } List<VoteResult> getRes() { return results.results(); }
+    ResultsDelta getResSince(long version) { return results.since(version); }
+    // --- Shards ---
+    List<VoteResult> getShardRes() { return tally.snapshot(); } // This shard's own tally
+    void setShardCounts(int s, List<VoteResult> res) { Map<String, Long> m = new HashMap<>(res.size() * 2); res.forEach(r -> m.put(r.getCandidateId(), r.getVoteCount())); shardCounts.put(s, m); }
+    // Voters are disjoint across shards, so the global tally is the plain sum; a shard we cannot reach keeps its last known counts
+    private List<VoteResult> mergedResults() { List<VoteResult> local = tally.snapshot(); if (shardCounts.isEmpty()) return local; List<VoteResult> res = new ArrayList<>(local.size());
+        for (VoteResult r : local) { long n = r.getVoteCount(); for (Map<String, Long> m : shardCounts.values()) n += m.getOrDefault(r.getCandidateId(), 0L); res.add(new VoteResult(r.getCandidateId(), r.getCandidateName(), n)); }
+        res.sort((r1, r2) -> Long.compare(r2.getVoteCount(), r1.getVoteCount())); return res; }
     // Local State Accessors/Mutators
     String getId() { return nodeId; } VectorClock getClock() { return clock; } VectorClock getClockCopy() { return clock.copy(); }
-    String getPrimaryId() { return primaryId.get(); } void setPrimaryId(String id) { primaryId.set(id); isPrimary.set(nodeId.equals(id)); }
+    String getPrimaryId() { return primaryId.get(); } void setPrimaryId(String id) { primaryId.set(id); isPrimary.set(nodeId.equals(id)); if (id != null) metrics.electionEnded(); }
     boolean isPrimary() { return isPrimary.get(); } boolean isElecRunning() { return electionRunning.get(); }
+    long getEpoch() { return epoch.get(); } long nextEpoch() { return epoch.incrementAndGet(); } void observeEpoch(long e) { epoch.accumulateAndGet(e, Math::max); }
+    PrimaryHint getPrimaryHint() { return new PrimaryHint(getPrimaryId(), epoch.get(), shard, ShardMap.SHARDS); } int getShard() { return shard; }
     boolean setElecRunning(boolean exp, boolean upd) { return electionRunning.compareAndSet(exp, upd); }
-    void updatePeerBeat(String id) { peerHeartbeats.put(id, System.currentTimeMillis()); } Map<String, Long> getPeerBeats() { return Map.copyOf(peerHeartbeats); }
-    void removePeer(String id) { peerHeartbeats.remove(id); }
+    void updatePeerBeat(String id) { long now = System.currentTimeMillis(); peerDetectors.computeIfAbsent(id, k -> new PhiAccrualDetector(HB_INTERVAL, FD_MIN_STD, FD_ACCEPTABLE_PAUSE, now)).arrival(now); }
+    Long getPeerBeat(String id) { PhiAccrualDetector d = peerDetectors.get(id); return d == null ? null : d.lastArrival(); } // Last time we heard anything from id
+    Map<String, Double> getPeerSuspicion() { long now = System.currentTimeMillis(); Map<String, Double> phi = new TreeMap<>(); peerDetectors.forEach((id, d) -> phi.put(id, d.phi(now))); return phi; }
+    void notePeerSent(String id) { lastSentTo.put(id, System.currentTimeMillis()); } long getLastSentTo(String id) { return lastSentTo.getOrDefault(id, 0L); } // Peer heard from us (it replied)
+    void removePeer(String id) { peerDetectors.remove(id); lastSentTo.remove(id); leaseAcks.remove(id); }
+    // --- Leases ---
+    void setPrimaryId(String id, long epoch) { primaryEpoch = epoch; setPrimaryId(id); } long getPrimaryEpoch() { return primaryEpoch; }
+    void noteLeaseAck(String id, long sentAt) { leaseAcks.merge(id, sentAt, Math::max); }
+    boolean leaseFresh(String id) { Long t = leaseAcks.get(id); return t != null && System.currentTimeMillis() - t < LEASE_MS - LEASE_MARGIN; }
+    boolean holdsLease(Collection<String> backups) { int fresh = 0; for (String b : backups) if (leaseFresh(b)) fresh++; return fresh >= (backups.size() + 1) / 2; } // With us, a majority
+    boolean primaryLeaseExpired() { String p = getPrimaryId(); Long beat = p == null ? null : getPeerBeat(p); return beat == null || System.currentTimeMillis() - beat > LEASE_MS; }
+    // One candidate per epoch; a newer epoch supersedes an older grant
+    synchronized boolean grantTakeover(String candidate, long e) { long now = System.currentTimeMillis(); boolean live = now - promisedAt < PROMISE_TTL;
+        if (e < promisedEpoch && live || e == promisedEpoch && live && !candidate.equals(promisedTo)) return false; promisedEpoch = e; promisedTo = candidate; promisedAt = now; return true; }
+    synchronized boolean leaseRevoked(long e) { return e < promisedEpoch && System.currentTimeMillis() - promisedAt < PROMISE_TTL; } // Renewals from before a granted takeover
+    long getReplStreamId() { return replStreamId; } long nextReplSeq() { return replSeq.incrementAndGet(); }
+    long getAppliedSeq(String src, long stream) { long[] p = appliedSeqs.get(src); return (p == null || p[0] != stream) ? -1 : p[1]; } // -1: unknown stream
+    void setAppliedSeq(String src, long stream, long seq) { appliedSeqs.put(src, new long[] { stream, seq }); lastAppliedSource = src; }
+    // Where our state stands in the stream it last followed; null if none, or if we diverged from it
+    ReadToken streamPosition() { String s = lastAppliedSource; long[] a = s == null ? null : appliedSeqs.get(s); return a == null || a[1] < 0 ? null : new ReadToken(s, a[0], a[1]); }
+    boolean reached(ReadToken pos) { return pos.getSeq() >= 0 && getAppliedSeq(pos.getSourceId(), pos.getStreamId()) == pos.getSeq(); } // Exactly there, not past it
+    ReadToken getReadToken() { if (isPrimary()) return new ReadToken(nodeId, replStreamId, replSeq.get()); // Primary: everything numbered so far
+        String p = getPrimaryId(); long[] a = p == null ? null : appliedSeqs.get(p); return a == null ? null : new ReadToken(p, a[0], a[1]); } // Backup: what it applied from the primary
     // Simplified Lock
-    synchronized boolean acquireLock(String reqId) { return lockHolder.compareAndSet(null, reqId); }
-    synchronized boolean releaseLock(String holderId) { return lockHolder.compareAndSet(holderId, null); }
+    synchronized boolean acquireLock(String reqId) { boolean ok = lockHolder.compareAndSet(null, reqId); metrics.count(ok ? NodeMetrics.Counter.LOCKS_GRANTED : NodeMetrics.Counter.LOCKS_REJECTED); return ok; }
+    synchronized boolean releaseLock(String holderId) { boolean ok = lockHolder.compareAndSet(holderId, null); if (!ok) metrics.count(NodeMetrics.Counter.LOCK_RELEASES_FAILED); return ok; }
 }
\ No newline at end of file
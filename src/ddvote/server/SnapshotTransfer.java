@@ -0,0 +1,49 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.io.*;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.zip.*;
+// Chunked, compressed state transfer for joining or lagging backups (DC Concept: State Transfer)
+// Runs on the peer's replication thread: the vote path only pays for the brief stripe-locked capture of voted/counts
+class SnapshotTransfer {
+    private static final Logger LOGGER = Logger.getLogger(SnapshotTransfer.class.getName());
+    static final int RECORDS_PER_CHUNK = 50_000; static final byte VOTER = 1, VOTED_VOTER = 2; // One record per ordinal, in ordinal order
+    // Record: [kind][voter id][password], and for VOTED_VOTER the choice byte: the candidate's index in the snapshot's candidate list + 1, 0 if unknown
+
+    // --- Sender (primary) ---
+    static long send(ServerNodeState state, String peerId, PeerLink link) throws RemoteException { long start = System.currentTimeMillis();
+        ServerNodeState.Capture cap = state.captureForSnapshot(); long snapshotId = ThreadLocalRandom.current().nextLong(); int[] index = { 0 }; long[] bytes = { 0 };
+        ChunkWriter w = new ChunkWriter(data -> { SnapshotChunk c = new SnapshotChunk(state.getId(), state.getReplStreamId(), snapshotId, index[0]++, data); bytes[0] += data.length; PeerLink.await(link.snapshot(c)); });
+        for (int o = 0; o < cap.voterCount; o++) { boolean voted = ConcurrentBitSet.get(cap.votedWords, o); w.record(voted ? VOTED_VOTER : VOTER, cap.voters.voterId(o), cap.voters.password(o), voted ? cap.voters.choice(o) : 0); }
+        SnapshotChunk last = new SnapshotChunk(state.getId(), state.getReplStreamId(), snapshotId, index[0]++, w.drain());
+        PeerLink.await(link.snapshot(last.last(cap.seq, cap.counts, cap.cands, state.getElecState(), state.getClockCopy())));
+        LOGGER.info("Snapshot to " + peerId + " at seq " + cap.seq + ": " + index[0] + " chunks, " + (bytes[0] + last.getData().length) + "B in " + (System.currentTimeMillis() - start) + "ms");
+        return cap.seq; }
+    @FunctionalInterface interface ChunkSink { void accept(byte[] data) throws RemoteException; }
+    private static final class ChunkWriter { private final ChunkSink sink; private ByteArrayOutputStream bytes; private DataOutputStream out; private int records;
+        ChunkWriter(ChunkSink sink) { this.sink = sink; reset(); }
+        private void reset() { bytes = new ByteArrayOutputStream(); try { out = new DataOutputStream(new GZIPOutputStream(bytes, 1 << 16)); } catch (IOException e) { throw new UncheckedIOException(e); } records = 0; }
+        void record(byte kind, String a, String b, int choice) throws RemoteException { try { out.writeByte(kind); out.writeUTF(a); out.writeUTF(b); if (kind == VOTED_VOTER) out.writeByte(choice); } catch (IOException e) { throw new UncheckedIOException(e); }
+            if (++records == RECORDS_PER_CHUNK) sink.accept(drain()); }
+        byte[] drain() { try { out.close(); } catch (IOException e) { throw new UncheckedIOException(e); } byte[] data = bytes.toByteArray(); reset(); return data; } }
+
+    // --- Receiver (backup): stages chunks off to the side, installs atomically on the last one ---
+    static final class Receiver { private long snapshotId; private int nextIndex = -1;
+        private VoterStore voters; // Staged off to the side until the last chunk
+        // Returns true once the snapshot is fully installed
+        synchronized boolean accept(ServerNodeState state, SnapshotChunk c) throws RemoteException {
+            if (c.getIndex() == 0) { snapshotId = c.getSnapshotId(); nextIndex = 0; voters = new VoterStore(); }
+            if (c.getSnapshotId() != snapshotId || c.getIndex() != nextIndex) { nextIndex = -1; throw new RemoteException("Out of order snapshot chunk " + c + ", restart transfer"); }
+            try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(c.getData()), 1 << 16))) {
+                while (true) { int kind = in.read(); if (kind < 0) break; String a = in.readUTF(), b = in.readUTF(); int o = voters.register(a, b);
+                    if (kind == VOTED_VOTER) { int choice = in.readUnsignedByte(); if (o >= 0) voters.markVoted(o, choice); } } } // Same candidate list, so the same choices
+            catch (IOException e) { nextIndex = -1; throw new RemoteException("Corrupt snapshot chunk " + c, e); }
+            nextIndex++; if (!c.isLast()) return false;
+            state.installSnapshot(voters, c.getCounts(), c.getCandidates(), c.getElectionState()); state.getClock().merge(c.getClock());
+            state.setAppliedSeq(c.getSourceId(), c.getStreamId(), c.getLastSeq());
+            LOGGER.info("Installed snapshot from " + c.getSourceId() + " at seq " + c.getLastSeq() + ": " + voters.size() + " voters, " + voters.votedCount() + " voted");
+            voters = null; nextIndex = -1; return true; } }
+}
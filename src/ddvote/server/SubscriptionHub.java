@@ -0,0 +1,36 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.rmi.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+// Coalescing, rate-limited fan-out of results/election-state changes to subscribed clients (Push Notifications)
+// Driven by a timer, never by the vote path; a subscriber with a push still in flight is skipped, and its next push
+// carries one delta covering everything it missed
+class SubscriptionHub {
+    private static final Logger LOGGER = Logger.getLogger(SubscriptionHub.class.getName());
+    static final int MAX_FAILURES = 3, PUSH_THREADS = 4;
+    private static final class Subscriber { final long id; final UpdateListener listener; volatile long version; volatile ElectionState state;
+        volatile boolean inFlight; int failures; // failures touched only by the push thread holding inFlight
+        Subscriber(long id, UpdateListener l, long version) { this.id = id; this.listener = l; this.version = version; } }
+    private final ServerNodeState nodeState; private final ConcurrentHashMap<Long, Subscriber> subs = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1); private final ThreadPoolExecutor pushers;
+
+    SubscriptionHub(ServerNodeState nodeState) { this.nodeState = nodeState;
+        pushers = new ThreadPoolExecutor(PUSH_THREADS, PUSH_THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), r -> { Thread t = new Thread(r, "push"); t.setDaemon(true); return t; });
+        pushers.allowCoreThreadTimeOut(true); }
+    long subscribe(UpdateListener l, long version) { long id = nextId.getAndIncrement(); subs.put(id, new Subscriber(id, l, version)); LOGGER.fine("Subscribed #" + id); return id; }
+    void unsubscribe(long id) { subs.remove(id); } int size() { return subs.size(); }
+
+    // One tick: every idle subscriber that is behind gets a single coalesced push
+    void tick() { if (subs.isEmpty()) return; long version = nodeState.results.version(); ElectionState es = nodeState.getElecState();
+        for (Subscriber s : subs.values()) { if (s.inFlight || (s.version == version && s.state == es)) continue; s.inFlight = true;
+            try { pushers.execute(() -> push(s, es)); } catch (RejectedExecutionException e) { s.inFlight = false; } } } // Saturated: retry next tick
+    private void push(Subscriber s, ElectionState es) { try { if (s.state != es) { s.listener.onElectionState(es); s.state = es; }
+            ResultsDelta d = nodeState.getResSince(s.version); if (!d.isUnchanged()) s.listener.onResults(d); s.version = d.getVersion(); s.failures = 0; }
+        catch (NoSuchObjectException | ConnectException e) { drop(s, e); }
+        catch (RemoteException | RuntimeException e) { if (++s.failures >= MAX_FAILURES) drop(s, e); }
+        finally { s.inFlight = false; } }
+    private void drop(Subscriber s, Exception e) { subs.remove(s.id); LOGGER.info("Dropped subscriber #" + s.id + ": " + e.getMessage()); }
+    void shutdown() { pushers.shutdownNow(); subs.clear(); }
+}
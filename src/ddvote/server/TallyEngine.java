@@ -0,0 +1,35 @@
+package ddvote.server;
+import ddvote.shared.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+// Per-candidate vote counters over dense ordinals (State Management)
+// One LongAdder per candidate: votes for a popular candidate spread over per-CPU cells instead of one map bin,
+// and once the cells exist an increment allocates nothing
+class TallyEngine {
+    private static final class Table { final Candidate[] cands; final LongAdder[] counts; final HashMap<String, Integer> ordinals; // Immutable once published
+        Table(Collection<Candidate> cs) { cands = cs.toArray(new Candidate[0]); counts = new LongAdder[cands.length]; ordinals = new HashMap<>(cands.length * 2);
+            for (int i = 0; i < cands.length; i++) { counts[i] = new LongAdder(); ordinals.put(cands[i].getId(), i); } } }
+    private volatile Table table;
+
+    TallyEngine(Collection<Candidate> candidates) { table = new Table(candidates); }
+    boolean isCandidate(String cId) { return table.ordinals.containsKey(cId); }
+    // Resolves and bumps against the same table, so a concurrent reset() can never misroute the vote
+    boolean increment(String cId) { Table t = table; Integer ord = t.ordinals.get(cId); if (ord == null) return false; t.counts[ord].increment(); return true; }
+    List<Candidate> candidates() { return List.of(table.cands); }
+    // Compact per-voter record of a vote (VoterStore choices): ordinal + 1, 0 for an unknown candidate
+    int choice(String cId) { Integer ord = table.ordinals.get(cId); return ord == null || ord >= 0xFF ? 0 : ord + 1; }
+    String candidateId(int choice) { Candidate[] cs = table.cands; return choice <= 0 || choice > cs.length ? null : cs[choice - 1].getId(); }
+
+    // Sorted (highest first) view; one sum per candidate plus an n log n sort of candidates, independent of vote volume
+    List<VoteResult> snapshot() { Table t = table; List<VoteResult> res = new ArrayList<>(t.cands.length);
+        for (int i = 0; i < t.cands.length; i++) res.add(new VoteResult(t.cands[i].getId(), t.cands[i].getName(), t.counts[i].sum()));
+        res.sort((r1, r2) -> Long.compare(r2.getVoteCount(), r1.getVoteCount())); return res; }
+    HashMap<String, Long> countsById() { Table t = table; HashMap<String, Long> m = new HashMap<>(t.cands.length * 2);
+        for (int i = 0; i < t.cands.length; i++) m.put(t.cands[i].getId(), t.counts[i].sum()); return m; }
+
+    // --- Bulk replacement (snapshot install / WAL replay); callers quiesce vote admission first ---
+    void reset(Collection<Candidate> candidates, Map<String, Long> counts) { Table t = new Table(candidates);
+        counts.forEach((cId, n) -> { Integer ord = t.ordinals.get(cId); if (ord != null) t.counts[ord].add(n); }); table = t; }
+    void setCount(String cId, long n) { Table t = table; Integer ord = t.ordinals.get(cId); if (ord != null) { t.counts[ord].reset(); t.counts[ord].add(n); } }
+    void zero() { for (LongAdder a : table.counts) a.reset(); }
+}
@@ -0,0 +1,86 @@
+package ddvote.server;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+// Dictionary-encoded voter registry: every voter gets a dense ordinal, credentials live in a paged byte arena
+// and "has voted" is one bit per ordinal (Data Structure). Single writer (synchronized), lock-free readers.
+// Per voter: 8B arena offset + 4B hash + ~8B index slot + UTF-8 id/password, versus ~200B+ in a pair of String-keyed maps.
+class VoterStore {
+    private static final int PAGE_SHIFT = 20, PAGE_SIZE = 1 << PAGE_SHIFT; // 1MB arena pages; a record never spans pages
+    private static final int MAX_FIELD = 0xFF; // Ids and passwords are length-prefixed with one byte
+    // Each array below is replaced wholesale when it grows; the volatile publish orders its contents before any index slot pointing at them
+    private volatile AtomicIntegerArray index = new AtomicIntegerArray(1024); // Open addressing, slot = ordinal + 1 (0 = empty)
+    private volatile long[] offsets = new long[512]; private volatile int[] hashes = new int[512];
+    private volatile byte[][] pages = new byte[][] { new byte[PAGE_SIZE] };
+    private volatile int size; private long arenaPos; // arenaPos guarded by this
+    private final ConcurrentBitSet votedBits = new ConcurrentBitSet(); private final LongAdder votedCount = new LongAdder();
+    // Anti-entropy digest: voters hash onto BUCKETS buckets, each holding the XOR of its voters' registration and vote hashes, so every change costs one XOR.
+    // Two stores agree on a bucket exactly when its voters, passwords and voted bits agree (bar 64-bit collisions); the Merkle levels above are folded on demand
+    static final int BUCKETS = 1024, FANOUT = 32, LEVELS = 3; // Root, 32 branches, 1024 leaves
+    private final AtomicLongArray digests = new AtomicLongArray(BUCKETS);
+    private final AtomicIntegerArray heads = new AtomicIntegerArray(BUCKETS); private volatile int[] next = new int[512]; // Each bucket's ordinals, newest first (ordinal + 1, 0 = end)
+    private static final int CHOICE_PAGE_BITS = 16; // Candidate per voter (TallyEngine ordinal + 1, 0 = unknown), in 64KB pages created on first touch
+    private final AtomicReferenceArray<byte[]> choices = new AtomicReferenceArray<>(1 << (31 - CHOICE_PAGE_BITS));
+
+    // --- Registration (single writer) ---
+    // Returns the new voter's ordinal, or -1 if the id is already registered or a field does not fit (see fits); it never throws, so replay skips such a record
+    synchronized int register(String id, String password) { int h = hash(id); if (find(index, id, h) >= 0) return -1;
+        byte[] ib = utf8(id), pb = utf8(password); if (ib == null || pb == null) return -1; int ord = size; ensureCapacity(ord + 1);
+        long pos = append(ib, pb); offsets[ord] = pos; hashes[ord] = h; int b = bucketOf(h); next[ord] = heads.get(b); heads.set(b, ord + 1);
+        flip(b, mix(fnv(ib, 0, ib.length) * 31 + fnv(pb, 0, pb.length))); size = ord + 1;
+        if ((long) size * 2 > index.length()) rehash(index.length() * 2, ord); insert(index, ord, h); return ord; } // The new ordinal goes in once, after any rehash
+    private long append(byte[] ib, byte[] pb) { int len = 2 + ib.length + pb.length; int page = (int) (arenaPos >>> PAGE_SHIFT), off = (int) (arenaPos & (PAGE_SIZE - 1));
+        if (off + len > PAGE_SIZE) { page++; off = 0; }
+        if (page == pages.length) { byte[][] grown = Arrays.copyOf(pages, page + 1); grown[page] = new byte[PAGE_SIZE]; pages = grown; }
+        byte[] p = pages[page]; p[off] = (byte) ib.length; System.arraycopy(ib, 0, p, off + 1, ib.length); p[off + 1 + ib.length] = (byte) pb.length;
+        System.arraycopy(pb, 0, p, off + 2 + ib.length, pb.length); long pos = ((long) page << PAGE_SHIFT) | off; arenaPos = pos + len; return pos; }
+    private void ensureCapacity(int n) { if (n <= offsets.length) return; int cap = Math.max(n, offsets.length * 2); hashes = Arrays.copyOf(hashes, cap); offsets = Arrays.copyOf(offsets, cap); next = Arrays.copyOf(next, cap); }
+    private void rehash(int slots, int n) { AtomicIntegerArray grown = new AtomicIntegerArray(slots); int[] hs = hashes; for (int ord = 0; ord < n; ord++) insert(grown, ord, hs[ord]); index = grown; }
+    private static void insert(AtomicIntegerArray idx, int ord, int h) { int mask = idx.length() - 1; for (int s = h & mask; ; s = (s + 1) & mask) if (idx.get(s) == 0) { idx.set(s, ord + 1); return; } }
+
+    // --- Lookups (lock-free) ---
+    int ordinal(String id) { return find(index, id, hash(id)); }
+    private int find(AtomicIntegerArray idx, String id, int h) { int mask = idx.length() - 1;
+        for (int s = h & mask; ; s = (s + 1) & mask) { int slot = idx.get(s); if (slot == 0) return -1; int ord = slot - 1; if (hashes[ord] == h && idEquals(ord, id)) return ord; } }
+    private boolean idEquals(int ord, String id) { long pos = offsets[ord]; byte[] p = pages[(int) (pos >>> PAGE_SHIFT)]; int off = (int) (pos & (PAGE_SIZE - 1)), len = p[off] & 0xFF;
+        if (len == id.length()) { for (int i = 0; i < len; i++) if (p[off + 1 + i] != id.charAt(i) || id.charAt(i) >= 0x80) return false; return true; } // ASCII fast path, no allocation
+        byte[] b = utf8(id); return b != null && b.length == len && Arrays.equals(p, off + 1, off + 1 + len, b, 0, len); }
+    String voterId(int ord) { return field(ord, false); } String password(int ord) { return field(ord, true); }
+    private String field(int ord, boolean second) { long pos = offsets[ord]; byte[] p = pages[(int) (pos >>> PAGE_SHIFT)]; int off = (int) (pos & (PAGE_SIZE - 1));
+        if (second) off += 1 + (p[off] & 0xFF); return new String(p, off + 1, p[off] & 0xFF, StandardCharsets.UTF_8); }
+    int size() { return size; }
+
+    // --- Voted bitset ---
+    // choice is the candidate's TallyEngine ordinal + 1, or 0 where it is not known (a WAL written before VOTED records named the candidate)
+    boolean markVoted(int ord, int choice) { if (!votedBits.testAndSet(ord)) return false; votedCount.increment(); if (choice != 0) choicePage(ord)[ord & ((1 << CHOICE_PAGE_BITS) - 1)] = (byte) choice;
+        flip(bucketOf(hashes[ord]), mix(idHash(ord) ^ VOTED)); return true; }
+    int choice(int ord) { byte[] p = choices.get(ord >>> CHOICE_PAGE_BITS); return p == null ? 0 : p[ord & ((1 << CHOICE_PAGE_BITS) - 1)] & 0xFF; }
+    private byte[] choicePage(int ord) { int p = ord >>> CHOICE_PAGE_BITS; byte[] page = choices.get(p); if (page != null) return page;
+        choices.compareAndSet(p, null, new byte[1 << CHOICE_PAGE_BITS]); return choices.get(p); }
+    boolean hasVoted(int ord) { return votedBits.get(ord); } long votedCount() { return votedCount.sum(); }
+    long[] votedWords(int n) { return votedBits.copyWords(n); }
+
+    // --- Anti-entropy digest ---
+    // Hashes of the Merkle nodes asked for at a level (0 = root, LEVELS - 1 = buckets); every node of the level when nodes is null
+    long[] digest(int level, int[] nodes) { if (level < 0 || level >= LEVELS) throw new IllegalArgumentException("No digest level " + level);
+        int n = nodes == null ? nodesAt(level) : nodes.length; long[] d = new long[n]; for (int i = 0; i < n; i++) d[i] = node(level, nodes == null ? i : nodes[i]); return d; }
+    static int nodesAt(int level) { int n = 1; for (int l = 0; l < level; l++) n *= FANOUT; return n; }
+    private long node(int level, int i) { if (level == LEVELS - 1) return digests.get(i); long acc = level;
+        for (int c = i * FANOUT; c < (i + 1) * FANOUT; c++) acc = mix(acc * 31 + node(level + 1, c)); return acc; }
+    synchronized int[] bucket(int b) { int n = 0; int[] nx = next; for (int o = heads.get(b); o != 0; o = nx[o - 1]) n++; // Ordinals in the bucket; rare (repairs only)
+        int[] ords = new int[n]; n = 0; for (int o = heads.get(b); o != 0; o = nx[o - 1]) ords[n++] = o - 1; return ords; }
+    private static int bucketOf(int h) { return h >>> (32 - Integer.numberOfTrailingZeros(BUCKETS)); } // Top bits: the index probes from the low ones
+    private void flip(int b, long h) { digests.getAndAccumulate(b, h, (a, x) -> a ^ x); }
+    private long idHash(int ord) { long pos = offsets[ord]; byte[] p = pages[(int) (pos >>> PAGE_SHIFT)]; int off = (int) (pos & (PAGE_SIZE - 1)); return fnv(p, off + 1, p[off] & 0xFF); }
+    private static final long VOTED = 0x5851F42D4C957F2DL; // Salts a voter's vote hash apart from its registration hash
+    private static long fnv(byte[] b, int off, int len) { long h = 0xCBF29CE484222325L; for (int i = off; i < off + len; i++) h = (h ^ (b[i] & 0xFF)) * 0x100000001B3L; return h; }
+    static long mix(long h) { h ^= h >>> 33; h *= 0xFF51AFD7ED558CCDL; h ^= h >>> 33; h *= 0xC4CEB9FE1A85EC53L; return h ^ (h >>> 33); }
+
+    private static int hash(String id) { int h = id.hashCode() * 0x9E3779B9; return h ^ (h >>> 16); }
+    // Whether register can store these credentials; callers check it first to refuse a registration properly instead of reporting a duplicate
+    static boolean fits(String id, String password) { return id != null && password != null && utf8(id) != null && utf8(password) != null; }
+    private static byte[] utf8(String s) { byte[] b = s.getBytes(StandardCharsets.UTF_8); return b.length > MAX_FIELD ? null : b; } // null: no one-byte length for it
+}
@@ -1,8 +1,13 @@
 package ddvote.server;
 
 import ddvote.naming.NamingService;
+import ddvote.naming.RegistryDelta;
+import ddvote.server.NodeMetrics.Call;
+import ddvote.server.NodeMetrics.Counter;
 import ddvote.shared.*;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry; // **** IMPORT ADDED ****
@@ -10,9 +15,14 @@ import java.rmi.registry.Registry;       // **** IMPORT ADDED ****
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 // Core Server Node Logic (Service Implementation)
 public class VotingServerNode extends UnicastRemoteObject implements NodeService {
@@ -21,36 +31,87 @@ public class VotingServerNode extends UnicastRemoteObject implements NodeService
     // Store naming host/port separately for direct lookup
     private final String namingHost;
     private final int namingPort = RemoteObjectUtils.RMI_REGISTRY_PORT; // Use constant
-    private NamingService namingStub; // Still store the stub once found
+    private volatile NamingService namingStub; // Still store the stub once found; replaced when the naming server restarts
     private final ServerNodeState state;
     private final ConcurrentHashMap<String, NodeService> peers = new ConcurrentHashMap<>();
-    private final ExecutorService executor;
-    private final ScheduledExecutorService scheduler;
-    private static final long HB_INTERVAL = 4000;
-    private static final long PEER_TIMEOUT = 12000;
+    private final ConcurrentHashMap<String, PeerLink> links = new ConcurrentHashMap<>(); // Internal calls to each peer (NIO, or RMI as fallback)
+    private volatile NioTransport transport; // Null when internal calls use RMI
+    private static final String TRANSPORT = System.getProperty("ddvote.transport", "nio"); // nio | rmi
+    private final ConcurrentHashMap<String, PeerReplicator> replicators = new ConcurrentHashMap<>(); // One ordered outbound stream per peer
+    private final Object replApplyLock = new Object(); // Serializes inbound batches and snapshot installs on a backup
+    private boolean diverged; // Set by a bucket repair this backup could not apply in place (guarded by replApplyLock)
+    private final SnapshotTransfer.Receiver snapshotReceiver = new SnapshotTransfer.Receiver();
+    private final ThreadPoolExecutor executor; // Typed for its gauges in getNodeStats()
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final NodeMetrics metrics; private volatile ObjectName mbeanName; // Null until the JMX bean is registered
+    private static final long HB_INTERVAL = ServerNodeState.HB_INTERVAL;
+    private static final long DISCOVERY_INTERVAL = 4000; // Local reconcile of peers against the naming view (no naming RPC)
+    private static final long NAMING_LEASE = Long.getLong("ddvote.naming.leaseMs", 10000); // Renewed every third of this
+    private static final long RMI_RESPONSE_TIMEOUT = Long.getLong("sun.rmi.transport.tcp.responseTimeout", 0); // 0: RMI waits forever
+    private static final long NAMING_WATCH_TIMEOUT = RMI_RESPONSE_TIMEOUT > 0 ? Math.min(20000, RMI_RESPONSE_TIMEOUT / 2) : 20000; // An idle watch must return before RMI gives up on it
+    private final ConcurrentHashMap<String, String> namingView = new ConcurrentHashMap<>(); // Service name -> RMI name, kept current by the watch
+    private volatile long namingIncarnation = 0, namingVersion = 0; private Thread namingWatcher; // Position of namingView in the naming server's history
+    private final AtomicBoolean discovering = new AtomicBoolean(); // A periodic reconcile is queued or running
+    private static final double PHI_THRESHOLD = Double.parseDouble(System.getProperty("ddvote.fd.phiThreshold", "8")); // Suspect a peer once phi exceeds this
     private static final long ELECTION_TIMEOUT = 6000;
+    private static final long ELECTION_RPC_TIMEOUT = Long.getLong("ddvote.election.rpcTimeoutMs", 300); // Per-peer deadline on election and takeover requests
+    private static final long LEASE_RENEW = ServerNodeState.LEASE_RENEW; private final AtomicBoolean takeoverRunning = new AtomicBoolean();
+    private static final long AE_INTERVAL = Long.getLong("ddvote.ae.intervalMs", 5000); // Primary compares digests with each backup this often
+    private static final int AE_MAX_REPAIR = Integer.getInteger("ddvote.ae.maxRepairBuckets", 64); // More diverged buckets than this and a snapshot is cheaper
+    private static final int COUNTS_DIVERGED = -1; // Stands in for a bucket when the voters agree but the tallies do not
+    private final AtomicBoolean aeRunning = new AtomicBoolean(); private final ConcurrentHashMap<String, Map<Integer, Long>> aeSuspects = new ConcurrentHashMap<>(); // Per backup, buckets diverged last round, with our digests
+    private static final long PUSH_INTERVAL = Long.getLong("ddvote.push.intervalMs", 500); // Max push rate per subscriber
+    private static final long READ_MAX_STALENESS = Long.getLong("ddvote.read.maxStalenessMs", 10000); // A backup out of contact with the primary this long refuses reads
+    private static final long READ_WAIT = Long.getLong("ddvote.read.waitMs", 200); // How long a backup waits to catch up to a read's token before refusing
+    private final Object appliedSignal = new Object(); // Notified whenever a backup applies replicated state
+    private static final WriteConsistency DEFAULT_CONSISTENCY = WriteConsistency.valueOf(System.getProperty("ddvote.write.consistency", "ASYNC").toUpperCase());
+    private static final long WRITE_TIMEOUT = Long.getLong("ddvote.write.timeoutMs", 2000); // Deadline for backup acks under QUORUM/ALL
+    private static final long WRITE_STATS_INTERVAL = Long.getLong("ddvote.write.statsIntervalMs", 60000);
+    private final EnumMap<WriteConsistency, LatencyHistogram> writeLatency = new EnumMap<>(WriteConsistency.class); private final long[] lastLoggedWrites = new long[WriteConsistency.values().length];
+    private volatile VectorClock lastCoordinatorTs; // Timestamp of the coordinator announcement we last accepted
+    private final SubscriptionHub subscriptions;
+    // Sharding: voters are hashed onto shards; peers are the nodes of our shard, other shards are only routed to and polled for their tallies
+    private final int shard; private final ShardMap shardMap = new ShardMap(ShardMap.SHARDS);
+    private final ConcurrentHashMap<String, ShardMember> shardMembers = new ConcurrentHashMap<>(); // Nodes of other shards by id
+    private final ConcurrentHashMap<Integer, String> shardLeaders = new ConcurrentHashMap<>(); // Other shard -> its primary, as last polled
+    private static final long SHARD_POLL_INTERVAL = Long.getLong("ddvote.shard.pollMs", 500); // How stale other shards' share of the results may be
+    private static final class ShardMember { final String id; final int shard; final NodeService stub; ShardMember(String id, int shard, NodeService stub) { this.id = id; this.shard = shard; this.stub = stub; } }
     private volatile boolean running = true;
+    private volatile long pausedUntil = 0; // Set by pause(): a simulated stop-the-world, nothing here runs until then
 
-    protected VotingServerNode(String id, String namingHost) throws RemoteException {
+    protected VotingServerNode(String id, String namingHost) throws RemoteException { this(id, namingHost, Integer.getInteger("ddvote.shard", 0)); }
+    protected VotingServerNode(String id, String namingHost, int shard) throws RemoteException {
         super();
+        if (shard < 0 || shard >= ShardMap.SHARDS) throw new IllegalArgumentException("Shard " + shard + " outside 0.." + (ShardMap.SHARDS - 1) + " (-Dddvote.shards)");
         this.nodeId = id;
+        this.shard = shard;
         this.namingHost = namingHost; // Store host for direct lookup
         // namingUrl field removed as we construct it dynamically or use host/port
-        this.state = new ServerNodeState(nodeId);
-        this.executor = Executors.newCachedThreadPool();
-        this.scheduler = Executors.newScheduledThreadPool(2);
+        this.state = new ServerNodeState(nodeId, shard);
+        this.metrics = state.metrics;
+        this.executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        this.scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(2);
+        this.subscriptions = new SubscriptionHub(state);
+        for (WriteConsistency wc : WriteConsistency.values()) writeLatency.put(wc, new LatencyHistogram());
     }
 
     // --- Startup & Discovery ---
     public void start() {
-        LOGGER.info("Starting Node: " + nodeId);
+        LOGGER.info("Starting Node: " + nodeId + (ShardMap.SHARDS > 1 ? " (shard " + shard + " of " + ShardMap.SHARDS + ")" : ""));
         // **** Diagnostic Test Removed from here - connectNaming will try direct lookup ****
         try {
             connectNaming(); // Try the modified connection method
+            startTransport(); // Before registering, so peers that discover us can learn our endpoint
             registerNaming();
             startDiscoveryBeats();
             startFailureDetect();
+            startLeases();
+            startAntiEntropy();
             scheduler.schedule(this::checkElection, 8, TimeUnit.SECONDS);
+            scheduler.scheduleWithFixedDelay(subscriptions::tick, PUSH_INTERVAL, PUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(this::logWriteLatency, WRITE_STATS_INTERVAL, WRITE_STATS_INTERVAL, TimeUnit.MILLISECONDS);
+            if (ShardMap.SHARDS > 1) scheduler.scheduleWithFixedDelay(this::pollShards, SHARD_POLL_INTERVAL, SHARD_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            registerMBean();
             LOGGER.info("Node " + nodeId + " started successfully.");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Node start failed", e);
@@ -58,6 +119,9 @@ public class VotingServerNode extends UnicastRemoteObject implements NodeService
         }
     }
 
+    private void startTransport() { if (!"nio".equalsIgnoreCase(TRANSPORT)) { LOGGER.info("Internal calls over RMI"); return; }
+        try { transport = new NioTransport(nodeId, this); } catch (IOException e) { LOGGER.log(Level.WARNING, "NIO transport unavailable, internal calls fall back to RMI", e); } }
+
     // **** MODIFIED connectNaming Method ****
     private void connectNaming() throws RemoteException, NotBoundException {
         LOGGER.info("Attempting to connect to Naming Service on " + namingHost + ":" + namingPort + "...");
@@ -68,8 +132,7 @@ public class VotingServerNode extends UnicastRemoteObject implements NodeService
 
             // 2. Attempt the lookup using the registry reference
             LOGGER.info("Looking up '" + NamingService.LOOKUP_NAME + "' in registry...");
-            // The lookupObject helper still contains the diagnostic list() call
-            this.namingStub = RemoteObjectUtils.lookupObject(NamingService.LOOKUP_NAME);
+            this.namingStub = RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(namingHost, NamingService.LOOKUP_NAME));
 
             // If lookupObject didn't throw NotBoundException, we succeeded
             LOGGER.info("Successfully looked up and connected to Naming Service.");
@@ -99,8 +162,10 @@ public class VotingServerNode extends UnicastRemoteObject implements NodeService
             if (namingStub == null) {
                 throw new RemoteException("Naming service stub is null, cannot register.");
             }
-            namingStub.register(url, url); // Register RMI name with Naming Service
+            namingStub.register(url, url, NAMING_LEASE); // Register RMI name with Naming Service; dropped if we stop renewing
             LOGGER.info("Registered service: " + url);
+            scheduler.scheduleWithFixedDelay(this::renewNamingLease, NAMING_LEASE / 3, NAMING_LEASE / 3, TimeUnit.MILLISECONDS);
+            namingWatcher = new Thread(this::watchNaming, "naming-watch-" + nodeId); namingWatcher.setDaemon(true); namingWatcher.start();
         } catch (RemoteException e) {
             LOGGER.log(Level.SEVERE, "Failed to register with Naming Service", e);
             throw new RuntimeException(e); // Propagate as runtime to halt startup
@@ -116,114 +181,413 @@ public class VotingServerNode extends UnicastRemoteObject implements NodeService
     // ... Main ...
 
     // --- Make sure the rest of the file content from the previous version is included below ---
-    private void startDiscoveryBeats() { scheduler.scheduleAtFixedRate(() -> { if(running) { try { discover(); sendBeats(); } catch (Exception e) { LOGGER.log(Level.WARNING, "Error in discovery/heartbeat", e);}} }, 0, HB_INTERVAL, TimeUnit.MILLISECONDS); }
+    // A restarted naming server is a new remote object: fetch its stub again (the lease renewal then re-registers us, the watch resyncs on its incarnation)
+    private void relookupNaming(NamingService dead) { RemoteObjectUtils.invalidate(dead);
+        try { namingStub = RemoteObjectUtils.lookupObject(RemoteObjectUtils.rmiUrl(namingHost, NamingService.LOOKUP_NAME)); } catch (RemoteException | NotBoundException e) { LOGGER.fine(() -> "Naming service not back yet: " + e.getMessage()); } }
+    // Reconciles run on the executor: a peer that hangs in a lookup must not hold up the scheduler that also renews leases and sends heartbeats
+    private void startDiscoveryBeats() { scheduler.scheduleAtFixedRate(() -> { if (running && discovering.compareAndSet(false, true)) {
+        try { executor.execute(() -> { try { stall(); discover(); } catch (Exception e) { LOGGER.log(Level.WARNING, "Error in discovery", e); } finally { discovering.set(false); } }); }
+        catch (RejectedExecutionException e) { discovering.set(false); } } }, 0, DISCOVERY_INTERVAL, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(() -> { if(running) { stall(); try { sendBeats(); } catch (Exception e) { LOGGER.log(Level.WARNING, "Error in heartbeat", e);}} }, HB_INTERVAL, HB_INTERVAL, TimeUnit.MILLISECONDS); }
+    private void renewNamingLease() { String name = NodeService.SERVICE_NAME_PREFIX + nodeId; NamingService ns = namingStub; if (!running || ns == null) return;
+        try { if (!ns.renew(name, NAMING_LEASE)) { LOGGER.warning("Naming lease lost, registering again"); ns.register(name, name, NAMING_LEASE); } }
+        catch (RemoteException e) { LOGGER.warning("Naming lease renewal failed: " + e.getMessage()); } }
+    // Long-polls the naming service for changes only; each change triggers a reconcile. Cost follows churn, not cluster size
+    private void watchNaming() { long backoff = 500; while (running) { NamingService ns = namingStub;
+        try { if (ns == null) throw new RemoteException("No naming stub"); RegistryDelta d = ns.watch(namingIncarnation, namingVersion, NAMING_WATCH_TIMEOUT); backoff = 500;
+            if (namingIncarnation != 0 && d.getIncarnation() != namingIncarnation) LOGGER.warning("Naming service restarted, resyncing view"); // The delta is then full
+            namingIncarnation = d.getIncarnation(); if (d.isUnchanged()) continue;
+            if (d.isFull()) namingView.clear(); namingView.putAll(d.getUpserts()); d.getRemovals().forEach(namingView::remove); namingVersion = d.getVersion(); LOGGER.fine("Naming " + d); discover(); }
+        catch (RemoteException e) { if (!running) return; LOGGER.warning("Naming watch failed: " + e.getMessage()); if (RemoteObjectUtils.isConnectFailure(e)) relookupNaming(ns);
+            try { Thread.sleep(backoff); } catch (InterruptedException ie) { return; } backoff = Math.min(backoff * 2, DISCOVERY_INTERVAL); } } }
+    // Reconciles peers with the local naming view: looks up missing peers (also ones the failure detector dropped) and drops unregistered ones.
+    // The lookups and probes are blocking RMI calls, so they run unlocked; only applying their results is serialized
     private void discover() {
-        if (namingStub == null) { LOGGER.warning("Cannot discover peers, no naming stub."); return; } // Check if naming stub exists
         LOGGER.fine("Discovering peers...");
+        List<Probe> found = new ArrayList<>();
+        for (Map.Entry<String, String> entry : new HashMap<>(namingView).entrySet()) {
+            String serviceName = entry.getKey();
+            if (!serviceName.startsWith(NodeService.SERVICE_NAME_PREFIX)) continue;
+            String peerId = serviceName.substring(NodeService.SERVICE_NAME_PREFIX.length());
+            if (peerId.equals(this.nodeId) || peers.containsKey(peerId) || shardMembers.containsKey(peerId)) continue;
+            Probe p = probe(peerId, entry.getValue()); // The name used for binding/lookup
+            if (p != null) found.add(p);
+        }
+        applyDiscovery(found);
+    }
+    // A registered peer, looked up and alive; link is set for peers of our shard
+    private static final class Probe { final String id; final NodeService stub; final PrimaryHint hint; final PeerLink link;
+        Probe(String id, NodeService stub, PrimaryHint hint, PeerLink link) { this.id = id; this.stub = stub; this.hint = hint; this.link = link; } }
+    private Probe probe(String peerId, String rmiName) {
         try {
-            Map<String, String> allServices = namingStub.listServices();
-            Set<String> currentPeerIds = new HashSet<>(peers.keySet());
-
-            for (Map.Entry<String, String> entry : allServices.entrySet()) {
-                String serviceName = entry.getKey();
-                String rmiName = entry.getValue(); // The name used for binding/lookup
-
-                if (serviceName.startsWith(NodeService.SERVICE_NAME_PREFIX)) {
-                    String peerId = serviceName.substring(NodeService.SERVICE_NAME_PREFIX.length());
-                    if (!peerId.equals(this.nodeId) && !peers.containsKey(peerId)) {
-                        // Found a new peer
-                        try {
-                            LOGGER.fine("Attempting lookup for new peer: " + rmiName);
-                            NodeService peerStub = RemoteObjectUtils.lookupObject(rmiName); // Use helper for lookup
-                            peers.put(peerId, peerStub);
-                            state.updatePeerBeat(peerId); // Initialize heartbeat time
-                            LOGGER.info("Discovered and connected to peer: " + peerId);
-                        } catch (RemoteException | NotBoundException e) {
-                            LOGGER.log(Level.WARNING, "Failed to lookup/connect to new peer " + peerId + " at " + rmiName, e);
-                        }
-                    }
-                    // Remove from set to track which peers are still active
-                    currentPeerIds.remove(peerId);
-                }
+            LOGGER.fine("Attempting lookup for new peer: " + rmiName);
+            NodeService peerStub = RemoteObjectUtils.lookupObject(rmiName); // Use helper for lookup (cached)
+            PrimaryHint hint; // Also the liveness probe: a registered but dead node is not added back
+            try {
+                hint = peerStub.getPrimaryHint();
+            } catch (RemoteException e) {
+                if (!RemoteObjectUtils.isConnectFailure(e)) throw e;
+                // Cached stub may predate a restart of the peer: look it up once more
+                RemoteObjectUtils.invalidate(peerStub);
+                peerStub = RemoteObjectUtils.lookupObject(rmiName);
+                hint = peerStub.getPrimaryHint();
+            }
+            if (hint.getShards() != ShardMap.SHARDS) {
+                LOGGER.severe("Ignoring peer " + peerId + ": it runs " + hint.getShards() + " shards, we run " + ShardMap.SHARDS);
+                return null;
+            }
+            return new Probe(peerId, peerStub, hint, hint.getShard() == shard ? linkTo(peerId, peerStub) : null);
+        } catch (RemoteException | NotBoundException e) {
+            LOGGER.log(Level.WARNING, "Failed to lookup/connect to new peer " + peerId + " at " + rmiName, e);
+            return null;
+        }
+    }
+    // Against the naming view as it is now, which may have moved on while we probed (or another reconcile got there first)
+    private synchronized void applyDiscovery(List<Probe> found) {
+        Set<String> registered = new HashSet<>();
+        namingView.keySet().forEach(name -> { if (name.startsWith(NodeService.SERVICE_NAME_PREFIX)) registered.add(name.substring(NodeService.SERVICE_NAME_PREFIX.length())); });
+        for (Probe p : found) {
+            if (!registered.contains(p.id) || peers.containsKey(p.id) || shardMembers.containsKey(p.id)) { if (p.link != null) p.link.close(); continue; }
+            if (p.link == null) {
+                shardMembers.put(p.id, new ShardMember(p.id, p.hint.getShard(), p.stub));
+                LOGGER.info("Discovered node " + p.id + " of shard " + p.hint.getShard());
+            } else {
+                addPeer(p.id, p.stub, p.hint, p.link);
+                LOGGER.info("Discovered and connected to peer: " + p.id);
             }
-
-            // Remove peers that are no longer registered in the naming service
-            currentPeerIds.forEach(oldPeerId -> {
-                if (!oldPeerId.equals(this.nodeId)) {
-                    LOGGER.warning("Peer " + oldPeerId + " no longer found in Naming Service. Removing.");
-                    peers.remove(oldPeerId);
-                    state.removePeer(oldPeerId);
-                }
-            });
-
-        } catch (RemoteException e) {
-            LOGGER.log(Level.SEVERE, "Failed to list services from Naming Service during discovery", e);
-            // Maybe try reconnecting to naming service? Or just wait for next cycle.
-            namingStub = null; // Invalidate stub on error?
         }
+
+        // Remove peers that are no longer registered in the naming service
+        Set<String> currentPeerIds = new HashSet<>(peers.keySet()); currentPeerIds.addAll(shardMembers.keySet()); currentPeerIds.removeAll(registered);
+        currentPeerIds.forEach(oldPeerId -> {
+            if (shardMembers.remove(oldPeerId) != null) {
+                LOGGER.info("Node " + oldPeerId + " of another shard no longer registered. Removing.");
+            } else if (!oldPeerId.equals(this.nodeId)) {
+                LOGGER.warning("Peer " + oldPeerId + " no longer found in Naming Service. Removing.");
+                removePeer(oldPeerId);
+            }
+        });
     }
-    private void sendBeats() { if (!running) return; state.getClock().tick(nodeId); VectorClock clock = state.getClockCopy(); peers.forEach((id, stub) -> executor.submit(() -> { try { stub.receiveHeartbeat(nodeId, clock); } catch (RemoteException e) { LOGGER.warning("Heartbeat to " + id + " failed: " + e.getMessage()); /* Failure detector handles removal */ }})); }
-    private void startFailureDetect() { scheduler.scheduleAtFixedRate(() -> { if(running) { long now = System.currentTimeMillis(); state.getPeerBeats().forEach((id, time) -> {
-        if ((now - time) > PEER_TIMEOUT) { LOGGER.warning("Peer timeout: " + id); peers.remove(id); state.removePeer(id); if (id.equals(state.getPrimaryId())) {
-            LOGGER.warning("Primary node " + id + " failed. Initiating election."); state.setPrimaryId(null); initiateElection(); } } }); } }, PEER_TIMEOUT / 2, PEER_TIMEOUT / 2, TimeUnit.MILLISECONDS); }
+    // Only peers we have not reached within half a beat get an explicit heartbeat: replication traffic already proves liveness
+    private void sendBeats() { if (!running) return; long now = System.currentTimeMillis(); VectorClock clock = null; for (Map.Entry<String, PeerLink> e : links.entrySet()) { String id = e.getKey();
+        if (now - state.getLastSentTo(id) < HB_INTERVAL / 2) continue; if (clock == null) { state.getClock().tick(nodeId); clock = state.getClockCopy(); }
+        warnOnFailure(e.getValue().heartbeat(nodeId, clock).thenRun(() -> state.notePeerSent(id)), "Heartbeat to " + id); } } // Failure detector handles removal
+    private static void warnOnFailure(CompletableFuture<?> call, String what) { call.whenComplete((r, e) -> { if (e != null) LOGGER.warning(what + " failed: " + e.getMessage()); }); }
+    private void startFailureDetect() { scheduler.scheduleAtFixedRate(() -> { if(running) { stall(); state.getPeerSuspicion().forEach((id, phi) -> {
+        if (phi > PHI_THRESHOLD) { metrics.count(Counter.PEERS_SUSPECTED); LOGGER.warning("Peer suspected: " + id + " (phi " + String.format("%.1f", phi) + ", silent " + (System.currentTimeMillis() - state.getPeerBeat(id)) + "ms)"); removePeer(id); if (id.equals(state.getPrimaryId())) {
+            LOGGER.warning("Primary node " + id + " failed. Initiating election."); state.setPrimaryId(null); initiateElection(); } } }); } }, HB_INTERVAL, HB_INTERVAL / 2, TimeUnit.MILLISECONDS); }
+    void addPeer(String id, NodeService stub, PrimaryHint hint) throws RemoteException { addPeer(id, stub, hint, linkTo(id, stub)); }
+    private void addPeer(String id, NodeService stub, PrimaryHint hint, PeerLink link) { state.observeEpoch(hint.getEpoch()); // Our next epoch, if we lead, outnumbers theirs
+        peers.put(id, stub); state.updatePeerBeat(id); // Initialize heartbeat time
+        PeerLink oldLink = links.put(id, link); if (oldLink != null) oldLink.close();
+        PeerReplicator old = replicators.put(id, new PeerReplicator(state, id, link)); if (old != null) old.close(); } // Starts with a snapshot once we are primary
+    ServerNodeState state() { return state; } // addPeer, state(), crash() and pause() are package-private for in-JVM harnesses (benchmarks, ClusterSimulator)
+    // Freezes the node as a long GC pause would: its timers, inbound peer calls and client writes block until ms have passed, then carry on with stale beliefs
+    void pause(long ms) { LOGGER.warning("Pausing " + nodeId + " for " + ms + "ms"); pausedUntil = System.currentTimeMillis() + ms; }
+    private void stall() { long left; while ((left = pausedUntil - System.currentTimeMillis()) > 0) { try { Thread.sleep(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return; } } }
+    private void removePeer(String id) { peers.remove(id); state.removePeer(id); PeerReplicator r = replicators.remove(id); if (r != null) r.close(); PeerLink l = links.remove(id); if (l != null) l.close(); }
+    private PeerLink linkTo(String id, NodeService stub) throws RemoteException { String ep = stub.getInternalEndpoint(); NioTransport t = transport;
+        return t != null && ep != null ? t.link(id, ep) : new RmiPeerLink(stub, executor); }
     private void checkElection() { if (running && state.getPrimaryId() == null && !state.isElecRunning()) { initiateElection(); } }
 
     // --- Client Methods ---
-    @Override public boolean registerVoter(Credentials c) throws RemoteException { if (!state.isPrimary()) return forward(p -> p.registerVoter(c));
-        LOGGER.info("Primary register: " + c.getVoterId()); boolean ok; synchronized(state) { state.getClock().tick(nodeId); ok = state.addVoter(c.getVoterId(), c.getPassword()); }
-        if (ok) replicate(new ReplicationUpdate(ReplicationUpdate.UpdateType.REGISTER_VOTER, c, state.getClockCopy())); return ok; }
-    @Override public String loginVoter(Credentials c) { LOGGER.fine("Login: " + c.getVoterId()); String pw = state.getPw(c.getVoterId()); return (pw != null && pw.equals(c.getPassword())) ? c.getVoterId() : null; }
-    @Override public void logoutVoter(String id) { LOGGER.fine("Logout: " + id); } @Override public List<Candidate> getCandidates() { return state.getCands(); }
-    @Override public List<VoteResult> getResults() { return state.getRes(); } @Override public ElectionState getElectionState() { return state.getElecState(); }
-    @Override public VoteResultStatus submitVote(String vId, String cId) throws RemoteException { if (!state.isPrimary()) return forward(p -> p.submitVote(vId, cId));
-        LOGGER.info("Primary vote: " + vId + "->" + cId); if (!requestDistributedLock(nodeId, state.getClockCopy())) return VoteResultStatus.REJECTED_LOCK_BUSY;
-        VoteResultStatus status = VoteResultStatus.REJECTED_ERROR; try { synchronized(state) { if (state.getElecState() != ElectionState.RUNNING) status = VoteResultStatus.REJECTED_NOT_RUNNING;
-        else if (!state.candidates.containsKey(cId)) status = VoteResultStatus.REJECTED_INVALID_CANDIDATE; else if (state.hasVoted(vId)) status = VoteResultStatus.REJECTED_ALREADY_VOTED;
-        else { state.getClock().tick(nodeId); if (state.addVote(vId, cId)) { status = VoteResultStatus.ACCEPTED; replicate(new ReplicationUpdate(ReplicationUpdate.UpdateType.RECORD_VOTE,
-                new ReplicationUpdate.VoteData(vId, cId), state.getClockCopy())); } } } } finally { releaseDistributedLock(nodeId, state.getClockCopy()); } return status; }
+    // Each NodeService method is timed once, under its own name; an overload that only delegates is timed by the one it calls
+    @Override public boolean registerVoter(Credentials c) throws RemoteException { return timed(Call.REGISTER_VOTER, () -> { stall(); if (!owns(c.getVoterId())) return routeToShard(c.getVoterId(), p -> p.registerVoter(c));
+        if (!state.isPrimary()) return forward(p -> p.registerVoter(c)); return registerOnPrimary(c).getResult(); }); }
+    // Once added here the voter is registered: a retry would only see a duplicate, so missing backup acks are reported in the receipt, never thrown.
+    // The voter is added and numbered under the replication monitor (see replicate), so a vote admitted as soon as it is visible is numbered after it.
+    // Credentials the voter store cannot hold (missing, or over 255 UTF-8 bytes) are refused like a duplicate: false, never an exception
+    private WriteReceipt<Boolean> registerOnPrimary(Credentials c) throws RemoteException { if (!VoterStore.fits(c.getVoterId(), c.getPassword())) { metrics.count(Counter.VOTERS_INVALID); return receipt(false); }
+        requireLease(); long start = System.nanoTime(); long seq;
+        synchronized (replicators) { if (!state.addVoter(c.getVoterId(), c.getPassword())) { metrics.count(Counter.VOTERS_DUPLICATE); return receipt(false); }
+            state.getClock().tick(nodeId); seq = sequence(() -> new ReplicationUpdate(ReplicationUpdate.UpdateType.REGISTER_VOTER, c, state.getClockCopy())); } throttle(); metrics.count(Counter.VOTERS_REGISTERED); state.syncLog();
+        return receipt(true, awaitBackups(seq, DEFAULT_CONSISTENCY, start)); }
+    @Override public String loginVoter(Credentials c) throws RemoteException { return timed(Call.LOGIN_VOTER, () -> owns(c.getVoterId()) ? login(c) : routeToShard(c.getVoterId(), p -> p.loginVoter(c))); }
+    private String login(Credentials c) { LOGGER.fine(() -> "Login: " + c.getVoterId()); String pw = state.getPw(c.getVoterId()); return (pw != null && pw.equals(c.getPassword())) ? c.getVoterId() : null; }
+    @Override public void logoutVoter(String id) { LOGGER.fine(() -> "Logout: " + id); } @Override public List<Candidate> getCandidates() { return timed(Call.GET_CANDIDATES, state::getCands); }
+    @Override public List<VoteResult> getResults() { return timed(Call.GET_RESULTS, state::getRes); } @Override public List<VoteResult> getShardResults() { return timed(Call.GET_SHARD_RESULTS, state::getShardRes); }
+    @Override public ResultsDelta getResultsSince(long version) { return timed(Call.GET_RESULTS_SINCE, () -> state.getResSince(version)); }
+    @Override public ElectionState getElectionState() { return timed(Call.GET_ELECTION_STATE, state::getElecState); }
+    @Override public long subscribe(UpdateListener l, long resultsVersion) { return timed(Call.SUBSCRIBE, () -> subscriptions.subscribe(l, resultsVersion)); } @Override public void unsubscribe(long id) { subscriptions.unsubscribe(id); }
+    // Token-checked reads: the primary always serves, a backup only within its staleness bound and once it has applied the caller's writes
+    @Override public String loginVoter(Credentials c, ReadToken after) throws RemoteException { return timed(Call.LOGIN_VOTER, () -> { if (!owns(c.getVoterId())) return routeToShard(c.getVoterId(), p -> p.loginVoter(c, after));
+        awaitReadable(after); return login(c); }); }
+    @Override public List<Candidate> getCandidates(ReadToken after) throws RemoteException { return timed(Call.GET_CANDIDATES, () -> { awaitReadable(after); return state.getCands(); }); }
+    @Override public ResultsDelta getResultsSince(long version, ReadToken after) throws RemoteException { return timed(Call.GET_RESULTS_SINCE, () -> { stall(); awaitReadable(after); return state.getResSince(version); }); }
+    @Override public ElectionState getElectionState(ReadToken after) throws RemoteException { return timed(Call.GET_ELECTION_STATE, () -> { awaitReadable(after); return state.getElecState(); }); }
+    @Override public ReadToken getReadToken() throws RemoteException { return timed(Call.GET_READ_TOKEN, () -> state.isPrimary() ? state.getReadToken() : forward(NodeService::getReadToken)); }
+    // Receipt writes: a backup forwards only until the client has learned the leader from the receipt's hint
+    @Override public PrimaryHint getPrimaryHint() { return timed(Call.GET_PRIMARY_HINT, () -> { stall(); return state.getPrimaryHint(); }); }
+    @Override public WriteReceipt<Boolean> registerVoterWithReceipt(Credentials c) throws RemoteException { return timed(Call.REGISTER_VOTER_RECEIPT, () -> { stall();
+        if (!owns(c.getVoterId())) return routeToShard(c.getVoterId(), p -> p.registerVoterWithReceipt(c)); if (!state.isPrimary()) return forward(p -> p.registerVoterWithReceipt(c)); return registerOnPrimary(c); }); }
+    @Override public WriteReceipt<VoteResultStatus> submitVoteWithReceipt(String vId, String cId, WriteConsistency wc) throws RemoteException { return timed(Call.SUBMIT_VOTE_RECEIPT, () -> { stall();
+        if (!owns(vId)) return routeToShard(vId, p -> p.submitVoteWithReceipt(vId, cId, wc)); if (!state.isPrimary()) return forward(p -> p.submitVoteWithReceipt(vId, cId, wc));
+        VoteResultStatus status = voteOnPrimary(vId, cId, wc); return receipt(status, status != VoteResultStatus.ACCEPTED_NOT_REPLICATED); }); }
+    @Override public WriteReceipt<Integer> registerVoterSegment(VoterSegment seg) throws RemoteException { return timed(Call.REGISTER_VOTER_SEGMENT, () -> { stall();
+        if (seg.getShards() != ShardMap.SHARDS) throw new RemoteException("Segment built for " + seg.getShards() + " shards, the cluster runs " + ShardMap.SHARDS);
+        if (seg.getShard() != shard) return routeToShard(seg.getShard(), p -> p.registerVoterSegment(seg)); if (!state.isPrimary()) return forward(p -> p.registerVoterSegment(seg));
+        return receipt(registerSegmentOnPrimary(seg)); }); }
+    // Segments from concurrent importer streams decode side by side on their RMI threads; only the VoterStore inserts take turns.
+    // The segment is replicated as received, still deflated. When none of its voters are new (a resend), we wait for the backups to reach our
+    // current position instead, which covers whatever earlier attempt did register them. As for a single registration, the voters are added and
+    // numbered under the replication monitor, so no vote for one of them is numbered first and that position already includes the earlier attempt
+    private int registerSegmentOnPrimary(VoterSegment seg) throws RemoteException { requireLease(); long start = System.nanoTime(); List<Credentials> voters;
+        try { voters = seg.voters(); } catch (IllegalArgumentException e) { throw new RemoteException(e.getMessage()); }
+        for (Credentials c : voters) if (!owns(c.getVoterId())) throw new RemoteException("Voter " + c.getVoterId() + " does not belong to shard " + shard);
+        int added; long seq; synchronized (replicators) { added = state.addVoters(voters);
+            if (added > 0) { state.getClock().tick(nodeId); seq = sequence(() -> new ReplicationUpdate(ReplicationUpdate.UpdateType.REGISTER_VOTERS, seg, state.getClockCopy())); } else seq = state.replSeq.get(); } throttle();
+        metrics.count(Counter.VOTERS_REGISTERED, added); metrics.count(Counter.VOTERS_DUPLICATE, voters.size() - added);
+        state.syncLog(); if (!awaitBackups(seq, DEFAULT_CONSISTENCY, start)) throw new RemoteException(seg + " registered on the primary but not confirmed by backups within " + WRITE_TIMEOUT + "ms"); return added; }
+    private <T extends java.io.Serializable> WriteReceipt<T> receipt(T result) { return receipt(result, true); }
+    private <T extends java.io.Serializable> WriteReceipt<T> receipt(T result, boolean replicated) { return new WriteReceipt<>(result, state.getReadToken(), state.getPrimaryHint(), replicated); }
+    private void awaitReadable(ReadToken after) throws StaleReadException { try { checkReadable(after); } catch (StaleReadException e) { metrics.count(Counter.STALE_READS); throw e; } }
+    // A token from another shard's primary says nothing about this shard's state, so it is ignored here
+    private void checkReadable(ReadToken after) throws StaleReadException { if (state.isPrimary()) return; if (after != null && shardMembers.containsKey(after.getSourceId())) after = null; String pid = state.getPrimaryId(); if (pid == null) throw new StaleReadException("No primary known at " + nodeId);
+        Long beat = state.getPeerBeat(pid); if (beat == null || System.currentTimeMillis() - beat > READ_MAX_STALENESS) throw new StaleReadException(nodeId + " out of contact with primary " + pid);
+        if (after == null) return; long deadline = System.currentTimeMillis() + READ_WAIT;
+        synchronized (appliedSignal) { while (true) { ReadToken mine = state.getReadToken(); if (mine != null && mine.covers(after)) return;
+            long left = deadline - System.currentTimeMillis(); if (left <= 0 || !after.getSourceId().equals(pid)) throw new StaleReadException(nodeId + " has not applied " + after + " yet");
+            try { appliedSignal.wait(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); throw new StaleReadException("Interrupted"); } } } }
+    // Votes are admitted per voter (striped in ServerNodeState), so ballots from different voters never wait on each other
+    @Override public VoteResultStatus submitVote(String vId, String cId) throws RemoteException { return submitVote(vId, cId, null); }
+    @Override public VoteResultStatus submitVote(String vId, String cId, WriteConsistency wc) throws RemoteException { return timed(Call.SUBMIT_VOTE, () -> { stall(); if (!owns(vId)) return routeToShard(vId, p -> p.submitVote(vId, cId, wc));
+        if (!state.isPrimary()) return forward(p -> p.submitVote(vId, cId, wc)); return voteOnPrimary(vId, cId, wc); }); }
+    private VoteResultStatus voteOnPrimary(String vId, String cId, WriteConsistency wc) throws RemoteException { requireLease(); long start = System.nanoTime(); VoteResultStatus status = admitVote(vId, cId); if (status != VoteResultStatus.ACCEPTED) return metrics.vote(status);
+        state.getClock().tick(nodeId); long seq = replicate(new ReplicationUpdate(ReplicationUpdate.UpdateType.RECORD_VOTE, new ReplicationUpdate.VoteData(vId, cId), state.getClockCopy())); state.syncLog();
+        return metrics.vote(awaitBackups(seq, wc, start) ? status : VoteResultStatus.ACCEPTED_NOT_REPLICATED); }
+    // Group commit: one clock tick, one replicated update and one ack wait for the whole batch
+    @Override public List<VoteResultStatus> submitVotes(List<VoteRequest> votes) throws RemoteException { return submitVotes(votes, null); }
+    @Override public List<VoteResultStatus> submitVotes(List<VoteRequest> votes, WriteConsistency wc) throws RemoteException { return timed(Call.SUBMIT_VOTES, () -> { stall();
+        return shardMap.shards() > 1 && !votes.stream().allMatch(v -> owns(v.getVoterId())) ? submitAcrossShards(votes, wc) : submitOwnShard(votes, wc); }); }
+    private List<VoteResultStatus> submitOwnShard(List<VoteRequest> votes, WriteConsistency wc) throws RemoteException { if (!state.isPrimary()) return forward(p -> p.submitVotes(votes, wc));
+        List<VoteResultStatus> statuses = new ArrayList<>(votes.size()); if (votes.isEmpty()) return statuses; requireLease(); LOGGER.fine(() -> "Primary vote batch: " + votes.size()); long start = System.nanoTime();
+        ArrayList<ReplicationUpdate.VoteData> accepted = new ArrayList<>(votes.size());
+        for (VoteRequest v : votes) { VoteResultStatus status = admitVote(v.getVoterId(), v.getCandidateId()); statuses.add(status);
+            if (status == VoteResultStatus.ACCEPTED) accepted.add(new ReplicationUpdate.VoteData(v.getVoterId(), v.getCandidateId())); }
+        if (!accepted.isEmpty()) { state.getClock().tick(nodeId); long seq = replicate(new ReplicationUpdate(ReplicationUpdate.UpdateType.RECORD_VOTES, accepted, state.getClockCopy())); state.syncLog();
+            if (!awaitBackups(seq, wc, start)) statuses.replaceAll(s -> s == VoteResultStatus.ACCEPTED ? VoteResultStatus.ACCEPTED_NOT_REPLICATED : s); } statuses.forEach(metrics::vote); return statuses; }
+    // Blocks the calling RMI thread until enough backups have acked seq (durable there) or the deadline passes; records the write's latency under its mode.
+    // The standby is always among them while it renews our lease, so the backup that takes over first already holds every durable write
+    private boolean awaitBackups(long seq, WriteConsistency wc, long startNanos) { WriteConsistency mode = wc == null ? DEFAULT_CONSISTENCY : wc; int needed = mode.backupsNeeded(replicators.size()); boolean ok = true;
+        if (needed > 0) { long deadline = System.nanoTime() + WRITE_TIMEOUT * 1_000_000; try { PeerReplicator.awaitAcks(replicators.values(), seq, needed).get(WRITE_TIMEOUT, TimeUnit.MILLISECONDS); awaitStandby(seq, deadline); }
+            catch (TimeoutException | ExecutionException e) { ok = false; LOGGER.warning("Seq " + seq + " not acked by " + needed + " backup(s) (" + mode + "): " + (e instanceof TimeoutException ? "timed out" : e.getCause().getMessage())); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); ok = false; } }
+        writeLatency.get(mode).record(System.nanoTime() - startNanos); return ok; }
+    private void logWriteLatency() { for (WriteConsistency wc : WriteConsistency.values()) { LatencyHistogram h = writeLatency.get(wc); long n = h.count();
+        if (n != lastLoggedWrites[wc.ordinal()]) { lastLoggedWrites[wc.ordinal()] = n; LOGGER.info("Write latency " + wc + ": " + h.summary()); } } }
+    private VoteResultStatus admitVote(String vId, String cId) { if (state.getElecState() != ElectionState.RUNNING) return VoteResultStatus.REJECTED_NOT_RUNNING;
+        if (vId == null || cId == null) return VoteResultStatus.REJECTED_ERROR; if (!state.isCandidate(cId)) return VoteResultStatus.REJECTED_INVALID_CANDIDATE;
+        if (!state.isRegistered(vId)) return VoteResultStatus.REJECTED_NOT_LOGGED_IN;
+        return state.addVote(vId, cId) ? VoteResultStatus.ACCEPTED : VoteResultStatus.REJECTED_ALREADY_VOTED; }
 
     // --- Internal Methods ---
-    @Override public void receiveHeartbeat(String senderId, VectorClock clock) { state.updatePeerBeat(senderId); state.getClock().receiveAction(nodeId, clock); }
-    @Override public void handleElectionMessage(ElectionMessage msg) throws RemoteException { state.getClock().receiveAction(nodeId, msg.getTimestamp()); LOGGER.info("Rcvd ElecMsg: " + msg);
+    @Override public String getInternalEndpoint() { NioTransport t = transport; return t == null ? null : t.endpoint(); }
+    @Override public Map<String, Double> getPeerSuspicion() { return state.getPeerSuspicion(); }
+    @Override public void receiveHeartbeat(String senderId, VectorClock clock) { timedRun(Call.RECEIVE_HEARTBEAT, () -> { stall(); state.updatePeerBeat(senderId); state.getClock().receiveAction(nodeId, clock); }); }
+    @Override public void handleElectionMessage(ElectionMessage msg) throws RemoteException { timedRun(Call.HANDLE_ELECTION, () -> { stall(); state.updatePeerBeat(msg.getSenderId()); state.getClock().receiveAction(nodeId, msg.getTimestamp());
+        if (msg.getType() == ElectionMessageType.LEASE) { acceptLease(msg); return; } state.observeEpoch(msg.getEpoch()); LOGGER.info("Rcvd ElecMsg: " + msg);
         if (msg.getType() == ElectionMessageType.ELECTION_REQUEST) { sendAnswer(msg.getSenderId()); if (nodeId.compareTo(msg.getSenderId()) > 0) initiateElection(); }
-        else if (msg.getType() == ElectionMessageType.ANSWER) { LOGGER.fine("Rcvd Answer from " + msg.getSenderId()); state.setElecRunning(true, false); /* Stop waiting */ } }
-    @Override public void handleCoordinatorMessage(ElectionMessage msg) throws RemoteException { state.getClock().receiveAction(nodeId, msg.getTimestamp()); LOGGER.info("Rcvd CoordMsg: " + msg);
-        if (msg.getType() == ElectionMessageType.COORDINATOR) { String newPrimary = msg.getSenderId(); LOGGER.warning("New Primary: " + newPrimary); state.setPrimaryId(newPrimary);
-            state.setElecRunning(false, false); if (state.isPrimary()) LOGGER.warning("!!! I AM NEW PRIMARY !!!"); } }
-    @Override public void applyReplicationUpdate(ReplicationUpdate update) { if (state.isPrimary()) return; LOGGER.info("Applying update: " + update.getType());
-        state.getClock().receiveAction(nodeId, update.getTimestamp()); synchronized(state) { try { if (update.getType() == ReplicationUpdate.UpdateType.REGISTER_VOTER) {
-            Credentials c = (Credentials)update.getData(); state.addVoter(c.getVoterId(), c.getPassword()); } else if (update.getType() == ReplicationUpdate.UpdateType.RECORD_VOTE) {
-            ReplicationUpdate.VoteData d = (ReplicationUpdate.VoteData)update.getData(); state.addVote(d.voterId, d.candidateId); } } catch (Exception e) { LOGGER.severe("Apply update failed"); } } }
-    @Override public boolean requestDistributedLock(String reqId, VectorClock clock) throws RemoteException { if (!state.isPrimary()) throw new RemoteException("Not primary");
-        state.getClock().receiveAction(nodeId, clock); boolean acquired = state.acquireLock(reqId); LOGGER.info("Lock request from "+reqId+": "+(acquired?"GRANTED":"BUSY")); return acquired; }
-    @Override public void releaseDistributedLock(String reqId, VectorClock clock) throws RemoteException { if (!state.isPrimary()) throw new RemoteException("Not primary");
-        state.getClock().receiveAction(nodeId, clock); if (state.releaseLock(reqId)) LOGGER.info("Lock released by "+reqId); else LOGGER.warning("Failed release by "+reqId); }
+        else if (msg.getType() == ElectionMessageType.ANSWER) { LOGGER.fine(() -> "Rcvd Answer from " + msg.getSenderId()); state.setElecRunning(true, false); /* Stop waiting */ }
+        else if (msg.getType() == ElectionMessageType.TAKEOVER) grantTakeover(msg); }); }
+    @Override public void handleCoordinatorMessage(ElectionMessage msg) throws RemoteException { timedRun(Call.HANDLE_COORDINATOR, () -> { stall(); state.updatePeerBeat(msg.getSenderId()); state.getClock().receiveAction(nodeId, msg.getTimestamp()); LOGGER.info("Rcvd CoordMsg: " + msg);
+        if (msg.getType() == ElectionMessageType.COORDINATOR) { String newPrimary = msg.getSenderId(); VectorClock last = lastCoordinatorTs;
+            if (last != null && msg.getTimestamp() != null && msg.getTimestamp().happenedBefore(last)) { metrics.count(Counter.COORDINATORS_STALE); LOGGER.warning("Ignoring stale coordinator " + newPrimary + " @ " + msg.getTimestamp()); return; } // Delivered late, already superseded
+            lastCoordinatorTs = msg.getTimestamp(); state.observeEpoch(msg.getEpoch()); metrics.count(Counter.COORDINATORS_ACCEPTED); LOGGER.warning("New Primary: " + newPrimary + " (epoch " + msg.getEpoch() + ")"); state.setPrimaryId(newPrimary, msg.getEpoch());
+            state.setElecRunning(false, false); if (state.isPrimary()) LOGGER.warning("!!! I AM NEW PRIMARY !!!"); } }); }
+    @Override public void applyReplicationUpdate(ReplicationUpdate update) { timedRun(Call.APPLY_UPDATE, () -> { if (state.isPrimary()) return; state.getClock().receiveAction(nodeId, update.getTimestamp()); applyUpdate(update); }); }
+    // Applies the not-yet-seen suffix of an ordered batch and returns the highest sequence applied from that stream
+    @Override public long applyReplicationBatch(ReplicationBatch batch) throws RemoteException { return timed(Call.APPLY_BATCH, () -> { stall(); requireFromPrimary(batch.getSourceId());
+        List<ReplicationUpdate> updates = batch.getUpdates(); if (updates.isEmpty() && batch.getBase() == null) return state.getAppliedSeq(batch.getSourceId(), batch.getStreamId());
+        synchronized (replApplyLock) { requireFromPrimary(batch.getSourceId()); long applied = state.getAppliedSeq(batch.getSourceId(), batch.getStreamId()); // Again: we may have been promoted meanwhile
+            if (batch.getBase() != null && applied < batch.getFirstSeq() - 1 && state.reached(batch.getBase())) { applied = batch.getFirstSeq() - 1; // Handoff: same state as the new primary here
+                state.setAppliedSeq(batch.getSourceId(), batch.getStreamId(), applied); metrics.count(Counter.REPL_HANDOFFS); LOGGER.info("Continuing from " + batch.getBase() + " on " + batch.getSourceId() + "'s stream at " + applied); }
+            if (updates.isEmpty()) return applied;
+            if (batch.getFirstSeq() > applied + 1) { metrics.count(Counter.REPL_GAPS); LOGGER.warning("Replication gap from " + batch.getSourceId() + ": applied " + applied + ", received " + batch.getFirstSeq() + "; awaiting snapshot"); return applied; }
+            long seq = batch.getFirstSeq(); for (ReplicationUpdate u : updates) { if (seq++ > applied) applyUpdate(u); }
+            if (diverged) { diverged = false; LOGGER.warning("State diverged from " + batch.getSourceId() + " beyond repair; awaiting snapshot"); // An ack of -1 makes the primary resync us
+                state.setAppliedSeq(batch.getSourceId(), batch.getStreamId(), -1); return -1L; }
+            state.getClock().receiveAction(nodeId, updates.get(updates.size() - 1).getTimestamp()); // Stream clocks only grow, the last one covers the batch
+            applied = Math.max(applied, batch.getLastSeq()); state.setAppliedSeq(batch.getSourceId(), batch.getStreamId(), applied); metrics.count(Counter.REPL_BATCHES_APPLIED); LOGGER.fine(() -> "Applied " + batch); }
+        state.updatePeerBeat(batch.getSourceId()); state.notePeerSent(batch.getSourceId()); signalApplied(); state.syncLog(); return state.getAppliedSeq(batch.getSourceId(), batch.getStreamId()); }); } // Ack only what is on disk here
+    @Override public void installSnapshotChunk(SnapshotChunk chunk) throws RemoteException { timedRun(Call.INSTALL_SNAPSHOT_CHUNK, () -> { stall(); requireFromPrimary(chunk.getSourceId()); state.updatePeerBeat(chunk.getSourceId());
+        synchronized (replApplyLock) { requireFromPrimary(chunk.getSourceId()); if (!snapshotReceiver.accept(state, chunk)) return; } metrics.count(Counter.SNAPSHOTS_INSTALLED); signalApplied(); state.syncLog(); }); }
+    @Override public long[] getStateDigest(int level, int[] nodes) throws RemoteException { return timed(Call.GET_STATE_DIGEST, () -> { stall();
+        try { return state.digest(level, nodes); } catch (RuntimeException e) { throw new RemoteException("Bad digest request: " + e.getMessage()); } }); }
+    private void signalApplied() { synchronized (appliedSignal) { appliedSignal.notifyAll(); } }
+    private void applyUpdate(ReplicationUpdate update) { metrics.count(Counter.REPL_UPDATES_APPLIED); try { if (update.getType() == ReplicationUpdate.UpdateType.REGISTER_VOTER) {
+            Credentials c = update.getCredentials(); state.addVoter(c.getVoterId(), c.getPassword()); } else if (update.getType() == ReplicationUpdate.UpdateType.RECORD_VOTE) {
+            ReplicationUpdate.VoteData d = update.getVote(); state.addVote(d.voterId, d.candidateId); } else if (update.getType() == ReplicationUpdate.UpdateType.RECORD_VOTES) {
+            for (ReplicationUpdate.VoteData d : update.getVotes()) state.addVote(d.voterId, d.candidateId); } else if (update.getType() == ReplicationUpdate.UpdateType.REGISTER_VOTERS) {
+            state.addVoters(update.getSegment().voters()); } else if (update.getType() == ReplicationUpdate.UpdateType.REPAIR_BUCKETS) {
+            metrics.count(Counter.AE_REPAIRS_APPLIED); if (!state.repair(update.getRepair())) diverged = true; } } catch (Exception e) { LOGGER.severe("Apply update failed"); } }
+    // Grants and refusals are counted in ServerNodeState (locks_granted / locks_rejected) rather than logged per request
+    @Override public boolean requestDistributedLock(String reqId, VectorClock clock) throws RemoteException { return timed(Call.REQUEST_LOCK, () -> { if (!state.isPrimary()) throw new RemoteException("Not primary");
+        state.getClock().receiveAction(nodeId, clock); return state.acquireLock(reqId); }); }
+    @Override public void releaseDistributedLock(String reqId, VectorClock clock) throws RemoteException { timedRun(Call.RELEASE_LOCK, () -> { if (!state.isPrimary()) throw new RemoteException("Not primary");
+        state.getClock().receiveAction(nodeId, clock); if (!state.releaseLock(reqId)) LOGGER.warning("Failed release by " + reqId); }); }
+
+    // --- Metrics ---
+    @FunctionalInterface interface Timed<T, E extends Exception> { T call() throws E; } @FunctionalInterface interface TimedRun<E extends Exception> { void run() throws E; }
+    private <T, E extends Exception> T timed(Call c, Timed<T, E> op) throws E { long t0 = System.nanoTime(); try { return op.call(); } finally { metrics.time(c, t0); } }
+    private <E extends Exception> void timedRun(Call c, TimedRun<E> op) throws E { long t0 = System.nanoTime(); try { op.run(); } finally { metrics.time(c, t0); } }
+    @Override public NodeStats getNodeStats() { boolean primary = state.isPrimary(); long seq = state.replSeq.get(), now = System.currentTimeMillis();
+        Map<String, Long> gauges = new TreeMap<>(); gauges.put("executor.active", (long) executor.getActiveCount()); gauges.put("executor.threads", (long) executor.getPoolSize()); gauges.put("scheduler.queue", (long) scheduler.getQueue().size());
+        NioTransport t = transport; if (t != null) { gauges.put("transport.queuedCalls", (long) t.queuedCalls()); gauges.put("transport.queuedFrames", (long) t.queuedFrames()); gauges.put("transport.pendingCalls", (long) t.pendingCalls()); }
+        gauges.put("subscribers", (long) subscriptions.size()); gauges.put("voters", (long) state.voters.size()); gauges.put("repl.seq", seq);
+        Map<String, NodeStats.Peer> ps = new TreeMap<>(); state.peerDetectors.forEach((id, d) -> { PeerReplicator r = replicators.get(id); long acked = r == null ? 0 : r.getAckedSeq();
+            ps.put(id, new NodeStats.Peer(acked, primary && r != null ? Math.max(0, seq - acked) : 0, r == null ? 0 : r.getBacklog(), d.phi(now), NodeMetrics.latency(d.gaps()))); });
+        Map<String, NodeStats.Latency> latencies = metrics.latencies(); writeLatency.forEach((wc, h) -> { if (h.count() > 0) latencies.put("write." + wc.name().toLowerCase(), NodeMetrics.latency(h)); });
+        return new NodeStats(nodeId, shard, state.getPrimaryId(), state.getEpoch(), primary, now - metrics.startedAt, metrics.counters(), gauges, latencies, ps); }
+    // JMX view: registered as ddvote:type=Node,name=<nodeId>; each attribute read takes a fresh snapshot
+    private final class StatsBean implements NodeStatsMXBean {
+        public String getNodeId() { return nodeId; } public int getShard() { return shard; } public String getPrimaryId() { return state.getPrimaryId(); } public long getEpoch() { return state.getEpoch(); }
+        public boolean isPrimary() { return state.isPrimary(); } public long getUptimeMs() { return System.currentTimeMillis() - metrics.startedAt; }
+        public Map<String, Long> getCounters() { return metrics.counters(); } public Map<String, Long> getGauges() { return getNodeStats().getGauges(); }
+        public Map<String, NodeStats.Latency> getLatencies() { return getNodeStats().getLatencies(); } public Map<String, NodeStats.Peer> getPeers() { return getNodeStats().getPeers(); } }
+    private void registerMBean() { try { ObjectName name = new ObjectName("ddvote:type=Node,name=" + nodeId); ManagementFactory.getPlatformMBeanServer().registerMBean(new StatsBean(), name); mbeanName = name; }
+        catch (JMException e) { LOGGER.log(Level.WARNING, "JMX registration failed, stats remain available through getNodeStats()", e); } }
+    private void unregisterMBean() { ObjectName name = mbeanName; if (name == null) return; mbeanName = null; try { ManagementFactory.getPlatformMBeanServer().unregisterMBean(name); } catch (JMException e) { /* Already gone */ } }
 
     // --- Election Logic (Bully) ---
-    private void initiateElection() { if (!state.setElecRunning(false, true)) return; LOGGER.info("Initiating election..."); state.getClock().tick(nodeId);
+    private void initiateElection() { if (!state.setElecRunning(false, true)) return; metrics.electionStarted(); LOGGER.info("Initiating election..."); state.getClock().tick(nodeId);
         List<String> higher = peers.keySet().stream().filter(id -> id.compareTo(nodeId) > 0).collect(Collectors.toList());
-        if (higher.isEmpty()) { declarePrimary(); } else { ElectionMessage msg = new ElectionMessage(ElectionMessageType.ELECTION_REQUEST, nodeId, state.getClockCopy());
-            higher.forEach(id -> { NodeService stub = peers.get(id); if (stub != null) executor.submit(() -> { try { stub.handleElectionMessage(msg); } catch (RemoteException e) { LOGGER.warning("Elec msg failed to "+id); }}); }); // Added logging
-            scheduler.schedule(() -> { if (state.isElecRunning()) { LOGGER.info("Election timeout, declaring self primary."); declarePrimary(); } }, ELECTION_TIMEOUT, TimeUnit.MILLISECONDS); } }
-    private void sendAnswer(String requesterId) { NodeService stub = peers.get(requesterId); if (stub == null) return; state.getClock().tick(nodeId);
-        ElectionMessage msg = new ElectionMessage(ElectionMessageType.ANSWER, nodeId, state.getClockCopy()); executor.submit(() -> { try { stub.handleElectionMessage(msg); } catch (RemoteException e) { LOGGER.warning("Answer msg failed to "+requesterId); }}); } // Added logging
-    private void declarePrimary() { LOGGER.warning("!!! Declaring PRIMARY: " + nodeId + " !!!"); state.setPrimaryId(nodeId); state.setElecRunning(false, false);
-        state.getClock().tick(nodeId); ElectionMessage msg = new ElectionMessage(ElectionMessageType.COORDINATOR, nodeId, state.getClockCopy());
-        peers.forEach((id, stub) -> executor.submit(() -> { try { stub.handleCoordinatorMessage(msg); } catch (RemoteException e) { LOGGER.warning("Coord msg failed to "+id); }})); } // Added logging
+        if (higher.isEmpty()) { declarePrimary(); } else { ElectionMessage msg = new ElectionMessage(ElectionMessageType.ELECTION_REQUEST, nodeId, state.getClockCopy(), state.getEpoch());
+            // Requests go out side by side, each with a short deadline: if no higher node takes one, none is alive to answer, so there is nothing to wait for
+            List<CompletableFuture<Boolean>> sent = new ArrayList<>(); for (String id : higher) { PeerLink link = links.get(id); if (link == null) continue;
+                CompletableFuture<Void> call = link.election(msg).orTimeout(ELECTION_RPC_TIMEOUT, TimeUnit.MILLISECONDS); warnOnFailure(call, "Elec msg to " + id); sent.add(call.handle((r, e) -> e == null)); }
+            CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).thenRun(() -> { if (sent.stream().noneMatch(CompletableFuture::join) && state.setElecRunning(true, false)) {
+                LOGGER.info("No higher node reachable, declaring self primary."); declarePrimary(); } });
+            scheduler.schedule(() -> { if (state.isElecRunning()) { metrics.count(Counter.ELECTION_TIMEOUTS); LOGGER.info("Election timeout, declaring self primary."); declarePrimary(); } }, ELECTION_TIMEOUT, TimeUnit.MILLISECONDS); } }
+    private void sendAnswer(String requesterId) { PeerLink link = links.get(requesterId); if (link == null) return; state.getClock().tick(nodeId);
+        ElectionMessage msg = new ElectionMessage(ElectionMessageType.ANSWER, nodeId, state.getClockCopy(), state.getEpoch()); warnOnFailure(link.election(msg), "Answer msg to " + requesterId); }
+    // Backups that applied exactly what we did from the old primary continue on our stream; only those behind or past us (or diverged) get a snapshot.
+    // Position and promotion are taken under replApplyLock, so no batch from the old stream lands in between
+    private void declarePrimary() { long epoch = state.nextEpoch(); metrics.count(Counter.ELECTIONS_WON); LOGGER.warning("!!! Declaring PRIMARY: " + nodeId + " (epoch " + epoch + ") !!!");
+        synchronized (replApplyLock) { if (!state.isPrimary()) { ReadToken base = state.streamPosition(); long seq = state.replSeq.get(); replicators.values().forEach(r -> r.handoff(base, seq)); }
+            state.setPrimaryId(nodeId, epoch); } state.setElecRunning(false, false); replicators.values().forEach(PeerReplicator::wake);
+        state.getClock().tick(nodeId); ElectionMessage msg = new ElectionMessage(ElectionMessageType.COORDINATOR, nodeId, state.getClockCopy(), epoch); lastCoordinatorTs = msg.getTimestamp();
+        links.forEach((id, link) -> warnOnFailure(link.coordinator(msg), "Coord msg to " + id)); renewLease(); }
+
+    // --- Leases & Standby Takeover ---
+    // The primary renews its lease with every backup each LEASE_RENEW; the standby (the backup Bully would elect anyway) watches for it running out
+    private void startLeases() { scheduler.scheduleAtFixedRate(() -> { if (running) { stall(); try { if (state.isPrimary()) renewLease(); else if (state.getPrimaryId() != null && state.primaryLeaseExpired() && isStandby()) takeover(); }
+        catch (Exception e) { LOGGER.log(Level.WARNING, "Error in lease check", e); } } }, LEASE_RENEW, LEASE_RENEW, TimeUnit.MILLISECONDS); }
+    // A renewal counts from when it was sent, never from the reply, so our lease always ends before the one the backup granted
+    private void renewLease() { state.getClock().tick(nodeId); ElectionMessage msg = new ElectionMessage(ElectionMessageType.LEASE, nodeId, state.getClockCopy(), state.getPrimaryEpoch());
+        links.forEach((id, link) -> { long sent = System.currentTimeMillis(); link.election(msg).whenComplete((r, e) -> { if (e == null) { state.noteLeaseAck(id, sent); state.notePeerSent(id); }
+            else LOGGER.fine(() -> "Lease renewal to " + id + " failed: " + e.getMessage()); }); }); }
+    private void requireLease() throws RemoteException { if (state.holdsLease(peers.keySet())) return; metrics.count(Counter.LEASE_WRITES_REFUSED);
+        throw new RemoteException("Primary " + nodeId + " holds no lease for epoch " + state.getPrimaryEpoch() + ", retry"); }
+    // Only while it keeps renewing our lease: once it stops, the standby is gone or about to take over, and stalling writes on it gains nothing
+    private void awaitStandby(long seq, long deadlineNanos) throws TimeoutException, InterruptedException { String id = replicators.keySet().stream().max(Comparator.naturalOrder()).orElse(null);
+        PeerReplicator r = id == null ? null : replicators.get(id); if (r == null) return; CompletableFuture<Void> acked = r.ackFuture(seq);
+        while (state.leaseFresh(id)) { long left = deadlineNanos - System.nanoTime(); if (left <= 0) throw new TimeoutException();
+            try { acked.get(Math.min(left, LEASE_RENEW * 1_000_000), TimeUnit.NANOSECONDS); return; } catch (TimeoutException e) { /* Check its lease again */ } catch (ExecutionException e) { return; } } } // Removed
+    private boolean isStandby() { String pid = state.getPrimaryId(); return peers.keySet().stream().noneMatch(id -> !id.equals(pid) && id.compareTo(nodeId) > 0); }
+    // A renewal from our primary extends its lease here; one with a newer epoch also announces a primary whose coordinator we missed, or deposes us
+    private void acceptLease(ElectionMessage msg) throws RemoteException { String from = msg.getSenderId(), pid = state.getPrimaryId(); long e = msg.getEpoch();
+        if (state.leaseRevoked(e)) { metrics.count(Counter.LEASE_RENEWALS_REFUSED); throw new RemoteException(nodeId + " granted a takeover after epoch " + e); } if (from.equals(pid)) return;
+        if (e > state.getPrimaryEpoch() || pid == null && e == state.getPrimaryEpoch()) { state.observeEpoch(e); LOGGER.warning("New Primary: " + from + " (epoch " + e + ", from its lease)");
+            state.setPrimaryId(from, e); state.setElecRunning(true, false); return; }
+        metrics.count(Counter.LEASE_RENEWALS_REFUSED); throw new RemoteException(nodeId + " follows " + pid + " (epoch " + state.getPrimaryEpoch() + "), not " + from + " (epoch " + e + ")"); }
+    // Once a majority of the shard has granted it, the standby takes over without an election round. Granting backups refuse the old primary's renewals
+    // from then on, and grant only once its lease has run out for them too, so the two never hold a lease at once. Two-node shards fall back to Bully
+    private void takeover() { String old = state.getPrimaryId(); List<String> voters = peers.keySet().stream().filter(id -> !id.equals(old)).collect(Collectors.toList());
+        int needed = (voters.size() + 2) / 2; if (voters.size() < needed || !takeoverRunning.compareAndSet(false, true)) return; // Majority of the shard with us, the old primary counted
+        long epoch = state.getEpoch() + 1; metrics.count(Counter.TAKEOVERS_STARTED); LOGGER.info("Lease of primary " + old + " expired, standby " + nodeId + " requesting takeover (epoch " + epoch + ")");
+        state.getClock().tick(nodeId); ElectionMessage msg = new ElectionMessage(ElectionMessageType.TAKEOVER, nodeId, state.getClockCopy(), epoch); AtomicInteger granted = new AtomicInteger(), answered = new AtomicInteger();
+        for (String id : voters) { PeerLink link = links.get(id); CompletableFuture<Void> call = link == null ? CompletableFuture.failedFuture(new RemoteException("No link to " + id)) : link.election(msg);
+            call.orTimeout(ELECTION_RPC_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((r, e) -> { if (e == null && granted.incrementAndGet() == needed) executor.execute(() -> completeTakeover(old));
+                if (answered.incrementAndGet() == voters.size() && granted.get() < needed) takeoverRunning.set(false); }); } } // Retried on the next lease check
+    private void completeTakeover(String old) { try { if (running && !state.isPrimary() && old.equals(state.getPrimaryId())) { metrics.count(Counter.TAKEOVERS_WON); declarePrimary(); } } // Unless someone else won
+        finally { takeoverRunning.set(false); } }
+    private void grantTakeover(ElectionMessage msg) throws RemoteException { String pid = state.getPrimaryId();
+        if (state.isPrimary() || !state.primaryLeaseExpired()) throw new RemoteException("Lease of " + pid + " still held at " + nodeId);
+        if (!state.grantTakeover(msg.getSenderId(), msg.getEpoch())) throw new RemoteException(nodeId + " granted epoch " + msg.getEpoch() + " to another standby");
+        metrics.count(Counter.TAKEOVERS_GRANTED); LOGGER.info("Granted takeover to " + msg.getSenderId() + " (epoch " + msg.getEpoch() + ")"); }
+    private void requireFromPrimary(String sourceId) throws RemoteException { if (state.isPrimary()) throw new RemoteException("Not a backup"); String pid = state.getPrimaryId(); // Fences a deposed primary's stream
+        if (pid != null && !pid.equals(sourceId)) throw new RemoteException(nodeId + " follows " + pid + ", not " + sourceId); }
+
+    // --- Anti-entropy ---
+    // Every AE_INTERVAL the primary compares Merkle digests with each backup: the root first, then only the branches that differ, so a check of an
+    // agreeing backup costs one round trip of two longs. The two sides' digests are taken at different moments, so a busy bucket can differ by the writes
+    // in flight alone. Each round therefore first waits for the backup to ack everything numbered so far, which covers every write applied here before
+    // the previous round. A bucket counts as diverged only if it differs two rounds running and our own digest of it did not change in between. It is
+    // repaired through the stream. Drift across more than AE_MAX_REPAIR buckets, or in the tallies alone, is resynced from a snapshot
+    private void startAntiEntropy() { scheduler.scheduleWithFixedDelay(() -> { if (running && state.isPrimary() && aeRunning.compareAndSet(false, true)) {
+        try { executor.execute(this::antiEntropyRound); } catch (RejectedExecutionException e) { aeRunning.set(false); } } }, AE_INTERVAL, AE_INTERVAL, TimeUnit.MILLISECONDS); }
+    private void antiEntropyRound() { try { stall(); metrics.count(Counter.AE_ROUNDS); aeSuspects.keySet().retainAll(replicators.keySet()); TreeSet<Integer> repair = new TreeSet<>(); long seq = state.replSeq.get();
+        for (Map.Entry<String, PeerReplicator> e : replicators.entrySet()) { String id = e.getKey(); PeerLink link = links.get(id); if (link == null) continue; Map<Integer, Long> found;
+            try { PeerLink.await(e.getValue().ackFuture(seq).orTimeout(AE_INTERVAL, TimeUnit.MILLISECONDS)); found = divergedBuckets(link); } // Lagging or resyncing: next round
+            catch (RemoteException ex) { LOGGER.fine(() -> "Anti-entropy with " + id + " skipped: " + ex.getMessage()); continue; }
+            Map<Integer, Long> last = aeSuspects.put(id, found); Set<Integer> confirmed = new TreeSet<>();
+            if (last != null) found.forEach((b, mine) -> { if (mine.equals(last.get(b))) confirmed.add(b); }); if (confirmed.isEmpty()) continue;
+            metrics.count(Counter.AE_BUCKETS_DIVERGED, confirmed.size());
+            if (confirmed.contains(COUNTS_DIVERGED) || confirmed.size() > AE_MAX_REPAIR) { LOGGER.warning("Backup " + id + (confirmed.contains(COUNTS_DIVERGED) ? " tallies diverged" : " diverged in " + confirmed.size() + " buckets") + ", resyncing");
+                metrics.count(Counter.AE_RESYNCS); aeSuspects.remove(id); e.getValue().requestResync(); }
+            else { LOGGER.warning("Backup " + id + " diverged in " + confirmed.size() + " bucket(s), repairing"); repair.addAll(confirmed); } }
+        if (!repair.isEmpty() && state.isPrimary()) { int[] bs = repair.stream().mapToInt(Integer::intValue).toArray(); state.getClock().tick(nodeId); metrics.count(Counter.AE_REPAIRS_SENT);
+            replicate(() -> new ReplicationUpdate(ReplicationUpdate.UpdateType.REPAIR_BUCKETS, state.captureBuckets(bs), state.getClockCopy())); } } // To every backup: it is idempotent
+        catch (Exception e) { LOGGER.log(Level.WARNING, "Error in anti-entropy round", e); } finally { aeRunning.set(false); } }
+    // Buckets whose digest differs on the backup, each with our digest of it, or COUNTS_DIVERGED alone when the voters agree but the tallies do not
+    // (votes move both, so that is real)
+    private Map<Integer, Long> divergedBuckets(PeerLink link) throws RemoteException { Map<Integer, Long> out = new TreeMap<>(); long[] mine = state.digest(0, null), theirs = fetchDigest(link, 0, null);
+        if (mine[0] == theirs[0]) { if (mine[1] != theirs[1]) out.put(COUNTS_DIVERGED, mine[1]); return out; } int[] nodes = null;
+        for (int level = 1; level < VoterStore.LEVELS; level++) { long[] m = state.digest(level, nodes), t = fetchDigest(link, level, nodes); List<Integer> next = new ArrayList<>();
+            for (int i = 0; i < m.length; i++) if (m[i] != t[i]) { int n = nodes == null ? i : nodes[i];
+                if (level == VoterStore.LEVELS - 1) out.put(n, m[i]); else for (int c = n * VoterStore.FANOUT; c < (n + 1) * VoterStore.FANOUT; c++) next.add(c); }
+            if (next.isEmpty()) break; nodes = next.stream().mapToInt(Integer::intValue).toArray(); } return out; }
+    private long[] fetchDigest(PeerLink link, int level, int[] nodes) throws RemoteException { long[] d = PeerLink.await(link.digest(level, nodes).orTimeout(AE_INTERVAL, TimeUnit.MILLISECONDS));
+        if (d == null || d.length != (nodes == null ? (level == 0 ? 2 : VoterStore.nodesAt(level)) : nodes.length)) throw new RemoteException("Malformed digest at level " + level); return d; }
 
     // --- Replication & Forwarding ---
-    private void replicate(ReplicationUpdate update) { LOGGER.fine("Replicating: " + update.getType()); peers.forEach((id, stub) -> executor.submit(() -> { try { stub.applyReplicationUpdate(update); } catch (RemoteException e) { LOGGER.warning("Replication failed to "+id); }})); } // Added logging
+    // Sequence assignment and enqueue are atomic so every peer stream sees updates in the same order. A full peer backlog stalls the producer only
+    // after it has left the monitor (see PeerReplicator.awaitCapacity), so a slow backup never holds up the numbering of other writes.
+    // Registrations also add their voters while holding this monitor: a vote for one of them can only be admitted once it is visible, and then
+    // takes its own number here after the registration's, so no backup ever receives a vote before the voter it is for
+    private long replicate(ReplicationUpdate update) { return replicate(() -> update); }
+    private long replicate(Supplier<ReplicationUpdate> build) { long seq; synchronized (replicators) { seq = sequence(build); } throttle(); return seq; }
+    // Caller holds the replicators monitor. The update is built once its sequence number is taken, so a state capture in it covers every update numbered before it (bucket repairs)
+    private long sequence(Supplier<ReplicationUpdate> build) { long seq = state.nextReplSeq(); ReplicationUpdate update = build.get(); LOGGER.fine(() -> "Replicating: " + update.getType());
+        replicators.values().forEach(r -> r.enqueue(seq, update)); return seq; }
+    private void throttle() { replicators.values().forEach(PeerReplicator::awaitCapacity); }
     private <T> T forward(RemoteOperation<T> op) throws RemoteException { String pid = state.getPrimaryId(); if (pid == null) throw new RemoteException("Primary unknown");
-        NodeService primary = peers.get(pid); if (primary == null) throw new RemoteException("Primary unreachable"); LOGGER.fine("Forwarding to primary: " + pid); return op.execute(primary); }
+        NodeService primary = peers.get(pid); if (primary == null) throw new RemoteException("Primary unreachable"); metrics.count(Counter.FORWARDED); LOGGER.fine(() -> "Forwarding to primary: " + pid); return op.execute(primary); }
     @FunctionalInterface interface RemoteOperation<T> { T execute(NodeService primary) throws RemoteException; }
 
+    // --- Shard Routing ---
+    private boolean owns(String voterId) { return shardMap.shardOf(voterId) == shard; }
+    private <T> T routeToShard(String voterId, RemoteOperation<T> op) throws RemoteException { return routeToShard(shardMap.shardOf(voterId), op); }
+    // Tries the shard's leader first, then its other nodes (which forward); only calls that were never delivered move on to the next node
+    private <T> T routeToShard(int s, RemoteOperation<T> op) throws RemoteException { List<ShardMember> members = membersOf(s); if (members.isEmpty()) throw new RemoteException("No node of shard " + s + " known at " + nodeId);
+        RemoteException last = null; for (ShardMember m : members) { try { metrics.count(Counter.ROUTED); LOGGER.fine(() -> "Routing to shard " + s + " via " + m.id); return op.execute(m.stub); }
+            catch (RemoteException e) { if (!RemoteObjectUtils.isConnectFailure(e)) throw e; last = e; shardMembers.remove(m.id, m); RemoteObjectUtils.invalidate(m.stub); } } throw last; }
+    private List<ShardMember> membersOf(int s) { String leader = shardLeaders.get(s); List<ShardMember> ms = new ArrayList<>();
+        for (ShardMember m : shardMembers.values()) if (m.shard == s) { if (m.id.equals(leader)) ms.add(0, m); else ms.add(m); } return ms; }
+    // A mixed batch is split by shard; the parts run concurrently and each shard group-commits its own part. A part that fails is reported as REJECTED_ERROR
+    private List<VoteResultStatus> submitAcrossShards(List<VoteRequest> votes, WriteConsistency wc) { Map<Integer, List<Integer>> byShard = new TreeMap<>();
+        for (int i = 0; i < votes.size(); i++) byShard.computeIfAbsent(shardMap.shardOf(votes.get(i).getVoterId()), k -> new ArrayList<>()).add(i);
+        Map<Integer, CompletableFuture<List<VoteResultStatus>>> parts = new HashMap<>(); byShard.forEach((s, idx) -> { List<VoteRequest> part = new ArrayList<>(idx.size()); idx.forEach(i -> part.add(votes.get(i)));
+            parts.put(s, CompletableFuture.supplyAsync(() -> { try { return s == shard ? submitOwnShard(part, wc) : routeToShard(s, p -> p.submitVotes(part, wc)); } catch (RemoteException e) { throw new CompletionException(e); } }, executor)); });
+        VoteResultStatus[] out = new VoteResultStatus[votes.size()]; for (Map.Entry<Integer, List<Integer>> e : byShard.entrySet()) { List<Integer> idx = e.getValue(); List<VoteResultStatus> st;
+            try { st = parts.get(e.getKey()).join(); } catch (CompletionException ce) { LOGGER.warning("Batch part for shard " + e.getKey() + " failed: " + ce.getCause().getMessage()); st = Collections.nCopies(idx.size(), VoteResultStatus.REJECTED_ERROR); }
+            for (int i = 0; i < idx.size(); i++) out[idx.get(i)] = st.get(i); } return new ArrayList<>(Arrays.asList(out)); }
+    // Refreshes every other shard's leader and tally from one of its nodes, so results here cover all shards
+    private void pollShards() { if (!running) return; Set<Integer> others = new TreeSet<>(); shardMembers.values().forEach(m -> others.add(m.shard));
+        for (int s : others) { for (ShardMember m : membersOf(s)) { try { PrimaryHint h = m.stub.getPrimaryHint(); List<VoteResult> res = m.stub.getShardResults(); if (h.isKnown()) shardLeaders.put(s, h.getPrimaryId()); state.setShardCounts(s, res); break; }
+            catch (RemoteException e) { LOGGER.fine("Shard " + s + " poll via " + m.id + " failed: " + e.getMessage()); if (RemoteObjectUtils.isConnectFailure(e)) { shardMembers.remove(m.id, m); RemoteObjectUtils.invalidate(m.stub); } } } } }
+
     // --- Shutdown ---
-    public void shutdown() { if (!running) return; running = false; LOGGER.warning("Shutting down " + nodeId); scheduler.shutdown(); executor.shutdown();
-        try { if (namingStub != null) namingStub.unregister(NodeService.SERVICE_NAME_PREFIX + nodeId); } catch (Exception e) {} RemoteObjectUtils.unbindObject(NodeService.SERVICE_NAME_PREFIX + nodeId);
-        RemoteObjectUtils.unexportObject(this); LOGGER.warning("Shutdown complete " + nodeId); }
+    public void shutdown() { stop(true); }
+    // Dies like a killed process: unreachable at once and never unregistered, so the naming lease and the peers' failure detectors have to notice (the registry keeps our dead stub)
+    void crash() { if (!running) return; RemoteObjectUtils.unexportObject(this); stop(false); }
+    private void stop(boolean graceful) { if (!running) return; running = false; pausedUntil = 0; LOGGER.warning((graceful ? "Shutting down " : "Crashing ") + nodeId); scheduler.shutdown(); executor.shutdown(); if (namingWatcher != null) namingWatcher.interrupt(); unregisterMBean(); replicators.values().forEach(PeerReplicator::close); links.values().forEach(PeerLink::close);
+        NioTransport t = transport; if (t != null) t.close(); subscriptions.shutdown(); state.close();
+        if (graceful) { try { if (namingStub != null) namingStub.unregister(NodeService.SERVICE_NAME_PREFIX + nodeId); } catch (Exception e) {} RemoteObjectUtils.unbindObject(NodeService.SERVICE_NAME_PREFIX + nodeId);
+            RemoteObjectUtils.unexportObject(this); } LOGGER.warning((graceful ? "Shutdown" : "Crash") + " complete " + nodeId); }
     // --- Main ---
-    public static void main(String[] args) { if (args.length < 2) { System.err.println("Usage: VotingServerNode <nodeId> <namingHost>"); System.exit(1); }
-        String id = args[0]; String host = args[1]; VotingServerNode node = null; try { node = new VotingServerNode(id, host);
+    public static void main(String[] args) { if (args.length < 2) { System.err.println("Usage: VotingServerNode <nodeId> <namingHost> [shard]  (with -Dddvote.shards=N on every node)"); System.exit(1); }
+        String id = args[0]; String host = args[1]; VotingServerNode node = null; try { node = args.length > 2 ? new VotingServerNode(id, host, Integer.parseInt(args[2])) : new VotingServerNode(id, host);
             final VotingServerNode finalNode = node; Runtime.getRuntime().addShutdownHook(new Thread(finalNode::shutdown)); node.start(); Thread.currentThread().join(); }
         catch (Exception e) { LOGGER.log(Level.SEVERE, "Node "+id+" failed", e); if(node!=null) node.shutdown(); System.exit(1); } }
 } // End of class VotingServerNode
\ No newline at end of file
@@ -0,0 +1,112 @@
+package ddvote.server;
+import ddvote.shared.Candidate;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+import java.util.zip.CRC32;
+// Append-only log of voter/vote mutations in memory-mapped segments, with group fsync (Persistence)
+// Record: [int bodyLen][byte type][short len + utf8]x2[int crc32(type..body)]; a zero length marks the end of a segment
+class WriteAheadLog implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+    enum Durability { OFF, ASYNC, GROUP } // ASYNC: background fsync every flush interval; GROUP: callers wait for a shared fsync
+    static final byte REGISTER_VOTER = 1, RECORD_VOTE = 2, RESET = 3, VOTED = 4, TALLY = 5; // RESET..TALLY: an installed snapshot; VOTED names the candidate, "" if unknown
+    private static final int HEADER = 5, TRAILER = 4;
+    interface Replayer { void registerVoter(String voterId, String password); void recordVote(String voterId, String candidateId);
+        void reset(); void markVoted(String voterId, String candidateId); void setTally(String candidateId, long count); }
+
+    private final Path dir; private final Durability mode; private final int segmentSize; private final long flushInterval;
+    // Everything below is guarded by lock. Appenders wake the flusher (work) only when it is idle; waiters sleep on flushed, signalled once per force()
+    private final ReentrantLock lock = new ReentrantLock(); private final Condition work = lock.newCondition(), flushed = lock.newCondition(); private boolean flusherIdle;
+    private final CRC32 crc = new CRC32();
+    private final List<MappedByteBuffer> sealed = new ArrayList<>(); // Full segments not yet forced
+    private MappedByteBuffer current; private long segmentIndex, resetSegment = -1; private long writtenLsn, durableLsn; private volatile boolean running = true;
+    private final Thread flusher;
+
+    // Configured via -Dddvote.wal.dir (default ./data), -Dddvote.wal.mode (OFF|ASYNC|GROUP, default GROUP), -Dddvote.wal.segmentMb, -Dddvote.wal.flushMs
+    static WriteAheadLog open(String nodeId, Replayer replayer) {
+        Durability mode = Durability.valueOf(System.getProperty("ddvote.wal.mode", "GROUP").toUpperCase()); if (mode == Durability.OFF) return null;
+        Path dir = Paths.get(System.getProperty("ddvote.wal.dir", "data"), nodeId);
+        int segMb = Integer.getInteger("ddvote.wal.segmentMb", 64); long flushMs = Long.getLong("ddvote.wal.flushMs", 10);
+        try { return new WriteAheadLog(dir, mode, segMb << 20, flushMs, replayer); } catch (IOException e) { throw new UncheckedIOException("Cannot open WAL in " + dir, e); }
+    }
+
+    WriteAheadLog(Path dir, Durability mode, int segmentSize, long flushInterval, Replayer replayer) throws IOException {
+        this.dir = dir; this.mode = mode; this.segmentSize = segmentSize; this.flushInterval = flushInterval; Files.createDirectories(dir);
+        List<Path> segments = listSegments(); long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) { Path seg = segments.get(i); MappedByteBuffer buf = map(seg, Math.max(segmentSize, (int) Files.size(seg)));
+            replayed += replay(buf, replayer); segmentIndex = segmentIndex(seg);
+            if (i == segments.size() - 1) { current = buf; zeroTail(buf); } // Resume appending after the last intact record
+        }
+        if (current == null) current = map(segmentPath(segmentIndex), segmentSize);
+        writtenLsn = durableLsn = segmentIndex * segmentSize + current.position();
+        LOGGER.info("WAL " + dir + " (" + mode + "): replayed " + replayed + " records from " + segments.size() + " segments");
+        flusher = new Thread(this::flushLoop, "wal-flush-" + dir.getFileName()); flusher.setDaemon(true); flusher.start();
+    }
+
+    // --- Append (memory copy only; no syscall per record) ---
+    long logRegister(String voterId, String password) { return append(REGISTER_VOTER, voterId, password); }
+    long logVote(String voterId, String candidateId) { return append(RECORD_VOTE, voterId, candidateId); }
+    private long append(byte type, String a, String b) { lock.lock(); try {
+        byte[] ab = a.getBytes(StandardCharsets.UTF_8), bb = b.getBytes(StandardCharsets.UTF_8); int body = 4 + ab.length + bb.length;
+        if (ab.length > 0xFFFF || bb.length > 0xFFFF || HEADER + body + TRAILER + 4 > segmentSize) throw new IllegalArgumentException("WAL record too large");
+        if (current.remaining() < HEADER + body + TRAILER + 4) roll(); // Keep room for the zero end marker
+        int start = current.position(); current.putInt(body).put(type).putShort((short) ab.length).put(ab).putShort((short) bb.length).put(bb);
+        crc.reset(); ByteBuffer rec = current.duplicate(); rec.position(start + 4).limit(current.position()); crc.update(rec); current.putInt((int) crc.getValue());
+        writtenLsn = segmentIndex * segmentSize + current.position(); if (mode == Durability.GROUP && flusherIdle) { flusherIdle = false; work.signal(); } return writtenLsn;
+    } finally { lock.unlock(); } }
+    // Logs a full state image behind a RESET marker; once durable, compact() drops the segments before it
+    void logReset(VoterStore voters, List<Candidate> cands, Map<String, Long> counts) { lock.lock(); try { append(RESET, "", ""); resetSegment = segmentIndex; int n = voters.size();
+        for (int o = 0; o < n; o++) append(REGISTER_VOTER, voters.voterId(o), voters.password(o));
+        for (int o = 0; o < n; o++) if (voters.hasVoted(o)) { int c = voters.choice(o); append(VOTED, voters.voterId(o), c > 0 && c <= cands.size() ? cands.get(c - 1).getId() : ""); } counts.forEach((c, k) -> append(TALLY, c, Long.toString(k))); } finally { lock.unlock(); } }
+    void compact() { long keepFrom; lock.lock(); try { keepFrom = resetSegment; } finally { lock.unlock(); } if (keepFrom <= 0) return; sync();
+        try { for (Path seg : listSegments()) if (segmentIndex(seg) < keepFrom) Files.deleteIfExists(seg); } catch (IOException e) { LOGGER.log(Level.WARNING, "WAL compaction failed", e); } }
+    private void roll() { try { sealed.add(current); segmentIndex++; current = map(segmentPath(segmentIndex), segmentSize); }
+        catch (IOException e) { throw new UncheckedIOException("WAL segment roll failed in " + dir, e); } }
+
+    // --- Group commit ---
+    long getWrittenLsn() { lock.lock(); try { return writtenLsn; } finally { lock.unlock(); } }
+    // Blocks until everything appended up to lsn is on disk (GROUP only); many waiters share one force()
+    void awaitDurable(long lsn) { if (mode != Durability.GROUP) return; boolean interrupted = false;
+        lock.lock(); try { while (running && durableLsn < lsn) { try { flushed.await(); } catch (InterruptedException e) { interrupted = true; } } } finally { lock.unlock(); }
+        if (interrupted) Thread.currentThread().interrupt(); }
+    void sync() { awaitDurable(getWrittenLsn()); }
+    private void flushLoop() { while (running) { List<MappedByteBuffer> toForce; long target;
+        lock.lock(); try { try { if (durableLsn >= writtenLsn) { flusherIdle = true; if (mode == Durability.GROUP) work.await(); else work.await(flushInterval, TimeUnit.MILLISECONDS); flusherIdle = false; }
+                else if (mode == Durability.ASYNC) work.await(flushInterval, TimeUnit.MILLISECONDS); }
+            catch (InterruptedException e) { flusherIdle = false; if (!running) break; }
+            if (durableLsn >= writtenLsn) continue; target = writtenLsn; toForce = new ArrayList<>(sealed); sealed.clear(); toForce.add(current); } finally { lock.unlock(); }
+        try { toForce.forEach(MappedByteBuffer::force); } catch (UncheckedIOException e) { LOGGER.log(Level.SEVERE, "WAL fsync failed", e); }
+        lock.lock(); try { durableLsn = Math.max(durableLsn, target); flushed.signalAll(); } finally { lock.unlock(); } } } // One wakeup per force() for everyone it covered
+
+    @Override public void close() { lock.lock(); try { if (!running) return; running = false; sealed.forEach(MappedByteBuffer::force); current.force(); durableLsn = writtenLsn; flushed.signalAll(); } finally { lock.unlock(); }
+        flusher.interrupt(); LOGGER.info("WAL " + dir + " closed at lsn " + writtenLsn); }
+
+    // --- Recovery ---
+    private long replay(MappedByteBuffer buf, Replayer r) { long n = 0; CRC32 check = new CRC32();
+        while (buf.remaining() >= HEADER + TRAILER) { int start = buf.position(); int body = buf.getInt(start);
+            if (body <= 0 || body > buf.remaining() - HEADER - TRAILER) break;
+            ByteBuffer rec = buf.duplicate(); rec.position(start + 4).limit(start + HEADER + body); check.reset(); check.update(rec);
+            if ((int) check.getValue() != buf.getInt(start + HEADER + body)) { LOGGER.warning("WAL torn record at offset " + start + ", truncating"); break; }
+            buf.position(start + 4); byte type = buf.get(); String a = readString(buf), b = readString(buf); buf.position(start + HEADER + body + TRAILER);
+            switch (type) { case REGISTER_VOTER: r.registerVoter(a, b); break; case RECORD_VOTE: r.recordVote(a, b); break; case RESET: r.reset(); break;
+                case VOTED: r.markVoted(a, b); break; case TALLY: r.setTally(a, Long.parseLong(b)); break; default: LOGGER.warning("WAL unknown record type " + type); } n++; }
+        return n; }
+    private static String readString(ByteBuffer buf) { byte[] b = new byte[buf.getShort() & 0xFFFF]; buf.get(b); return new String(b, StandardCharsets.UTF_8); }
+    private static void zeroTail(MappedByteBuffer buf) { if (buf.remaining() < 4 || buf.getInt(buf.position()) == 0) return; for (int i = buf.position(); i < buf.limit(); i++) buf.put(i, (byte) 0); }
+
+    // --- Segment files ---
+    private MappedByteBuffer map(Path p, int size) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) { return ch.map(FileChannel.MapMode.READ_WRITE, 0, size); } }
+    private Path segmentPath(long index) { return dir.resolve(String.format("%020d.wal", index)); }
+    private static long segmentIndex(Path p) { String n = p.getFileName().toString(); return Long.parseLong(n.substring(0, n.length() - 4)); }
+    private List<Path> listSegments() throws IOException { List<Path> segs = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.wal")) { ds.forEach(segs::add); } segs.sort(Comparator.comparingLong(WriteAheadLog::segmentIndex)); return segs; }
+}
@@ -0,0 +1,16 @@
+package ddvote.shared;
+import java.io.Serializable;
+import java.util.Arrays;
+// The primary's whole content of some anti-entropy buckets, replicated in order so backups add whatever they are missing (Data Model)
+// A backup that finds anything beyond it (a voter, a vote or a password the primary does not have) cannot take it back and resyncs instead
+public class BucketRepair implements Serializable {
+    private static final long serialVersionUID = 14L;
+    public static final String UNKNOWN = ""; // Voted, but the primary has no candidate for it (the vote reached it in a snapshot)
+    private final int[] buckets; private final String[] voterIds, passwords, votes; // Per voter: the candidate voted for, UNKNOWN, or null if not voted
+    public BucketRepair(int[] buckets, String[] voterIds, String[] passwords, String[] votes) {
+        if (voterIds.length != passwords.length || voterIds.length != votes.length) throw new IllegalArgumentException("Repair columns differ in length");
+        this.buckets = buckets; this.voterIds = voterIds; this.passwords = passwords; this.votes = votes; }
+    public int[] getBuckets() { return buckets; } public int size() { return voterIds.length; }
+    public String getVoterId(int i) { return voterIds[i]; } public String getPassword(int i) { return passwords[i]; } public String getVote(int i) { return votes[i]; }
+    @Override public String toString() { return "BucketRepair{" + buckets.length + " bucket(s) " + Arrays.toString(Arrays.copyOf(buckets, Math.min(buckets.length, 8))) + ", " + voterIds.length + " voter(s)}"; }
+}
@@ -3,8 +3,10 @@ import java.io.Serializable;
 // Carries election messages between nodes (DC Concept: Election Protocol)
 public class ElectionMessage implements Serializable {
     private static final long serialVersionUID = 102L;
-    final ElectionMessageType type; final String senderId; final VectorClock timestamp;
-    public ElectionMessage(ElectionMessageType type, String senderId, VectorClock timestamp) { this.type = type; this.senderId = senderId; this.timestamp = timestamp; }
-    public ElectionMessageType getType() { return type; } public String getSenderId() { return senderId; } public VectorClock getTimestamp() { return timestamp; }
-    @Override public String toString() { return "ElectionMsg{" + type + " from " + senderId + " @ " + timestamp + '}'; }
+    final ElectionMessageType type; final String senderId; final VectorClock timestamp; final long epoch; // Epoch the sender leads in (COORDINATOR, LEASE) or would lead (TAKEOVER)
+    public ElectionMessage(ElectionMessageType type, String senderId, VectorClock timestamp) { this(type, senderId, timestamp, 0); }
+    public ElectionMessage(ElectionMessageType type, String senderId, VectorClock timestamp, long epoch) { this.type = type; this.senderId = senderId; this.timestamp = timestamp; this.epoch = epoch; }
+    public ElectionMessageType getType() { return type; } public String getSenderId() { return senderId; } public VectorClock getTimestamp() { return timestamp; } public long getEpoch() { return epoch; }
+    private Object writeReplace() { return WireCodec.envelope(this); } // Ship the compact binary form
+    @Override public String toString() { return "ElectionMsg{" + type + " from " + senderId + (epoch > 0 ? " epoch " + epoch : "") + " @ " + timestamp + '}'; }
 }
\ No newline at end of file
@@ -1,4 +1,4 @@
 package ddvote.shared;
 import java.io.Serializable;
-// Types of messages for the Bully election algorithm (DC Concept: Election Protocol)
-public enum ElectionMessageType implements Serializable { ELECTION_REQUEST, ANSWER, COORDINATOR }
\ No newline at end of file
+// Types of messages for the Bully election algorithm, plus the primary's lease renewals and a standby's takeover request (DC Concept: Election Protocol)
+public enum ElectionMessageType implements Serializable { ELECTION_REQUEST, ANSWER, COORDINATOR, LEASE, TAKEOVER }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package ddvote.shared;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+// Process-wide node id <-> dense slot table shared by every vector clock (DC Concept: Logical Time)
+// Slots are only meaningful inside this JVM; on the wire clocks travel as (id, time) pairs. Live clocks keep referring to a slot,
+// so it is never reused: the table is bounded instead, and ids that only arrive in decoded messages cannot take its last RESERVED slots
+final class NodeIndex {
+    static final int CAPACITY = 1024; // Live clocks are sized to this once, so they never need to grow
+    static final int RESERVED = 64, MAX_ID_LENGTH = 256; // Kept for ids this process names itself (its own node id, a peer it ticks for)
+    private static final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+    private NodeIndex() {}
+    static int of(String id) { int i = slot(id, CAPACITY); if (i < 0) throw new IllegalStateException("More than " + CAPACITY + " node ids"); return i; }
+    // For an id read off the wire: -1 (the caller rejects the message) if it is not a plausible node id or only reserved slots are left
+    static int ofDecoded(String id) { return id == null || id.length() > MAX_ID_LENGTH ? -1 : slot(id, CAPACITY - RESERVED); }
+    private static int slot(String id, int limit) { Integer i = slots.get(id); if (i != null) return i;
+        synchronized (NodeIndex.class) { i = slots.get(id); if (i != null) return i; int n = names.length; if (n >= limit) return -1;
+            String[] grown = Arrays.copyOf(names, n + 1); grown[n] = id; names = grown; slots.put(id, n); return n; } } // Publish the name before the slot
+    static String name(int slot) { return names[slot]; } static int size() { return names.length; }
+}
@@ -0,0 +1,34 @@
+package ddvote.shared;
+import java.io.Serializable;
+import java.util.Map;
+// Point-in-time view of one node's metrics, returned by NodeService.getNodeStats() and backing its JMX bean (Data Model)
+// Latencies are in microseconds; counters only grow from node start, so rates come from diffing two views by uptime
+public class NodeStats implements Serializable {
+    private static final long serialVersionUID = 12L;
+    public static class Latency implements Serializable {
+        private static final long serialVersionUID = 121L;
+        private final long count, p50, p99, p999, max;
+        public Latency(long count, long p50, long p99, long p999, long max) { this.count = count; this.p50 = p50; this.p99 = p99; this.p999 = p999; this.max = max; }
+        public long getCount() { return count; } public long getP50() { return p50; } public long getP99() { return p99; } public long getP999() { return p999; } public long getMax() { return max; }
+        @Override public String toString() { return "n=" + count + " p50=" + p50 + "us p99=" + p99 + "us p99.9=" + p999 + "us max=" + max + "us"; }
+    }
+    // One replication peer as the primary sees it (lag and backlog are 0 on a backup), plus how regularly we hear from it
+    public static class Peer implements Serializable {
+        private static final long serialVersionUID = 122L;
+        private final long ackedSeq, lag; private final int backlog; private final double phi; private final Latency heartbeatGap;
+        public Peer(long ackedSeq, long lag, int backlog, double phi, Latency heartbeatGap) { this.ackedSeq = ackedSeq; this.lag = lag; this.backlog = backlog; this.phi = phi; this.heartbeatGap = heartbeatGap; }
+        public long getAckedSeq() { return ackedSeq; } public long getLag() { return lag; } // Updates sequenced here that the peer has not acked
+        public int getBacklog() { return backlog; } public double getPhi() { return phi; } public Latency getHeartbeatGap() { return heartbeatGap; } // Sampled inter-arrival times
+        @Override public String toString() { return "lag=" + lag + " backlog=" + backlog + " phi=" + String.format("%.2f", phi) + " gaps[" + heartbeatGap + "]"; }
+    }
+    private final String nodeId, primaryId; private final int shard; private final long epoch, uptimeMs; private final boolean primary;
+    private final Map<String, Long> counters, gauges; private final Map<String, Latency> latencies; private final Map<String, Peer> peers;
+    public NodeStats(String nodeId, int shard, String primaryId, long epoch, boolean primary, long uptimeMs, Map<String, Long> counters, Map<String, Long> gauges, Map<String, Latency> latencies, Map<String, Peer> peers) {
+        this.nodeId = nodeId; this.shard = shard; this.primaryId = primaryId; this.epoch = epoch; this.primary = primary; this.uptimeMs = uptimeMs;
+        this.counters = counters; this.gauges = gauges; this.latencies = latencies; this.peers = peers; }
+    public String getNodeId() { return nodeId; } public int getShard() { return shard; } public String getPrimaryId() { return primaryId; } public long getEpoch() { return epoch; }
+    public boolean isPrimary() { return primary; } public long getUptimeMs() { return uptimeMs; }
+    public Map<String, Long> getCounters() { return counters; } public Map<String, Long> getGauges() { return gauges; } // Gauges: queue depths, thread and store sizes right now
+    public Map<String, Latency> getLatencies() { return latencies; } public Map<String, Peer> getPeers() { return peers; }
+    @Override public String toString() { return "NodeStats{" + nodeId + (primary ? " primary" : " backup of " + primaryId) + " epoch " + epoch + ", up " + uptimeMs + "ms, counters " + counters + ", gauges " + gauges + ", latencies " + latencies + ", peers " + peers + '}'; }
+}
@@ -0,0 +1,13 @@
+package ddvote.shared;
+import java.io.Serializable;
+// Who a node believes leads its shard, and in which election epoch (Data Model)
+// Epochs only grow within a shard, so of two hints for the same shard the one with the higher epoch is the more recent view
+public class PrimaryHint implements Serializable {
+    private static final long serialVersionUID = 10L;
+    private final String primaryId; private final long epoch; private final int shard, shards;
+    public PrimaryHint(String primaryId, long epoch, int shard, int shards) { this.primaryId = primaryId; this.epoch = epoch; this.shard = shard; this.shards = shards; }
+    public String getPrimaryId() { return primaryId; } public long getEpoch() { return epoch; }
+    public int getShard() { return shard; } public int getShards() { return shards; } // The answering node's shard, and the cluster's shard count
+    public boolean isKnown() { return primaryId != null; }
+    @Override public String toString() { return "PrimaryHint{" + primaryId + " epoch " + epoch + (shards > 1 ? " shard " + shard + "/" + shards : "") + '}'; }
+}
@@ -0,0 +1,12 @@
+package ddvote.shared;
+import java.io.Serializable;
+// Position in a primary's replication stream that a read must reflect (Data Model)
+// Handed out by the primary after a write; a backup may serve a read carrying it only once it has applied that far (read-your-writes)
+public class ReadToken implements Serializable {
+    private static final long serialVersionUID = 7L;
+    private final String sourceId; private final long streamId; private final long seq;
+    public ReadToken(String sourceId, long streamId, long seq) { this.sourceId = sourceId; this.streamId = streamId; this.seq = seq; }
+    public String getSourceId() { return sourceId; } public long getStreamId() { return streamId; } public long getSeq() { return seq; }
+    public boolean covers(ReadToken other) { return other == null || (sourceId.equals(other.sourceId) && streamId == other.streamId && seq >= other.seq); }
+    @Override public String toString() { return "ReadToken{" + sourceId + "/" + Long.toHexString(streamId) + "@" + seq + '}'; }
+}
@@ -1,18 +1,61 @@
 package ddvote.shared;
 
+import java.net.URI;
 import java.rmi.*;
 import java.rmi.registry.*;
+import java.rmi.server.RemoteObject;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 // Helper for common RMI tasks (Infrastructure/Utility)
+// Registries and looked-up stubs are cached (DC Concept: Caching, Location Transparency)
 public class RemoteObjectUtils {
     private static final Logger LOGGER = Logger.getLogger(RemoteObjectUtils.class.getName());
     public static final int RMI_REGISTRY_PORT = 1099;
+    private static final long STUB_TTL = Long.getLong("ddvote.rmi.stubTtlMs", 30000); // Idle entries are evicted after this
+    private static final long VALIDATE_INTERVAL = Long.getLong("ddvote.rmi.stubValidateMs", 5000); // Background re-lookup of used entries
 
+    private static volatile Registry localRegistry; // Probed once, then reused
+    private static final Map<String, Registry> registries = new ConcurrentHashMap<>(); // "host:port" -> registry stub
+    private static final Map<String, CachedStub> stubs = new ConcurrentHashMap<>(); // "host:port/name" -> stub
+
+    private static final class CachedStub {
+        final String host; final int port; final String name;
+        volatile Remote stub; volatile long lastUsed = System.currentTimeMillis();
+        CachedStub(String host, int port, String name, Remote stub) {
+            this.host = host; this.port = port; this.name = name; this.stub = stub;
+        }
+    }
+
+    static {
+        ScheduledExecutorService validator = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rmi-stub-validator"); t.setDaemon(true); return t;
+        });
+        validator.scheduleWithFixedDelay(RemoteObjectUtils::validateStubs, VALIDATE_INTERVAL, VALIDATE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Binds the stub of an exported object (the object itself if it is not exported).
+     * A registry created in this JVM stores what it is given, so binding the object would let
+     * same-JVM lookups call it directly, bypassing RMI and surviving its unexport.
+     */
     public static boolean bindObject(String name, Remote obj) {
         try {
-            getOrCreateRegistry().rebind(name, obj);
+            Remote stub;
+            try {
+                stub = RemoteObject.toStub(obj);
+            } catch (NoSuchObjectException e) {
+                stub = obj;
+            }
+            try {
+                getOrCreateRegistry().rebind(name, stub);
+            } catch (ConnectException e) {
+                localRegistry = null; // Registry owner went away; probe (or create) again
+                getOrCreateRegistry().rebind(name, stub);
+            }
+            stubs.remove(key(null, RMI_REGISTRY_PORT, name));
             LOGGER.fine("RMI bound: " + name);
             return true;
         } catch (RemoteException e) {
@@ -21,12 +64,56 @@ public class RemoteObjectUtils {
         }
     }
 
+    /**
+     * Looks up a plain name in the local registry or an rmi://host:port/name URL.
+     * Returns the cached stub when there is one; callers that see a connect failure
+     * on it should {@link #invalidate(Remote)} it and look up again.
+     */
     @SuppressWarnings("unchecked")
     public static <T extends Remote> T lookupObject(String name) throws RemoteException, NotBoundException {
-        return (T) getOrCreateRegistry().lookup(name);
+        String host = null; int port = RMI_REGISTRY_PORT; String bare = name;
+        if (name.startsWith("rmi:") || name.startsWith("//")) {
+            URI uri = URI.create(name.startsWith("//") ? "rmi:" + name : name);
+            host = uri.getHost();
+            if (uri.getPort() > 0) port = uri.getPort();
+            bare = uri.getPath() == null ? "" : uri.getPath().replaceFirst("^/", "");
+        }
+        String key = key(host, port, bare);
+        CachedStub cached = stubs.get(key);
+        if (cached != null) {
+            cached.lastUsed = System.currentTimeMillis();
+            return (T) cached.stub;
+        }
+        Remote stub;
+        try {
+            stub = registryFor(host, port).lookup(bare);
+        } catch (ConnectException e) {
+            if (host != null) throw e;
+            localRegistry = null; // Local registry owner went away; probe (or create) again
+            stub = getOrCreateRegistry().lookup(bare);
+        }
+        stubs.put(key, new CachedStub(host, port, bare, stub));
+        return (T) stub;
+    }
+
+    /** Builds the URL of a name bound in the registry on the given host. */
+    public static String rmiUrl(String host, String name) {
+        return name.startsWith("rmi:") || name.startsWith("//") ? name : "rmi://" + host + ":" + RMI_REGISTRY_PORT + "/" + name;
+    }
+
+    /** Drops a stub from the cache, e.g. after it failed with {@link #isConnectFailure(Throwable)}. */
+    public static void invalidate(Remote stub) {
+        if (stub != null) stubs.values().removeIf(c -> c.stub.equals(stub));
+    }
+
+    /** True for failures that mean the remote object (or its JVM) is gone rather than an application error. */
+    public static boolean isConnectFailure(Throwable t) {
+        return t instanceof ConnectException || t instanceof ConnectIOException
+                || t instanceof NoSuchObjectException || t instanceof UnknownHostException;
     }
 
     public static boolean unbindObject(String name) {
+        stubs.remove(key(null, RMI_REGISTRY_PORT, name));
         try {
             getOrCreateRegistry().unbind(name);
             LOGGER.fine("RMI unbound: " + name);
@@ -39,16 +126,54 @@ public class RemoteObjectUtils {
 
     /**
      * Gets the RMI registry or creates one if it does not exist.
+     * Only the first call probes the registry; later calls reuse it.
      */
     public static Registry getOrCreateRegistry() throws RemoteException {
-        try {
-            Registry registry = LocateRegistry.getRegistry(RMI_REGISTRY_PORT);
-            // Trigger a dummy call to ensure the registry is actually alive
-            registry.list();
-            return registry;
-        } catch (RemoteException e) {
-            LOGGER.info("RMI registry not found, creating a new one...");
-            return LocateRegistry.createRegistry(RMI_REGISTRY_PORT);
+        Registry registry = localRegistry;
+        if (registry != null) return registry;
+        synchronized (RemoteObjectUtils.class) {
+            if (localRegistry != null) return localRegistry;
+            try {
+                registry = LocateRegistry.getRegistry(RMI_REGISTRY_PORT);
+                // Trigger a dummy call to ensure the registry is actually alive
+                registry.list();
+            } catch (RemoteException e) {
+                LOGGER.info("RMI registry not found, creating a new one...");
+                registry = LocateRegistry.createRegistry(RMI_REGISTRY_PORT);
+            }
+            return localRegistry = registry;
+        }
+    }
+
+    private static Registry registryFor(String host, int port) throws RemoteException {
+        if (host == null) return getOrCreateRegistry();
+        String key = host + ":" + port;
+        Registry registry = registries.get(key);
+        if (registry == null) { // Creating the stub is local; no round-trip until first use
+            registry = LocateRegistry.getRegistry(host, port);
+            registries.put(key, registry);
+        }
+        return registry;
+    }
+
+    private static String key(String host, int port, String name) {
+        return (host == null ? "" : host) + ":" + port + "/" + name;
+    }
+
+    // Keeps cached stubs honest off the caller's path: idle ones are evicted,
+    // rebound names pick up the new stub and unbound or unreachable ones are dropped
+    private static void validateStubs() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, CachedStub> e : stubs.entrySet()) {
+            CachedStub c = e.getValue();
+            if (now - c.lastUsed > STUB_TTL) { stubs.remove(e.getKey(), c); continue; }
+            try {
+                Remote fresh = registryFor(c.host, c.port).lookup(c.name);
+                if (!fresh.equals(c.stub)) { c.stub = fresh; LOGGER.fine("RMI stub refreshed: " + e.getKey()); }
+            } catch (NotBoundException | RemoteException ex) {
+                stubs.remove(e.getKey(), c);
+                LOGGER.fine("RMI stub evicted: " + e.getKey() + " (" + ex.getMessage() + ")");
+            }
         }
     }
 
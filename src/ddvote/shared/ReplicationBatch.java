@@ -0,0 +1,16 @@
+package ddvote.shared;
+import java.io.Serializable;
+import java.util.List;
+// Ordered run of updates from one primary stream (DC Concept: Replication)
+public class ReplicationBatch implements Serializable {
+    private static final long serialVersionUID = 104L;
+    final String sourceId; final long streamId; final long firstSeq; final List<ReplicationUpdate> updates; final ReadToken base;
+    // streamId identifies one incarnation of the source, so a restarted primary never reuses old sequence numbers
+    public ReplicationBatch(String sourceId, long streamId, long firstSeq, List<ReplicationUpdate> updates) { this(sourceId, streamId, firstSeq, updates, null); }
+    // Handoff after a takeover: the source's state at firstSeq - 1 is the one reached at base, so a backup standing exactly there continues without a snapshot
+    public ReplicationBatch(String sourceId, long streamId, long firstSeq, List<ReplicationUpdate> updates, ReadToken base) { this.sourceId = sourceId; this.streamId = streamId; this.firstSeq = firstSeq; this.updates = updates; this.base = base; }
+    public String getSourceId() { return sourceId; } public long getStreamId() { return streamId; } public List<ReplicationUpdate> getUpdates() { return updates; }
+    public ReadToken getBase() { return base; } public long getFirstSeq() { return firstSeq; } public long getLastSeq() { return firstSeq + updates.size() - 1; }
+    private Object writeReplace() { return WireCodec.envelope(this); } // One binary blob with ids interned across all updates
+    @Override public String toString() { return "ReplicationBatch{" + sourceId + " seq " + firstSeq + ".." + getLastSeq() + (base == null ? "" : " from " + base) + '}'; }
+}
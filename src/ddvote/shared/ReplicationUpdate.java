@@ -1,12 +1,20 @@
 package ddvote.shared;
 import java.io.Serializable;
+import java.util.List;
 // Represents a state change sent from primary to backups (DC Concept: Replication)
 public class ReplicationUpdate implements Serializable {
     private static final long serialVersionUID = 103L;
-    public enum UpdateType { REGISTER_VOTER, RECORD_VOTE }
+    public enum UpdateType { REGISTER_VOTER, RECORD_VOTE, RECORD_VOTES, REGISTER_VOTERS, REPAIR_BUCKETS } // Payloads: Credentials, VoteData, List<VoteData>, VoterSegment, BucketRepair (append only: the wire form uses ordinals)
     final UpdateType type; final Object data; final VectorClock timestamp;
-    public ReplicationUpdate(UpdateType type, Object data, VectorClock timestamp) { this.type = type; this.data = data; this.timestamp = timestamp; }
+    public ReplicationUpdate(UpdateType type, Object data, VectorClock timestamp) { this.type = type; this.data = data; this.timestamp = timestamp;
+        boolean ok = type == UpdateType.REGISTER_VOTER ? data instanceof Credentials : type == UpdateType.RECORD_VOTE ? data instanceof VoteData : type == UpdateType.REGISTER_VOTERS ? data instanceof VoterSegment
+            : type == UpdateType.REPAIR_BUCKETS ? data instanceof BucketRepair : data instanceof List;
+        if (!ok) throw new IllegalArgumentException(type + " cannot carry " + (data == null ? "null" : data.getClass().getSimpleName())); }
     public UpdateType getType() { return type; } public Object getData() { return data; } public VectorClock getTimestamp() { return timestamp; }
+    public Credentials getCredentials() { return (Credentials) data; } public VoteData getVote() { return (VoteData) data; } public VoterSegment getSegment() { return (VoterSegment) data; }
+    public BucketRepair getRepair() { return (BucketRepair) data; }
+    @SuppressWarnings("unchecked") public List<VoteData> getVotes() { return (List<VoteData>) data; }
+    private Object writeReplace() { return WireCodec.envelope(this); } // Ship the compact binary form
     @Override public String toString() { return "ReplicationUpdate{" + type + ", data=" + data + ", ts=" + timestamp + '}'; }
     // Inner class for vote data payload
     public static class VoteData implements Serializable {
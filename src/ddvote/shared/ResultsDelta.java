@@ -0,0 +1,13 @@
+package ddvote.shared;
+import java.io.Serializable;
+import java.util.List;
+// Results relative to a version the caller already holds (Data Model)
+// full: results is the complete sorted list; otherwise it holds only candidates whose count changed (empty = unchanged)
+public class ResultsDelta implements Serializable {
+    private static final long serialVersionUID = 6L;
+    private final long version; private final boolean full; private final List<VoteResult> results;
+    public ResultsDelta(long version, boolean full, List<VoteResult> results) { this.version = version; this.full = full; this.results = results; }
+    public long getVersion() { return version; } public boolean isFull() { return full; } public List<VoteResult> getResults() { return results; }
+    public boolean isUnchanged() { return !full && results.isEmpty(); }
+    @Override public String toString() { return "ResultsDelta{v" + version + (full ? " full " : " changed ") + results + '}'; }
+}
@@ -0,0 +1,19 @@
+package ddvote.shared;
+import java.util.*;
+// Consistent-hash placement of voters on shards (DC Concept: Partitioning)
+// Each shard owns VNODES points on a 64-bit ring and a voter belongs to the first point at or after its hash,
+// so growing from S to S+1 shards moves only about 1/(S+1) of the voters
+public final class ShardMap {
+    public static final int SHARDS = Integer.getInteger("ddvote.shards", 1); // Every node must agree; clients learn it from PrimaryHint
+    private static final int VNODES = 256;
+    private final int shards; private final long[] points; private final int[] owners; // Ring, sorted by point
+    public ShardMap(int shards) { if (shards < 1) throw new IllegalArgumentException("Shard count must be positive: " + shards); this.shards = shards;
+        TreeMap<Long, Integer> ring = new TreeMap<>(); for (int s = 0; s < shards; s++) for (int v = 0; v < VNODES; v++) ring.putIfAbsent(hash("shard-" + s + "#" + v), s);
+        points = new long[ring.size()]; owners = new int[ring.size()]; int i = 0; for (Map.Entry<Long, Integer> e : ring.entrySet()) { points[i] = e.getKey(); owners[i++] = e.getValue(); } }
+    public int shards() { return shards; }
+    public int shardOf(String voterId) { if (shards == 1) return 0; int i = Arrays.binarySearch(points, hash(voterId)); if (i < 0) i = -i - 1; return owners[i == points.length ? 0 : i]; }
+    // FNV-1a over the chars, then a 64-bit finalizer so similar ids ("v1", "v2") land far apart
+    static long hash(String s) { long h = 0xcbf29ce484222325L; for (int i = 0; i < s.length(); i++) { h ^= s.charAt(i); h *= 0x100000001b3L; }
+        h ^= h >>> 33; h *= 0xff51afd7ed558ccdL; h ^= h >>> 33; h *= 0xc4ceb9fe1a85ec53L; return h ^ (h >>> 33); }
+    @Override public String toString() { return "ShardMap{" + shards + " shards}"; }
+}
@@ -0,0 +1,19 @@
+package ddvote.shared;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+// One piece of a chunked state transfer from primary to backup (DC Concept: State Transfer)
+public class SnapshotChunk implements Serializable {
+    private static final long serialVersionUID = 105L;
+    final String sourceId; final long streamId; final long snapshotId; final int index; final byte[] data; // data: GZIP'd voter/voted records
+    // Set on the final chunk only: the stream position the snapshot covers plus the small replicated state
+    long lastSeq = -1; Map<String, Long> counts; List<Candidate> candidates; ElectionState electionState; VectorClock clock;
+    public SnapshotChunk(String sourceId, long streamId, long snapshotId, int index, byte[] data) { this.sourceId = sourceId; this.streamId = streamId; this.snapshotId = snapshotId; this.index = index; this.data = data; }
+    public SnapshotChunk last(long lastSeq, Map<String, Long> counts, List<Candidate> candidates, ElectionState es, VectorClock clock) {
+        this.lastSeq = lastSeq; this.counts = counts; this.candidates = candidates; this.electionState = es; this.clock = clock; return this; }
+    public String getSourceId() { return sourceId; } public long getStreamId() { return streamId; } public long getSnapshotId() { return snapshotId; }
+    public int getIndex() { return index; } public byte[] getData() { return data; } public boolean isLast() { return lastSeq >= 0; } public long getLastSeq() { return lastSeq; }
+    public Map<String, Long> getCounts() { return counts; } public List<Candidate> getCandidates() { return candidates; }
+    public ElectionState getElectionState() { return electionState; } public VectorClock getClock() { return clock; }
+    @Override public String toString() { return "SnapshotChunk{" + sourceId + " #" + snapshotId + "/" + index + (isLast() ? " last@" + lastSeq : "") + ", " + data.length + "B}"; }
+}
@@ -0,0 +1,7 @@
+package ddvote.shared;
+import java.rmi.RemoteException;
+// Thrown by a backup that cannot serve a read within its staleness bound; the caller should retry on another node (Error)
+public class StaleReadException extends RemoteException {
+    private static final long serialVersionUID = 8L;
+    public StaleReadException(String msg) { super(msg); }
+}
@@ -0,0 +1,7 @@
+package ddvote.shared;
+import java.rmi.*;
+// Client-exported callback for pushed results and election-state changes (Contract/API)
+public interface UpdateListener extends Remote {
+    void onResults(ResultsDelta delta) throws RemoteException; // Relative to the last version delivered to this listener
+    void onElectionState(ElectionState state) throws RemoteException;
+}
@@ -1,22 +1,33 @@
 package ddvote.shared;
 import java.io.Serializable;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 // Vector Clock for tracking causality (DC Concept: Logical Time)
+// Slot i holds the time of NodeIndex i. A live clock updates its slots lock-free; copy() returns an immutable long[] snapshot
 public class VectorClock implements Serializable {
     private static final long serialVersionUID = 101L;
-    private final ConcurrentHashMap<String, Integer> clock = new ConcurrentHashMap<>();
-    public int getTime(String nodeId) { return clock.getOrDefault(nodeId, 0); }
-    public synchronized void tick(String localNodeId) { clock.merge(localNodeId, 1, Integer::sum); }
-    public synchronized void merge(VectorClock remoteClock) {
-        if (remoteClock == null) return;
-        remoteClock.clock.forEach((nodeId, remoteTime) -> clock.merge(nodeId, remoteTime, Math::max));
-    }
-    public synchronized void receiveAction(String localNodeId, VectorClock remoteClock) { merge(remoteClock); tick(localNodeId); }
-    public VectorClock copy() { VectorClock c = new VectorClock(); c.clock.putAll(this.clock); return c; }
-    @Override public synchronized String toString() {
-        return clock.entrySet().stream().sorted(Map.Entry.comparingByKey())
-                .map(e -> e.getKey() + ":" + e.getValue()).collect(Collectors.joining(",", "{", "}"));
-    }
-}
\ No newline at end of file
+    public enum Order { BEFORE, AFTER, CONCURRENT, EQUAL }
+    private final AtomicLongArray live; // Null for snapshots
+    private final long[] frozen;        // Null for live clocks; trailing zero slots are trimmed
+    public VectorClock() { this.live = new AtomicLongArray(NodeIndex.CAPACITY); this.frozen = null; }
+    VectorClock(long[] frozen) { this.live = null; this.frozen = frozen; }
+    public long getTime(String nodeId) { return time(NodeIndex.of(nodeId)); }
+    public void tick(String localNodeId) { mutable().incrementAndGet(NodeIndex.of(localNodeId)); }
+    public void merge(VectorClock remoteClock) { if (remoteClock == null) return; AtomicLongArray a = mutable(); long[] r = remoteClock.times();
+        for (int i = 0; i < r.length; i++) { long t = r[i], cur; while (t > (cur = a.get(i)) && !a.compareAndSet(i, cur, t)) { /* Lost a race: re-read */ } } }
+    public void receiveAction(String localNodeId, VectorClock remoteClock) { merge(remoteClock); tick(localNodeId); }
+    public VectorClock copy() { return frozen != null ? this : new VectorClock(times()); } // Snapshots are immutable, so they can be shared
+    public Order compare(VectorClock other) { long[] a = times(), b = other.times(); boolean less = false, greater = false;
+        for (int i = 0, n = Math.max(a.length, b.length); i < n; i++) { long x = i < a.length ? a[i] : 0, y = i < b.length ? b[i] : 0; if (x < y) less = true; else if (x > y) greater = true; }
+        return less ? (greater ? Order.CONCURRENT : Order.BEFORE) : (greater ? Order.AFTER : Order.EQUAL); }
+    public boolean happenedBefore(VectorClock other) { return compare(other) == Order.BEFORE; }
+    // Point-in-time slot values (a racing tick is either fully in or out)
+    long[] times() { if (frozen != null) return frozen; int n = Math.min(NodeIndex.size(), NodeIndex.CAPACITY); while (n > 0 && live.get(n - 1) == 0) n--;
+        long[] t = new long[n]; for (int i = 0; i < n; i++) t[i] = live.get(i); return t; }
+    private long time(int slot) { return frozen != null ? (slot < frozen.length ? frozen[slot] : 0) : live.get(slot); }
+    private AtomicLongArray mutable() { if (live == null) throw new UnsupportedOperationException("Clock snapshot is immutable"); return live; }
+    private Object writeReplace() { return WireCodec.envelope(this); } // Ship the compact binary form
+    @Override public String toString() { long[] t = times(); TreeMap<String, Long> byId = new TreeMap<>(); for (int i = 0; i < t.length; i++) if (t[i] != 0) byId.put(NodeIndex.name(i), t[i]);
+        StringJoiner j = new StringJoiner(",", "{", "}"); byId.forEach((id, v) -> j.add(id + ":" + v)); return j.toString(); }
+}
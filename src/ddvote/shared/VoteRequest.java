@@ -0,0 +1,10 @@
+package ddvote.shared;
+import java.io.Serializable;
+// A single ballot inside a batched submission (Data Model)
+public class VoteRequest implements Serializable {
+    private static final long serialVersionUID = 4L;
+    private final String voterId; private final String candidateId;
+    public VoteRequest(String voterId, String candidateId) { this.voterId = voterId; this.candidateId = candidateId; }
+    public String getVoterId() { return voterId; } public String getCandidateId() { return candidateId; }
+    @Override public String toString() { return voterId + "->" + candidateId; }
+}
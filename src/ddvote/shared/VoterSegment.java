@@ -0,0 +1,37 @@
+package ddvote.shared;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+// A deflated run of voter credentials for one shard: the unit of bulk import, and what the primary replicates for it as is (Data Model)
+// Records are [u8 length][voterId][u8 length][password] in UTF-8, the layout VoterStore keeps them in
+public class VoterSegment implements Serializable {
+    private static final long serialVersionUID = 13L;
+    public static final int MAX_FIELD = 0xFF;
+    private final int shard, shards, count, rawLength; private final byte[] data;
+    public VoterSegment(int shard, int shards, int count, int rawLength, byte[] data) { this.shard = shard; this.shards = shards; this.count = count; this.rawLength = rawLength; this.data = data; }
+    // Compresses with BEST_SPEED: importer threads build segments in parallel and ids compress well even so
+    public static VoterSegment of(int shard, int shards, List<Credentials> voters) { byte[] raw = new byte[64 * voters.size() + 16]; int len = 0;
+        for (Credentials c : voters) { byte[] id = utf8(c.getVoterId()), pw = utf8(c.getPassword()); if (len + 2 + id.length + pw.length > raw.length) raw = Arrays.copyOf(raw, Math.max(raw.length * 2, len + 2 + id.length + pw.length));
+            raw[len++] = (byte) id.length; System.arraycopy(id, 0, raw, len, id.length); len += id.length; raw[len++] = (byte) pw.length; System.arraycopy(pw, 0, raw, len, pw.length); len += pw.length; }
+        Deflater d = new Deflater(Deflater.BEST_SPEED); try { d.setInput(raw, 0, len); d.finish(); byte[] out = new byte[len / 2 + 64]; int n = 0;
+            while (!d.finished()) { if (n == out.length) out = Arrays.copyOf(out, out.length * 2); n += d.deflate(out, n, out.length - n); }
+            return new VoterSegment(shard, shards, voters.size(), len, Arrays.copyOf(out, n)); } finally { d.end(); } }
+    // The header sizes both allocations, so it is checked against what the data could hold first: deflate expands at most ~1032:1, a voter takes 2 bytes or more
+    public List<Credentials> voters() { if (rawLength < 0 || rawLength > 1032L * data.length + 16 || count < 0 || count > rawLength / 2) throw new IllegalArgumentException("Implausible voter segment header: " + this);
+        byte[] raw = new byte[rawLength]; Inflater inf = new Inflater();
+        try { inf.setInput(data); int n = 0; while (n < rawLength && !inf.finished()) { int k = inf.inflate(raw, n, rawLength - n); if (k == 0 && (inf.needsInput() || inf.needsDictionary())) break; n += k; }
+            if (n != rawLength) throw new IllegalArgumentException("Truncated voter segment: " + n + " of " + rawLength + " bytes"); }
+        catch (DataFormatException e) { throw new IllegalArgumentException("Corrupt voter segment: " + e.getMessage()); } finally { inf.end(); }
+        List<Credentials> out = new ArrayList<>(count); for (int p = 0; p < rawLength; ) { int il = raw[p++] & 0xFF; String id = new String(raw, p, il, StandardCharsets.UTF_8); p += il;
+            int pl = raw[p++] & 0xFF; out.add(new Credentials(id, new String(raw, p, pl, StandardCharsets.UTF_8))); p += pl; }
+        if (out.size() != count) throw new IllegalArgumentException("Voter segment holds " + out.size() + " voters, header says " + count); return out; }
+    public int getShard() { return shard; } public int getShards() { return shards; } public int getCount() { return count; }
+    public int getRawLength() { return rawLength; } public byte[] getData() { return data; }
+    private static byte[] utf8(String s) { byte[] b = s.getBytes(StandardCharsets.UTF_8); if (b.length > MAX_FIELD) throw new IllegalArgumentException("Voter field longer than " + MAX_FIELD + " bytes: " + s); return b; }
+    @Override public String toString() { return "VoterSegment{shard " + shard + "/" + shards + ", " + count + " voters, " + data.length + "B of " + rawLength + "B}"; }
+}
@@ -0,0 +1,99 @@
+package ddvote.shared;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+// Compact versioned binary form for inter-node messages (DC Concept: Wire Protocol)
+// Layout: [version][kind][body]. Counts, seqs and clock times are varints; strings are interned per message
+// (first use inline, repeats by index), so node and candidate ids cost one byte after their first appearance.
+public final class WireCodec {
+    public static final int VERSION = 3; // Decoders accept every version up to this one (2: election epoch, 3: batch handoff base)
+    private static final int KIND_CLOCK = 1, KIND_UPDATE = 2, KIND_ELECTION = 3, KIND_BATCH = 4;
+    private static final int T_NULL = 0, T_STRING = 1, T_LONG = 2, T_BOOLEAN = 3, T_CLOCK = 4, T_UPDATE = 5, T_ELECTION = 6, T_BATCH = 7, T_SERIALIZED = 8;
+    private WireCodec() {}
+
+    // --- Entry points ---
+    public static byte[] encode(Object msg) { Out o = new Out(); o.write(VERSION);
+        if (msg instanceof VectorClock) { o.write(KIND_CLOCK); clock(o, (VectorClock) msg); } else if (msg instanceof ReplicationUpdate) { o.write(KIND_UPDATE); update(o, (ReplicationUpdate) msg); }
+        else if (msg instanceof ElectionMessage) { o.write(KIND_ELECTION); election(o, (ElectionMessage) msg); } else if (msg instanceof ReplicationBatch) { o.write(KIND_BATCH); batch(o, (ReplicationBatch) msg); }
+        else throw new IllegalArgumentException("Not a wire message: " + msg.getClass().getName()); return o.toByteArray(); }
+    public static Object decode(byte[] bytes) throws InvalidObjectException { In in = new In(bytes); try { int v = in.read(); if (v < 1 || v > VERSION) throw new InvalidObjectException("Unsupported wire version " + v); in.version = v;
+            switch (in.read()) { case KIND_CLOCK: return clock(in); case KIND_UPDATE: return update(in); case KIND_ELECTION: return election(in); case KIND_BATCH: return batch(in);
+                default: throw new InvalidObjectException("Unknown wire message kind"); } }
+        catch (IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) { throw new InvalidObjectException("Malformed wire message: " + e.getMessage()); } }
+    // Argument and result lists for the internal transport: [version][count] then tagged values sharing one intern table.
+    // Types without a compact form fall back to length-prefixed Java serialization.
+    public static byte[] encodeValues(Object... values) { Out o = new Out(); o.write(VERSION); o.varint(values.length); for (Object v : values) value(o, v); return o.toByteArray(); }
+    public static Object[] decodeValues(byte[] bytes) throws InvalidObjectException { In in = new In(bytes); try { int v = in.read(); if (v < 1 || v > VERSION) throw new InvalidObjectException("Unsupported wire version " + v); in.version = v;
+            Object[] values = new Object[in.count()]; for (int i = 0; i < values.length; i++) values[i] = value(in); return values; }
+        catch (IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) { throw new InvalidObjectException("Malformed wire values: " + e.getMessage()); } }
+    private static void value(Out o, Object v) { if (v == null) o.write(T_NULL); else if (v instanceof String) { o.write(T_STRING); o.string((String) v); } else if (v instanceof Long) { o.write(T_LONG); o.fixed64((Long) v); }
+        else if (v instanceof Boolean) { o.write(T_BOOLEAN); o.write((Boolean) v ? 1 : 0); } else if (v instanceof VectorClock) { o.write(T_CLOCK); clock(o, (VectorClock) v); }
+        else if (v instanceof ReplicationUpdate) { o.write(T_UPDATE); update(o, (ReplicationUpdate) v); } else if (v instanceof ElectionMessage) { o.write(T_ELECTION); election(o, (ElectionMessage) v); }
+        else if (v instanceof ReplicationBatch) { o.write(T_BATCH); batch(o, (ReplicationBatch) v); } else { o.write(T_SERIALIZED); o.bytes(serialize(v)); } }
+    private static Object value(In in) throws InvalidObjectException { switch (in.read()) { case T_NULL: return null; case T_STRING: return in.string(); case T_LONG: return in.fixed64(); case T_BOOLEAN: return in.read() != 0;
+        case T_CLOCK: return clock(in); case T_UPDATE: return update(in); case T_ELECTION: return election(in); case T_BATCH: return batch(in); case T_SERIALIZED: return deserialize(in.bytes());
+        default: throw new InvalidObjectException("Unknown wire value type"); } }
+    private static byte[] serialize(Object v) { ByteArrayOutputStream b = new ByteArrayOutputStream(); try (ObjectOutputStream out = new ObjectOutputStream(b)) { out.writeObject(v); } catch (IOException e) { throw new IllegalArgumentException("Not serializable: " + v.getClass().getName(), e); } return b.toByteArray(); }
+    private static Object deserialize(byte[] b) throws InvalidObjectException { try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b))) { return in.readObject(); }
+        catch (IOException | ClassNotFoundException e) { InvalidObjectException ioe = new InvalidObjectException("Bad serialized value: " + e.getMessage()); ioe.initCause(e); throw ioe; } }
+    // Serialization proxy: the message classes writeReplace themselves with this, so RMI ships one byte[] instead of an object graph
+    static Object envelope(Object msg) { return new Envelope(encode(msg)); }
+    static final class Envelope implements Serializable { private static final long serialVersionUID = 100L; private final byte[] bytes;
+        Envelope(byte[] bytes) { this.bytes = bytes; } private Object readResolve() throws ObjectStreamException { return decode(bytes); } }
+
+    // --- Message bodies ---
+    private static void clock(Out o, VectorClock c) { if (c == null) { o.varint(0); return; } long[] t = c.times(); int n = 0; for (long v : t) if (v != 0) n++; // Only non-zero entries, by id
+        o.varint(n + 1); for (int i = 0; i < t.length; i++) if (t[i] != 0) { o.string(NodeIndex.name(i)); o.varint(t[i]); } }
+    private static VectorClock clock(In in) { long n = in.varint() - 1; if (n < 0) return null; long[] t = new long[0];
+        for (long i = 0; i < n; i++) { String id = in.string(); int slot = NodeIndex.ofDecoded(id); if (slot < 0) throw new IllegalArgumentException("no room for clock entry " + id); if (slot >= t.length) t = Arrays.copyOf(t, slot + 1); t[slot] = in.varint(); } return new VectorClock(t); }
+    private static void update(Out o, ReplicationUpdate u) { o.write(u.type.ordinal()); clock(o, u.timestamp);
+        switch (u.type) { case REGISTER_VOTER: Credentials c = u.getCredentials(); o.string(c.getVoterId()); o.string(c.getPassword()); break;
+            case RECORD_VOTE: vote(o, u.getVote()); break; case RECORD_VOTES: List<ReplicationUpdate.VoteData> vs = u.getVotes(); o.varint(vs.size()); vs.forEach(v -> vote(o, v)); break;
+            case REGISTER_VOTERS: VoterSegment s = u.getSegment(); o.varint(s.getShard()); o.varint(s.getShards()); o.varint(s.getCount()); o.varint(s.getRawLength()); o.bytes(s.getData()); break;
+            case REPAIR_BUCKETS: repair(o, u.getRepair()); break; } } // Segments travel still deflated
+    private static ReplicationUpdate update(In in) { ReplicationUpdate.UpdateType type = ReplicationUpdate.UpdateType.values()[in.read()]; VectorClock ts = clock(in);
+        switch (type) { case REGISTER_VOTER: return new ReplicationUpdate(type, new Credentials(in.string(), in.string()), ts); case RECORD_VOTE: return new ReplicationUpdate(type, vote(in), ts);
+            case REGISTER_VOTERS: return new ReplicationUpdate(type, new VoterSegment((int) in.varint(), (int) in.varint(), (int) in.varint(), (int) in.varint(), in.bytes()), ts);
+            case REPAIR_BUCKETS: return new ReplicationUpdate(type, repair(in), ts);
+            default: int n = in.count(); ArrayList<ReplicationUpdate.VoteData> vs = new ArrayList<>(n); for (int i = 0; i < n; i++) vs.add(vote(in)); return new ReplicationUpdate(type, vs, ts); } }
+    private static void vote(Out o, ReplicationUpdate.VoteData v) { o.string(v.voterId); o.string(v.candidateId); }
+    private static ReplicationUpdate.VoteData vote(In in) { return new ReplicationUpdate.VoteData(in.string(), in.string()); }
+    // Per voter: id, password, then 0 (not voted), 1 (voted, candidate unknown) or 2 and the candidate
+    private static void repair(Out o, BucketRepair r) { int[] bs = r.getBuckets(); o.varint(bs.length); for (int b : bs) o.varint(b); o.varint(r.size());
+        for (int i = 0; i < r.size(); i++) { o.string(r.getVoterId(i)); o.string(r.getPassword(i)); String v = r.getVote(i);
+            if (v == null) o.write(0); else if (v.equals(BucketRepair.UNKNOWN)) o.write(1); else { o.write(2); o.string(v); } } }
+    private static BucketRepair repair(In in) { int[] bs = new int[in.count()]; for (int i = 0; i < bs.length; i++) bs[i] = (int) in.varint(); int n = in.count();
+        String[] ids = new String[n], pws = new String[n], votes = new String[n];
+        for (int i = 0; i < n; i++) { ids[i] = in.string(); pws[i] = in.string(); int k = in.read(); votes[i] = k == 0 ? null : k == 1 ? BucketRepair.UNKNOWN : in.string(); }
+        return new BucketRepair(bs, ids, pws, votes); }
+    private static void election(Out o, ElectionMessage m) { o.write(m.type.ordinal()); o.string(m.senderId); clock(o, m.timestamp); o.varint(m.epoch); }
+    private static ElectionMessage election(In in) { ElectionMessageType t = ElectionMessageType.values()[in.read()]; String sender = in.string(); VectorClock ts = clock(in);
+        return new ElectionMessage(t, sender, ts, in.version >= 2 ? in.varint() : 0); }
+    // Trailing base: null source, or the source, stream and seq of the position the batch's stream was handed off from
+    private static void batch(Out o, ReplicationBatch b) { o.string(b.sourceId); o.fixed64(b.streamId); o.varint(b.firstSeq); o.varint(b.updates.size()); b.updates.forEach(u -> update(o, u));
+        ReadToken base = b.base; o.string(base == null ? null : base.getSourceId()); if (base != null) { o.fixed64(base.getStreamId()); o.varint(base.getSeq()); } }
+    private static ReplicationBatch batch(In in) { String src = in.string(); long stream = in.fixed64(), first = in.varint(); int n = in.count();
+        List<ReplicationUpdate> us = new ArrayList<>(n); for (int i = 0; i < n; i++) us.add(update(in)); String baseSrc = in.version >= 3 ? in.string() : null;
+        return new ReplicationBatch(src, stream, first, us, baseSrc == null ? null : new ReadToken(baseSrc, in.fixed64(), in.varint())); }
+
+    // --- Primitives ---
+    // String tag: 0 = null, odd = (index << 1) | 1 into this message's table, even = (utf8 length + 1) << 1 followed by the bytes
+    private static final class Out { private byte[] buf = new byte[256]; private int len; private final HashMap<String, Integer> interned = new HashMap<>();
+        void write(int b) { if (len == buf.length) buf = Arrays.copyOf(buf, len << 1); buf[len++] = (byte) b; }
+        void varint(long v) { while ((v & ~0x7FL) != 0) { write((int) (v & 0x7F) | 0x80); v >>>= 7; } write((int) v); }
+        void fixed64(long v) { for (int i = 0; i < 8; i++) write((int) (v >>> (i << 3))); }
+        void string(String s) { if (s == null) { write(0); return; } Integer idx = interned.get(s); if (idx != null) { varint(((long) idx << 1) | 1); return; } interned.put(s, interned.size());
+            byte[] b = s.getBytes(StandardCharsets.UTF_8); varint((long) (b.length + 1) << 1); if (len + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(len + b.length, len << 1)); System.arraycopy(b, 0, buf, len, b.length); len += b.length; }
+        void bytes(byte[] b) { varint(b.length); if (len + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(len + b.length, len << 1)); System.arraycopy(b, 0, buf, len, b.length); len += b.length; }
+        byte[] toByteArray() { return Arrays.copyOf(buf, len); } }
+    private static final class In { private final byte[] buf; private int pos; private final ArrayList<String> interned = new ArrayList<>(); int version = VERSION;
+        In(byte[] buf) { this.buf = buf; }
+        int read() { if (pos >= buf.length) throw new IndexOutOfBoundsException("truncated"); return buf[pos++] & 0xFF; }
+        long varint() { long v = 0; for (int shift = 0; shift < 64; shift += 7) { int b = read(); v |= (long) (b & 0x7F) << shift; if ((b & 0x80) == 0) return v; } throw new IllegalArgumentException("varint too long"); }
+        // An element count: each element takes at least one byte, so a count beyond what is left is malformed (and must not size an allocation)
+        int count() { long n = varint(); if (n < 0 || n > buf.length - pos) throw new IndexOutOfBoundsException("count " + n + " exceeds the " + (buf.length - pos) + " bytes left"); return (int) n; }
+        long fixed64() { long v = 0; for (int i = 0; i < 8; i++) v |= (long) read() << (i << 3); return v; }
+        byte[] bytes() { long n = varint(); if (n < 0 || n > buf.length - pos) throw new IndexOutOfBoundsException("truncated bytes"); byte[] b = Arrays.copyOfRange(buf, pos, pos + (int) n); pos += (int) n; return b; }
+        String string() { long tag = varint(); if (tag == 0) return null; if ((tag & 1) != 0) return interned.get((int) (tag >>> 1));
+            int n = (int) (tag >>> 1) - 1; if (n < 0 || n > buf.length - pos) throw new IndexOutOfBoundsException("truncated string"); String s = new String(buf, pos, n, StandardCharsets.UTF_8); pos += n; interned.add(s); return s; } }
+}
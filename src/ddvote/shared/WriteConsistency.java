@@ -0,0 +1,6 @@
+package ddvote.shared;
+// How many backups must acknowledge a write before the primary reports it (Data Model)
+// ASYNC: primary only (replication in the background); QUORUM: a majority of the cluster; ALL: every known backup
+public enum WriteConsistency { ASYNC, QUORUM, ALL;
+    public int backupsNeeded(int backups) { switch (this) { case QUORUM: return (backups + 1) / 2; case ALL: return backups; default: return 0; } } // Majority of backups + 1 nodes, minus the primary
+}
@@ -0,0 +1,13 @@
+package ddvote.shared;
+import java.io.Serializable;
+// Result of a write plus what the client needs next: the token for read-your-writes and the current leader (Data Model)
+// Saves the follow-up getReadToken() call and tells a client that wrote through a backup where to send the next write
+public class WriteReceipt<T extends Serializable> implements Serializable {
+    private static final long serialVersionUID = 11L;
+    private final T result; private final ReadToken token; private final PrimaryHint hint;
+    private final boolean replicated; // False: applied by the primary, but fewer backups than its consistency mode asks for acked it in time (a failover may lose it)
+    public WriteReceipt(T result, ReadToken token, PrimaryHint hint) { this(result, token, hint, true); }
+    public WriteReceipt(T result, ReadToken token, PrimaryHint hint, boolean replicated) { this.result = result; this.token = token; this.hint = hint; this.replicated = replicated; }
+    public T getResult() { return result; } public ReadToken getToken() { return token; } public PrimaryHint getHint() { return hint; } public boolean isReplicated() { return replicated; }
+    @Override public String toString() { return "WriteReceipt{" + result + (replicated ? "" : " (not replicated)") + ", " + token + ", " + hint + '}'; }
+}
@@ -0,0 +1,21 @@
+package ddvote.server;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Kills the primary of an in-process cluster under load and fails the build when writes stay unavailable past the failover budget.
+// Timing-bound and about 45 s long, so it only runs with -Pfailover; TakeoverTest covers the handoff deterministically in the default run
+@Tag("failover")
+class FailoverTest {
+    // Enough voters that re-seeding the backups from snapshots after the takeover would overrun the budget; -Dddvote.sim.* on the command line overrides each
+    private static final Map<String, String> SIM = Map.of("ddvote.sim.voters", "40000", "ddvote.sim.clients", "8", "ddvote.sim.rate", "2500", "ddvote.sim.consistency", "QUORUM",
+        "ddvote.sim.faults", "kill:primary@3000", "ddvote.sim.maxUnavailableMs", "1200");
+
+    // The simulator reads its settings once, when its class loads, so they are set before the first use of it
+    @Test void killedPrimaryIsReplacedWithinBudget() throws Exception { SIM.forEach((k, v) -> { if (System.getProperty(k) == null) System.setProperty(k, v); }); ClusterSimulator.defaults();
+        assertEquals(0, new ClusterSimulator().run(), "Writes unavailable past " + System.getProperty("ddvote.sim.maxUnavailableMs") + " ms, an op given up, or QUORUM votes lost: see the report above"); }
+}
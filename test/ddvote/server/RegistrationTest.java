@@ -0,0 +1,34 @@
+package ddvote.server;
+
+import ddvote.shared.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Credential limits at the API boundary of a lone primary (no backups, so its lease needs no renewals): the voter store keeps ids and
+// passwords of up to 255 UTF-8 bytes, and longer ones are refused with false, never an exception
+class RegistrationTest {
+    private static final String LONGEST = "v".repeat(255), TOO_LONG = "v".repeat(256), TOO_LONG_UTF8 = "é".repeat(128); // 256 bytes in 128 chars
+    private VotingServerNode node;
+
+    @BeforeEach void primary() throws Exception { if (System.getProperty("ddvote.wal.mode") == null) System.setProperty("ddvote.wal.mode", "OFF"); Logger.getLogger("").setLevel(Level.SEVERE);
+        node = new VotingServerNode("solo", "localhost"); node.state().setPrimaryId("solo"); node.state().setElecState(ElectionState.RUNNING); }
+    @AfterEach void stop() { node.shutdown(); }
+
+    @Test void overLongFieldIsRefused() throws Exception {
+        assertFalse(node.registerVoter(new Credentials(TOO_LONG, "pw"))); assertFalse(node.registerVoterWithReceipt(new Credentials(TOO_LONG_UTF8, "pw")).getResult());
+        assertFalse(node.registerVoter(new Credentials("v1", TOO_LONG))); assertEquals(3L, node.state().metrics.counters().get("voters_invalid"));
+        assertNull(node.loginVoter(new Credentials(TOO_LONG, "pw"))); assertEquals(NodeService.VoteResultStatus.REJECTED_NOT_LOGGED_IN, node.submitVote(TOO_LONG, "C1"));
+        assertTrue(node.registerVoter(new Credentials(LONGEST, "pw"))); assertEquals(LONGEST, node.loginVoter(new Credentials(LONGEST, "pw")));
+        assertEquals(NodeService.VoteResultStatus.ACCEPTED, node.submitVote(LONGEST, "C1"));
+        assertTrue(node.registerVoter(new Credentials("v1", "pw"))); } // Not taken by the refused attempt
+    // Replay and segment import reach the store directly: a record it cannot hold is skipped, not thrown
+    @Test void storeSkipsWhatItCannotHold() { VoterStore vs = new VoterStore();
+        assertEquals(-1, vs.register(TOO_LONG, "pw")); assertEquals(-1, vs.register("v1", TOO_LONG_UTF8)); assertEquals(-1, vs.ordinal(TOO_LONG)); assertEquals(0, vs.size());
+        assertEquals(0, vs.register(LONGEST, "pw")); assertEquals(0, vs.ordinal(LONGEST)); }
+}
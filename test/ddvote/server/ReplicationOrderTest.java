@@ -0,0 +1,44 @@
+package ddvote.server;
+
+import ddvote.shared.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// An in-JVM primary replicating to one backup (called directly, no transport): what the primary counts, the backup must count too
+class ReplicationOrderTest {
+    private static final int PAIRS = 4, VOTERS = 2000, SEGMENT = 100; // Per pair: one thread registers voters, one votes for each as soon as it is visible
+    private VotingServerNode primary, backup; private ScheduledExecutorService leases;
+
+    @BeforeEach void cluster() throws Exception { if (System.getProperty("ddvote.wal.mode") == null) System.setProperty("ddvote.wal.mode", "OFF"); Logger.getLogger("").setLevel(Level.WARNING);
+        primary = new VotingServerNode("p", "localhost"); backup = new VotingServerNode("b", "localhost");
+        primary.state().setPrimaryId("p"); backup.state().setPrimaryId("p"); primary.state().setElecState(ElectionState.RUNNING); backup.state().setElecState(ElectionState.RUNNING);
+        primary.addPeer("b", backup, new PrimaryHint("p", 0, 0, ShardMap.SHARDS));
+        Runnable grant = () -> primary.state().noteLeaseAck("b", System.currentTimeMillis()); grant.run(); // Stands in for the lease renewals of a started primary, from before the first write
+        leases = Executors.newSingleThreadScheduledExecutor(); leases.scheduleAtFixedRate(grant, ServerNodeState.LEASE_RENEW, ServerNodeState.LEASE_RENEW, TimeUnit.MILLISECONDS); }
+    @AfterEach void stop() { leases.shutdownNow(); primary.shutdown(); backup.shutdown(); }
+
+    private static Map<String, Long> tally(VotingServerNode n) { Map<String, Long> t = new TreeMap<>(); for (VoteResult r : n.getShardResults()) t.put(r.getCandidateId(), r.getVoteCount()); return t; }
+    @FunctionalInterface private interface Registrar { void register(String prefix) throws Exception; }
+    // Each voter thread votes for its pair's voters in order, retrying until the voter is visible; QUORUM, so every vote is on the backup when it returns
+    private void race(Registrar registrar) throws Exception { ExecutorService pool = Executors.newFixedThreadPool(2 * PAIRS); List<Future<?>> done = new ArrayList<>();
+        for (int p = 0; p < PAIRS; p++) { String prefix = "r" + p + "-v"; done.add(pool.submit(() -> { registrar.register(prefix); return null; }));
+            done.add(pool.submit(() -> { for (int i = 0; i < VOTERS; i++) { NodeService.VoteResultStatus s;
+                while ((s = primary.submitVote(prefix + i, i % 2 == 0 ? "C1" : "C2", WriteConsistency.QUORUM)) == NodeService.VoteResultStatus.REJECTED_NOT_LOGGED_IN) Thread.onSpinWait();
+                assertEquals(NodeService.VoteResultStatus.ACCEPTED, s, prefix + i); } return null; })); }
+        pool.shutdown(); for (Future<?> f : done) f.get(2, TimeUnit.MINUTES);
+        assertEquals(PAIRS * VOTERS, tally(primary).values().stream().mapToLong(Long::longValue).sum()); assertEquals(tally(primary), tally(backup)); }
+
+    // A vote admitted the moment its voter becomes visible must still reach the backup after the registration, or the backup drops it
+    @Test void voteRacingItsRegistrationReachesTheBackup() throws Exception { race(prefix -> { for (int i = 0; i < VOTERS; i++) primary.registerVoter(new Credentials(prefix + i, "pw")); }); }
+    // The same for bulk import, where a whole segment becomes visible at once
+    @Test void voteRacingItsSegmentReachesTheBackup() throws Exception { race(prefix -> { for (int i = 0; i < VOTERS; i += SEGMENT) { List<Credentials> seg = new ArrayList<>(SEGMENT);
+        for (int j = i; j < i + SEGMENT; j++) seg.add(new Credentials(prefix + j, "pw")); primary.registerVoterSegment(VoterSegment.of(0, ShardMap.SHARDS, seg)); } }); }
+}
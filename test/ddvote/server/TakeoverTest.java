@@ -0,0 +1,40 @@
+package ddvote.server;
+
+import ddvote.shared.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The deterministic half of FailoverTest: in-JVM nodes called directly, the election driven by hand instead of by timers.
+// A backup that applied exactly what the new primary did continues on its stream, with no snapshot
+class TakeoverTest {
+    private static final int VOTERS = 500;
+    private VotingServerNode n1, n2, n3; private ScheduledExecutorService leases;
+
+    @BeforeEach void cluster() throws Exception { if (System.getProperty("ddvote.wal.mode") == null) System.setProperty("ddvote.wal.mode", "OFF"); Logger.getLogger("").setLevel(Level.SEVERE);
+        n1 = new VotingServerNode("n1", "localhost"); n2 = new VotingServerNode("n2", "localhost"); n3 = new VotingServerNode("n3", "localhost");
+        for (VotingServerNode n : List.of(n1, n2, n3)) { n.state().setPrimaryId("n3"); n.state().setElecState(ElectionState.RUNNING); }
+        PrimaryHint old = new PrimaryHint("n3", 0, 0, ShardMap.SHARDS); n3.addPeer("n2", n2, old); n3.addPeer("n1", n1, old); n2.addPeer("n1", n1, old); n1.addPeer("n2", n2, old);
+        Runnable grant = () -> { long now = System.currentTimeMillis(); for (String b : List.of("n1", "n2")) n3.state().noteLeaseAck(b, now); n2.state().noteLeaseAck("n1", now); };
+        grant.run(); leases = Executors.newSingleThreadScheduledExecutor(); leases.scheduleAtFixedRate(grant, ServerNodeState.LEASE_RENEW, ServerNodeState.LEASE_RENEW, TimeUnit.MILLISECONDS); } // Stands in for the lease renewals of a started primary
+    @AfterEach void stop() { leases.shutdownNow(); for (VotingServerNode n : List.of(n1, n2, n3)) n.shutdown(); }
+
+    private static long counter(VotingServerNode n, NodeMetrics.Counter c) { return n.state().metrics.counters().get(c.name().toLowerCase()); }
+    private static Map<String, Long> tally(VotingServerNode n) { Map<String, Long> t = new TreeMap<>(); for (VoteResult r : n.getShardResults()) t.put(r.getCandidateId(), r.getVoteCount()); return t; }
+    private static void vote(VotingServerNode primary, String prefix) throws Exception { for (int i = 0; i < VOTERS; i++) { String v = prefix + i; assertTrue(primary.registerVoter(new Credentials(v, "pw")), v);
+        assertEquals(NodeService.VoteResultStatus.ACCEPTED, primary.submitVote(v, i % 2 == 0 ? "C1" : "C2", WriteConsistency.ALL), v); } } // ALL: on both backups when it returns
+
+    @Test void backupAtTheNewPrimarysPositionContinuesWithoutSnapshot() throws Exception { vote(n3, "old-v"); long installed = counter(n1, NodeMetrics.Counter.SNAPSHOTS_INSTALLED);
+        n3.shutdown(); // n1 asks for an election; n2 has no live peer above it, so it declares itself primary before the call returns
+        n2.handleElectionMessage(new ElectionMessage(ElectionMessageType.ELECTION_REQUEST, "n1", new VectorClock().copy(), n1.state().getEpoch())); assertTrue(n2.state().isPrimary());
+        vote(n2, "new-v");
+        assertEquals(1, counter(n1, NodeMetrics.Counter.REPL_HANDOFFS)); assertEquals(installed, counter(n1, NodeMetrics.Counter.SNAPSHOTS_INSTALLED), "n1 was re-seeded from a snapshot");
+        assertEquals(0, counter(n2, NodeMetrics.Counter.SNAPSHOTS_SENT)); assertEquals(2L * VOTERS, tally(n2).values().stream().mapToLong(Long::longValue).sum()); assertEquals(tally(n2), tally(n1)); }
+}
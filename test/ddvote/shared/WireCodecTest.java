@@ -0,0 +1,121 @@
+package ddvote.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Round trips through the binary wire form, decoding of older versions, and rejection of malformed input
+class WireCodecTest {
+    private static final String NON_ASCII = "wähler-ü-选民-🗳"; // Latin-1, CJK and a surrogate pair
+
+    private static VectorClock clock(String... ticks) { VectorClock c = new VectorClock(); for (String id : ticks) c.tick(id); return c.copy(); }
+    @SuppressWarnings("unchecked") private static <T> T roundTrip(T msg) throws IOException { return (T) WireCodec.decode(WireCodec.encode(msg)); }
+    private static void assertSameClock(VectorClock expected, VectorClock actual) {
+        if (expected == null) { assertNull(actual); return; } assertNotNull(actual); assertEquals(VectorClock.Order.EQUAL, expected.compare(actual), expected + " vs " + actual); }
+
+    // --- VectorClock ---
+    @Test void vectorClockRoundTrips() throws IOException {
+        VectorClock c = clock("n1", "n1", "n2", NON_ASCII); assertSameClock(c, roundTrip(c));
+        VectorClock big = new VectorClock(); for (int i = 0; i < 300; i++) big.tick("n3"); big.tick("n1"); // A counter above one varint byte
+        assertSameClock(big.copy(), roundTrip(big.copy()));
+        assertSameClock(new VectorClock().copy(), roundTrip(new VectorClock().copy())); // No entries at all
+    }
+
+    // --- ElectionMessage ---
+    @Test void electionMessageRoundTripsEveryType() throws IOException {
+        for (ElectionMessageType t : ElectionMessageType.values()) { ElectionMessage m = new ElectionMessage(t, "n2", clock("n2", "n1"), 42);
+            ElectionMessage d = roundTrip(m); assertEquals(t, d.getType()); assertEquals("n2", d.getSenderId()); assertEquals(42, d.getEpoch()); assertSameClock(m.getTimestamp(), d.getTimestamp()); }
+        ElectionMessage d = roundTrip(new ElectionMessage(ElectionMessageType.ANSWER, NON_ASCII, null)); // Null clock, no epoch
+        assertEquals(NON_ASCII, d.getSenderId()); assertNull(d.getTimestamp()); assertEquals(0, d.getEpoch());
+    }
+    // Version 1 had no epoch: [1][kind 3][type][sender][clock], and decoders must still accept it
+    @Test void electionMessageDecodesVersion1() throws IOException {
+        byte[] sender = "n7".getBytes(StandardCharsets.UTF_8); ByteArrayOutputStream v1 = new ByteArrayOutputStream();
+        v1.write(1); v1.write(3); v1.write(ElectionMessageType.COORDINATOR.ordinal()); v1.write((sender.length + 1) << 1); v1.write(sender); v1.write(0); // Null clock
+        ElectionMessage d = (ElectionMessage) WireCodec.decode(v1.toByteArray());
+        assertEquals(ElectionMessageType.COORDINATOR, d.getType()); assertEquals("n7", d.getSenderId()); assertNull(d.getTimestamp()); assertEquals(0, d.getEpoch());
+        byte[] v2 = WireCodec.encode(new ElectionMessage(ElectionMessageType.COORDINATOR, "n7", null, 0)); // Same message now: the version byte and a trailing epoch differ
+        assertEquals(WireCodec.VERSION, v2[0]); assertArrayEquals(Arrays.copyOfRange(v1.toByteArray(), 1, v1.size()), Arrays.copyOfRange(v2, 1, v2.length - 1));
+    }
+    @Test void rejectsNewerVersions() { byte[] b = WireCodec.encode(clock("n1")); b[0] = (byte) (WireCodec.VERSION + 1); assertThrows(InvalidObjectException.class, () -> WireCodec.decode(b)); }
+
+    // --- ReplicationUpdate: every type, alone and in a batch ---
+    private static List<ReplicationUpdate> everyUpdateType() {
+        List<ReplicationUpdate> us = new ArrayList<>(); VectorClock ts = clock("n1", "n2");
+        for (ReplicationUpdate.UpdateType t : ReplicationUpdate.UpdateType.values()) { switch (t) {
+            case REGISTER_VOTER: us.add(new ReplicationUpdate(t, new Credentials(NON_ASCII, "pässwörd"), ts)); break;
+            case RECORD_VOTE: us.add(new ReplicationUpdate(t, new ReplicationUpdate.VoteData("v1", "C1"), ts)); break;
+            case RECORD_VOTES: us.add(new ReplicationUpdate(t, List.of(new ReplicationUpdate.VoteData("v1", "C1"), new ReplicationUpdate.VoteData(NON_ASCII, "C1")), null)); break;
+            case REGISTER_VOTERS: us.add(new ReplicationUpdate(t, VoterSegment.of(1, 2, List.of(new Credentials("v1", "pw"), new Credentials(NON_ASCII, "pw"))), ts)); break;
+            case REPAIR_BUCKETS: us.add(new ReplicationUpdate(t, new BucketRepair(new int[] { 3, 1023 }, new String[] { "v1", "v2", NON_ASCII }, new String[] { "pw", "pw", "pw" },
+                new String[] { null, BucketRepair.UNKNOWN, "C2" }), ts)); break;
+            default: fail("No sample for " + t); } }
+        return us; }
+    private static void assertSameUpdate(ReplicationUpdate e, ReplicationUpdate a) {
+        assertEquals(e.getType(), a.getType()); assertSameClock(e.getTimestamp(), a.getTimestamp());
+        switch (e.getType()) {
+            case REGISTER_VOTER: assertEquals(e.getCredentials().getVoterId(), a.getCredentials().getVoterId()); assertEquals(e.getCredentials().getPassword(), a.getCredentials().getPassword()); break;
+            case RECORD_VOTE: assertEquals(e.getVote().toString(), a.getVote().toString()); break;
+            case RECORD_VOTES: assertEquals(e.getVotes().toString(), a.getVotes().toString()); break;
+            case REGISTER_VOTERS: VoterSegment es = e.getSegment(), as = a.getSegment(); assertEquals(es.getShard(), as.getShard()); assertEquals(es.getShards(), as.getShards());
+                assertEquals(es.getCount(), as.getCount()); assertArrayEquals(es.getData(), as.getData());
+                assertEquals(List.of("v1", NON_ASCII), as.voters().stream().map(Credentials::getVoterId).toList()); break;
+            case REPAIR_BUCKETS: BucketRepair er = e.getRepair(), ar = a.getRepair(); assertArrayEquals(er.getBuckets(), ar.getBuckets()); assertEquals(er.size(), ar.size());
+                for (int i = 0; i < er.size(); i++) { assertEquals(er.getVoterId(i), ar.getVoterId(i)); assertEquals(er.getPassword(i), ar.getPassword(i)); assertEquals(er.getVote(i), ar.getVote(i)); } break;
+            default: fail("Unchecked type " + e.getType()); } }
+    @Test void everyUpdateTypeRoundTrips() throws IOException { for (ReplicationUpdate u : everyUpdateType()) assertSameUpdate(u, roundTrip(u)); }
+    @Test void batchRoundTrips() throws IOException { List<ReplicationUpdate> us = everyUpdateType(); ReplicationBatch b = new ReplicationBatch("n1", -7L, 1L << 40, us);
+        ReplicationBatch d = roundTrip(b); assertEquals("n1", d.getSourceId()); assertEquals(-7L, d.getStreamId()); assertEquals(1L << 40, d.getFirstSeq()); assertEquals(b.getLastSeq(), d.getLastSeq());
+        for (int i = 0; i < us.size(); i++) assertSameUpdate(us.get(i), d.getUpdates().get(i)); assertNull(d.getBase()); }
+    @Test void handoffBaseRoundTrips() throws IOException { ReplicationBatch d = roundTrip(new ReplicationBatch("n2", 5, 101, List.of(), new ReadToken(NON_ASCII, -9L, 100)));
+        assertEquals(101, d.getFirstSeq()); assertTrue(d.getUpdates().isEmpty()); assertEquals(NON_ASCII, d.getBase().getSourceId()); assertEquals(-9L, d.getBase().getStreamId()); assertEquals(100, d.getBase().getSeq()); }
+    // Version 2 batches end after the updates: decoded without a base
+    @Test void batchDecodesVersion2() throws IOException { byte[] v3 = WireCodec.encode(new ReplicationBatch("n1", 3, 7, everyUpdateType())), v2 = Arrays.copyOf(v3, v3.length - 1); v2[0] = 2; // Drop the null base
+        ReplicationBatch d = (ReplicationBatch) WireCodec.decode(v2); assertEquals(7, d.getFirstSeq()); assertEquals(everyUpdateType().size(), d.getUpdates().size()); assertNull(d.getBase()); }
+    // RMI ships these through writeReplace: Java serialization must carry the same binary form
+    @Test void javaSerializationUsesTheWireForm() throws Exception { for (ReplicationUpdate u : everyUpdateType()) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(); try (ObjectOutputStream out = new ObjectOutputStream(b)) { out.writeObject(u); }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b.toByteArray()))) { assertSameUpdate(u, (ReplicationUpdate) in.readObject()); } } }
+
+    // --- Strings: null, interned repeats, non-ASCII ---
+    @Test void nullAndNonAsciiStrings() throws IOException {
+        ReplicationUpdate u = roundTrip(new ReplicationUpdate(ReplicationUpdate.UpdateType.REGISTER_VOTER, new Credentials(NON_ASCII, null), null));
+        assertEquals(NON_ASCII, u.getCredentials().getVoterId()); assertNull(u.getCredentials().getPassword());
+        ReplicationUpdate v = roundTrip(new ReplicationUpdate(ReplicationUpdate.UpdateType.RECORD_VOTE, new ReplicationUpdate.VoteData(NON_ASCII, NON_ASCII), null)); // Second use is interned
+        assertEquals(NON_ASCII, v.getVote().voterId); assertEquals(NON_ASCII, v.getVote().candidateId);
+    }
+    @Test void valueListsRoundTrip() throws IOException { Object[] vs = WireCodec.decodeValues(WireCodec.encodeValues(null, "", NON_ASCII, NON_ASCII, Long.MIN_VALUE, true, clock("n1"), new int[] { 1, 2 }, new long[] { -1 }));
+        assertNull(vs[0]); assertEquals("", vs[1]); assertEquals(NON_ASCII, vs[2]); assertEquals(NON_ASCII, vs[3]); assertEquals(Long.MIN_VALUE, vs[4]); assertEquals(true, vs[5]);
+        assertSameClock(clock("n1"), (VectorClock) vs[6]); assertArrayEquals(new int[] { 1, 2 }, (int[]) vs[7]); assertArrayEquals(new long[] { -1 }, (long[]) vs[8]); }
+
+    // --- Malformed input: every strict prefix fails cleanly, never with an unchecked exception ---
+    @Test void truncatedInputIsRejected() {
+        List<Object> msgs = new ArrayList<>(everyUpdateType()); msgs.add(clock("n1", "n2")); msgs.add(new ElectionMessage(ElectionMessageType.LEASE, NON_ASCII, clock("n1"), 300));
+        msgs.add(new ReplicationBatch("n1", 1, 1, everyUpdateType())); msgs.add(new ReplicationBatch("n2", 2, 9, everyUpdateType(), new ReadToken("n1", 1, 8)));
+        for (Object m : msgs) { byte[] full = WireCodec.encode(m);
+            for (int n = 0; n < full.length; n++) { byte[] cut = Arrays.copyOf(full, n); assertThrows(InvalidObjectException.class, () -> WireCodec.decode(cut), m + " cut to " + n + " bytes"); } }
+        byte[] values = WireCodec.encodeValues("a", 1L, NON_ASCII);
+        for (int n = 0; n < values.length; n++) { byte[] cut = Arrays.copyOf(values, n); assertThrows(InvalidObjectException.class, () -> WireCodec.decodeValues(cut), "values cut to " + n); }
+    }
+    @Test void unknownKindAndTypeAreRejected() { byte[] b = WireCodec.encode(clock("n1")); b[1] = 99; assertThrows(InvalidObjectException.class, () -> WireCodec.decode(b));
+        byte[] u = WireCodec.encode(everyUpdateType().get(0)); u[2] = (byte) 200; assertThrows(InvalidObjectException.class, () -> WireCodec.decode(u)); }
+    private static final byte[] MAX_INT = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 }; // Integer.MAX_VALUE as a varint
+    private static byte[] concat(byte[]... parts) { ByteArrayOutputStream b = new ByteArrayOutputStream(); for (byte[] p : parts) b.writeBytes(p); return b.toByteArray(); }
+    // A count is checked against the bytes left before anything is allocated for it, so a few bytes cannot ask for gigabytes
+    @Test void oversizedCountsAreRejected() {
+        assertThrows(InvalidObjectException.class, () -> WireCodec.decodeValues(concat(new byte[] { WireCodec.VERSION }, MAX_INT)));
+        byte[] b = WireCodec.encode(new ReplicationBatch("n1", 1, 1, List.of())); int n = 2 + 3 + 8 + 1; assertEquals(0, b[n]); // Version, kind, "n1", stream, first seq, then the update count
+        assertThrows(InvalidObjectException.class, () -> WireCodec.decode(concat(Arrays.copyOf(b, n), MAX_INT, Arrays.copyOfRange(b, n + 1, b.length))));
+        VoterSegment s = VoterSegment.of(0, 1, List.of(new Credentials("v1", "pw"))); // The segment header sizes its own decoding
+        assertThrows(IllegalArgumentException.class, () -> new VoterSegment(0, 1, Integer.MAX_VALUE, s.getRawLength(), s.getData()).voters());
+        assertThrows(IllegalArgumentException.class, () -> new VoterSegment(0, 1, 1, Integer.MAX_VALUE, s.getData()).voters()); }
+    // Every id in a decoded clock takes a slot of the process-wide node table for good, so ids that could not be node ids are refused, not registered
+    @Test void clockWithUnusableIdIsRejected() {
+        assertThrows(InvalidObjectException.class, () -> WireCodec.decode(new byte[] { WireCodec.VERSION, 1, 2, 0, 1 })); // One entry, null id
+        byte[] id = "x".repeat(NodeIndex.MAX_ID_LENGTH + 1).getBytes(StandardCharsets.UTF_8); int tag = (id.length + 1) << 1;
+        assertThrows(InvalidObjectException.class, () -> WireCodec.decode(concat(new byte[] { WireCodec.VERSION, 1, 2, (byte) (tag & 0x7F | 0x80), (byte) (tag >>> 7) }, id, new byte[] { 1 }))); }
+}